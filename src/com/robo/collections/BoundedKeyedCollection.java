@@ -0,0 +1,429 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.robo.InvalidOperationException;
+
+/**
+ * A thread-safe {@link KeyedCollection} with an upper bound on its total
+ * weight, intended as an in-process cache. When an insertion exceeds the
+ * bound, items are evicted in the order chosen by an {@link EvictionPolicy}
+ * and reported to an {@link EvictionListener}. Lookups through
+ * {@link #get(Object)} count as uses of an item and are recorded in the
+ * collection's {@link CacheStats}.
+ * <p>
+ * All operations take a single lock. Iteration works on a snapshot taken under
+ * the lock, and listeners are notified after the lock has been released.
+ * Secondary indexes added through {@link #addIndex(KeyExtractor, boolean)}
+ * read under the same lock.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public abstract class BoundedKeyedCollection<K, V> extends KeyedCollection<K, V> {
+
+	private final Object mLock = new Object();
+	private final long mMaximumWeight;
+	private final Weigher<V> mWeigher;
+	private final EvictionPolicy<K> mPolicy;
+	private volatile EvictionListener<K, V> mListener;
+	private List<Object> mPendingEvictions = new ArrayList<>();
+	private long mWeight;
+	private long mHitCount;
+	private long mMissCount;
+	private long mEvictionCount;
+	private long mEvictionWeight;
+
+	/**
+	 * Creates a collection that holds at most a specified number of items and
+	 * evicts the least recently used ones.
+	 * 
+	 * @param maximumSize
+	 *            Maximum number of items.
+	 */
+	protected BoundedKeyedCollection(int maximumSize) {
+		this(maximumSize, null, new LruEvictionPolicy<K>());
+	}
+
+	/**
+	 * Creates a bounded collection.
+	 * 
+	 * @param maximumWeight
+	 *            Maximum total weight of the items.
+	 * @param weigher
+	 *            Calculates the weight of items. If null, every item weighs 1.
+	 * @param policy
+	 *            Chooses the items to evict.
+	 */
+	protected BoundedKeyedCollection(long maximumWeight, Weigher<V> weigher, EvictionPolicy<K> policy) {
+		if (maximumWeight < 0) {
+			throw new IllegalArgumentException("maximumWeight must not be negative");
+		}
+		mMaximumWeight = maximumWeight;
+		mWeigher = weigher;
+		mPolicy = policy;
+	}
+
+	public void setEvictionListener(EvictionListener<K, V> listener) {
+		mListener = listener;
+	}
+
+	public long getMaximumWeight() {
+		return mMaximumWeight;
+	}
+
+	public long getWeight() {
+		synchronized (mLock) {
+			return mWeight;
+		}
+	}
+
+	public CacheStats getStats() {
+		synchronized (mLock) {
+			return new CacheStats(mHitCount, mMissCount, mEvictionCount, mEvictionWeight);
+		}
+	}
+
+	/**
+	 * Adds an item, then evicts items until the collection is within its
+	 * bound again. The added item itself may be evicted if the policy decides
+	 * so or if it alone exceeds the bound.
+	 */
+	@Override
+	public boolean add(V e) throws InvalidOperationException {
+		boolean insertionResult;
+		synchronized (mLock) {
+			K key = getKeyForItem(e);
+			V replaced = null == key ? null : super.get(key);
+			insertionResult = super.add(e);
+			if (insertionResult) {
+				if (null == replaced) {
+					mPolicy.recordInsertion(key);
+				} else {
+					mWeight -= weigh(replaced);
+					mPolicy.recordAccess(key);
+				}
+				mWeight += weigh(e);
+				evict();
+			}
+		}
+		notifyEvictions();
+		return insertionResult;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) throws InvalidOperationException {
+		boolean insertionResult;
+		synchronized (mLock) {
+			insertionResult = super.addAll(c);
+		}
+		notifyEvictions();
+		return insertionResult;
+	}
+
+	/**
+	 * Gets the item with a specified key and records the lookup as a hit or a
+	 * miss.
+	 */
+	@Override
+	public V get(K key) {
+		synchronized (mLock) {
+			V item = super.get(key);
+			if (null == item) {
+				mMissCount++;
+			} else {
+				mHitCount++;
+				mPolicy.recordAccess(key);
+			}
+			return item;
+		}
+	}
+
+	@Override
+	public V getAt(int index) {
+		synchronized (mLock) {
+			return super.getAt(index);
+		}
+	}
+
+	@Override
+	public int indexOfKey(K key) {
+		synchronized (mLock) {
+			return super.indexOfKey(key);
+		}
+	}
+
+	@Override
+	public boolean move(int fromIndex, int toIndex) {
+		synchronized (mLock) {
+			return super.move(fromIndex, toIndex);
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (mLock) {
+			super.clear();
+			mPolicy.clear();
+			mWeight = 0;
+		}
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		synchronized (mLock) {
+			return super.contains(o);
+		}
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		synchronized (mLock) {
+			return super.containsKey(key);
+		}
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		synchronized (mLock) {
+			return super.containsAll(c);
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		synchronized (mLock) {
+			return super.isEmpty();
+		}
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the items in insertion order.
+	 * {@link Iterator#remove()} removes the item from this collection.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Iterator<V> iterator() {
+		final Iterator<Object> iterator = Arrays.asList(toArray()).iterator();
+		return new Iterator<V>() {
+			private V mLast;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public V next() {
+				mLast = (V) iterator.next();
+				return mLast;
+			}
+
+			@Override
+			public void remove() {
+				if (null == mLast) {
+					throw new IllegalStateException();
+				}
+				removeByKey(getKeyForItem(mLast));
+				mLast = null;
+			}
+		};
+	}
+
+	/**
+	 * Returns a spliterator over a snapshot of the items in insertion order.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Spliterator<V> spliterator() {
+		return (Spliterator<V>) Spliterators.spliterator(toArray(), Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	/**
+	 * Performs an action for each item of a snapshot of this collection. The
+	 * action is run without holding the collection's lock.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void forEach(Consumer<? super V> action) {
+		if (null == action) {
+			throw new NullPointerException();
+		}
+		for (Object item : toArray()) {
+			action.accept((V) item);
+		}
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super V> filter) {
+		synchronized (mLock) {
+			return super.removeIf(filter);
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		synchronized (mLock) {
+			return super.remove(o);
+		}
+	}
+
+	@Override
+	public boolean removeAt(int index) {
+		synchronized (mLock) {
+			return super.removeAt(index);
+		}
+	}
+
+	@Override
+	public boolean removeByKey(K key) {
+		synchronized (mLock) {
+			V item = null == key ? null : super.get(key);
+			if (null != item && super.removeByKey(key)) {
+				mWeight -= weigh(item);
+				mPolicy.recordRemoval(key);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		synchronized (mLock) {
+			return super.removeAll(c);
+		}
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		synchronized (mLock) {
+			return super.retainAll(c);
+		}
+	}
+
+	@Override
+	public int size() {
+		synchronized (mLock) {
+			return super.size();
+		}
+	}
+
+	@Override
+	public Object[] toArray() {
+		synchronized (mLock) {
+			return super.toArray();
+		}
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		synchronized (mLock) {
+			return super.toArray(a);
+		}
+	}
+
+	@Override
+	public <S> SecondaryIndex<S, V> addIndex(KeyExtractor<S, V> extractor, boolean unique)
+			throws InvalidOperationException {
+		synchronized (mLock) {
+			return super.addIndex(extractor, unique);
+		}
+	}
+
+	@Override
+	public boolean removeIndex(SecondaryIndex<?, V> index) {
+		synchronized (mLock) {
+			return super.removeIndex(index);
+		}
+	}
+
+	/**
+	 * Secondary indexes read under the lock of this collection, and return
+	 * copies of their buckets, since evictions change them concurrently.
+	 */
+	@Override
+	Object getIndexLock() {
+		return mLock;
+	}
+
+	private int weigh(V item) {
+		return null == mWeigher ? 1 : mWeigher.weigh(item);
+	}
+
+	/**
+	 * Evicts items until the total weight is within the bound. Must be called
+	 * while holding the lock.
+	 */
+	private void evict() {
+		while (mWeight > mMaximumWeight) {
+			K victim = mPolicy.selectVictim();
+			if (null == victim) {
+				return;
+			}
+			V item = super.get(victim);
+			if (null != item && super.removeByKey(victim)) {
+				int weight = weigh(item);
+				mWeight -= weight;
+				mEvictionCount++;
+				mEvictionWeight += weight;
+				mPendingEvictions.add(victim);
+				mPendingEvictions.add(item);
+			}
+		}
+	}
+
+	/**
+	 * Reports evicted items to the listener once the outermost operation has
+	 * released the lock.
+	 */
+	@SuppressWarnings("unchecked")
+	private void notifyEvictions() {
+		if (Thread.holdsLock(mLock)) {
+			return;
+		}
+		List<Object> evictions;
+		synchronized (mLock) {
+			if (mPendingEvictions.isEmpty()) {
+				return;
+			}
+			evictions = mPendingEvictions;
+			mPendingEvictions = new ArrayList<>();
+		}
+		EvictionListener<K, V> listener = mListener;
+		if (null != listener) {
+			for (int i = 0; i < evictions.size(); i += 2) {
+				listener.onEvicted((K) evictions.get(i), (V) evictions.get(i + 1));
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+/**
+ * An immutable snapshot of the statistics of a {@link BoundedKeyedCollection}.
+ * 
+ * @author robo-admin
+ * 
+ */
+public final class CacheStats {
+
+	private final long mHitCount;
+	private final long mMissCount;
+	private final long mEvictionCount;
+	private final long mEvictionWeight;
+
+	public CacheStats(long hitCount, long missCount, long evictionCount, long evictionWeight) {
+		mHitCount = hitCount;
+		mMissCount = missCount;
+		mEvictionCount = evictionCount;
+		mEvictionWeight = evictionWeight;
+	}
+
+	public long getHitCount() {
+		return mHitCount;
+	}
+
+	public long getMissCount() {
+		return mMissCount;
+	}
+
+	public long getEvictionCount() {
+		return mEvictionCount;
+	}
+
+	public long getEvictionWeight() {
+		return mEvictionWeight;
+	}
+
+	public long getRequestCount() {
+		return mHitCount + mMissCount;
+	}
+
+	/**
+	 * Gets the ratio of lookups that found an item, or 1 if there has been no
+	 * lookup.
+	 */
+	public double getHitRate() {
+		long requestCount = getRequestCount();
+		return requestCount == 0 ? 1.0 : (double) mHitCount / requestCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CacheStats[hits=%d, misses=%d, evictions=%d, evictionWeight=%d]", mHitCount,
+				mMissCount, mEvictionCount, mEvictionWeight);
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the changes of an {@link ObservableKeyedCollection} between
+ * checkpoints, so that only what changed since the last checkpoint has to be
+ * persisted, for example through
+ * {@link KeyedCollectionSerializer#writeDelta(List, java.nio.channels.WritableByteChannel)}.
+ * 
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public final class ChangeRecorder<V> implements CollectionChangeListener<V> {
+
+	private List<CollectionChange<V>> mChanges = new ArrayList<>();
+
+	@Override
+	public synchronized void onCollectionChanged(List<CollectionChange<V>> changes) {
+		mChanges.addAll(changes);
+	}
+
+	public synchronized boolean hasChanges() {
+		return !mChanges.isEmpty();
+	}
+
+	/**
+	 * Takes the changes recorded since the previous checkpoint and starts
+	 * recording anew.
+	 * 
+	 * @return Read-only list of the changes in the order they were made.
+	 */
+	public synchronized List<CollectionChange<V>> checkpoint() {
+		List<CollectionChange<V>> changes = mChanges;
+		mChanges = new ArrayList<>();
+		return Collections.unmodifiableList(changes);
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A change to a range of positions of an {@link ObservableKeyedCollection}.
+ * Positions refer to the state of the collection after all preceding changes
+ * of the same batch have been applied, so a consumer that applies the changes
+ * of a batch in order ends up with the collection's current order.
+ * 
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public final class CollectionChange<V> {
+
+	public enum Type {
+		/**
+		 * Items were inserted at {@link CollectionChange#getIndex()}.
+		 */
+		INSERT,
+		/**
+		 * Items were removed from {@link CollectionChange#getIndex()}.
+		 * {@link CollectionChange#getItems()} holds the removed items.
+		 */
+		REMOVE,
+		/**
+		 * Items at {@link CollectionChange#getIndex()} were replaced by items
+		 * with the same keys. {@link CollectionChange#getItems()} holds the new
+		 * items.
+		 */
+		REPLACE,
+		/**
+		 * An item was moved from {@link CollectionChange#getIndex()} to
+		 * {@link CollectionChange#getToIndex()}.
+		 */
+		MOVE
+	}
+
+	private final Type mType;
+	private int mIndex;
+	private final int mToIndex;
+	private final List<V> mItems = new ArrayList<>(1);
+
+	CollectionChange(Type type, int index, int toIndex, V item) {
+		mType = type;
+		mIndex = index;
+		mToIndex = toIndex;
+		mItems.add(item);
+	}
+
+	public Type getType() {
+		return mType;
+	}
+
+	/**
+	 * Gets the first position of the change, or the source position of a move.
+	 */
+	public int getIndex() {
+		return mIndex;
+	}
+
+	/**
+	 * Gets the target position of a move. For other changes this equals
+	 * {@link #getIndex()}.
+	 */
+	public int getToIndex() {
+		return mToIndex;
+	}
+
+	/**
+	 * Gets the number of consecutive positions affected by the change.
+	 */
+	public int getCount() {
+		return mItems.size();
+	}
+
+	/**
+	 * Gets the affected items in position order.
+	 */
+	public List<V> getItems() {
+		return Collections.unmodifiableList(mItems);
+	}
+
+	/**
+	 * Tries to fold an insertion into this change.
+	 */
+	boolean mergeInsert(int index, V item) {
+		if (mType == Type.INSERT && index >= mIndex && index <= mIndex + mItems.size()) {
+			mItems.add(index - mIndex, item);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Tries to fold a removal into this change. Removing an item that was
+	 * inserted by this change cancels the insertion, which may leave this
+	 * change empty.
+	 */
+	boolean mergeRemove(int index, V item) {
+		if (mType == Type.INSERT && index >= mIndex && index < mIndex + mItems.size()) {
+			mItems.remove(index - mIndex);
+			return true;
+		}
+		if (mType == Type.REMOVE) {
+			if (index == mIndex) {
+				mItems.add(item);
+				return true;
+			}
+			if (index + 1 == mIndex) {
+				mIndex = index;
+				mItems.add(0, item);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tries to fold a replacement into this change.
+	 */
+	boolean mergeReplace(int index, V item) {
+		int end = mIndex + mItems.size();
+		if ((mType == Type.INSERT || mType == Type.REPLACE) && index >= mIndex && index < end) {
+			mItems.set(index - mIndex, item);
+			return true;
+		}
+		if (mType == Type.REPLACE) {
+			if (index == end) {
+				mItems.add(item);
+				return true;
+			}
+			if (index + 1 == mIndex) {
+				mIndex = index;
+				mItems.add(0, item);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	boolean isEmpty() {
+		return mItems.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		if (mType == Type.MOVE) {
+			return "MOVE[" + mIndex + " -> " + mToIndex + "]";
+		}
+		return mType + "[" + mIndex + ", count=" + mItems.size() + "]";
+	}
+}
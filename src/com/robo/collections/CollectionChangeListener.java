@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.List;
+
+/**
+ * Receives the changes made to an {@link ObservableKeyedCollection}.
+ * 
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public interface CollectionChangeListener<V> {
+
+	/**
+	 * Called once per batch after the collection has been changed.
+	 * 
+	 * @param changes
+	 *            Read-only list of the coalesced changes of the batch, in the
+	 *            order they have to be applied. Never empty.
+	 */
+	void onCollectionChanged(List<CollectionChange<V>> changes);
+}
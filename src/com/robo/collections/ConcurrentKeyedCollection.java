@@ -0,0 +1,596 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.robo.reflect.TypeUtils;
+
+/**
+ * A thread-safe variant of {@link KeyedCollection}. Lookups by key go straight
+ * to a {@link ConcurrentHashMap} and never block. Positional access and
+ * iteration work on an immutable snapshot of the insertion order, so readers
+ * never block writers and always see a consistent state, even while the
+ * collection is being modified.
+ * <p>
+ * Writers append to a shared order log under a lock and publish a new snapshot
+ * with a single volatile write. Each item records the version at which it was
+ * removed, so older snapshots keep seeing it while newer ones do not. Unlike
+ * {@link KeyedCollection}, adding an item whose key is already present moves
+ * the new item to the end of the order.
+ * <p>
+ * All writers share one lock, because the insertion order is a single
+ * sequence that every write extends or thins out. Writes are therefore
+ * serialized; the collection is meant for many readers and few writers, and
+ * a write holds the lock only for a few field updates plus, occasionally, a
+ * compaction of the order log.
+ * <p>
+ * Positional access is constant time only while the order log holds no
+ * removed items. Every write publishes a new snapshot, and the first
+ * {@link #getAt(int)} on a snapshot whose log still holds removed items lists
+ * the visible items in O(n). The log is compacted once fewer than half of its
+ * items are visible. Until then, a workload that interleaves removals with
+ * positional reads pays O(n) per read; iterate or call {@link #toArray()}
+ * instead.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public abstract class ConcurrentKeyedCollection<K, V> implements Collection<V> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final long LIVE = Long.MAX_VALUE;
+
+	private final ConcurrentHashMap<K, Node<K, V>> mIndex;
+	private final ReentrantLock mWriteLock = new ReentrantLock();
+	private volatile Snapshot<K, V> mSnapshot;
+	private volatile Type mItemType;
+
+	protected ConcurrentKeyedCollection() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a collection that can hold a specified number of items before it
+	 * has to grow.
+	 * 
+	 * @param initialCapacity
+	 *            The initial capacity.
+	 */
+	protected ConcurrentKeyedCollection(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("initialCapacity must not be negative");
+		}
+		int capacity = Math.max(initialCapacity, 1);
+		mIndex = new ConcurrentHashMap<>(capacity);
+		mSnapshot = new Snapshot<>(newNodes(capacity), 0, 0, 0);
+	}
+
+	/**
+	 * Adds an item to this collection. If the collection already contains an
+	 * item with the same key, that item is removed and the new item is
+	 * appended.
+	 * 
+	 * @return true if the item was added. false if the item has no key.
+	 */
+	@Override
+	public boolean add(V e) {
+		K key = getKeyForItem(e);
+		if (null == key) {
+			return false;
+		}
+		mWriteLock.lock();
+		try {
+			Snapshot<K, V> snapshot = mSnapshot;
+			long version = snapshot.mVersion + 1;
+			int size = snapshot.mSize;
+			Node<K, V> previous = mIndex.get(key);
+			if (null != previous) {
+				previous.mRemovedVersion = version;
+				size--;
+			}
+			append(snapshot, new Node<>(key, e), version, size + 1);
+			return true;
+		} finally {
+			mWriteLock.unlock();
+		}
+	}
+
+	/**
+	 * Adds an item to this collection only if there is no item with the same
+	 * key yet. The check and the insertion are atomic.
+	 * 
+	 * @param item
+	 *            The item to add.
+	 * @return The item that is already in the collection with the same key, or
+	 *         null if the given item has been added.
+	 */
+	public V putIfAbsent(V item) {
+		K key = getKeyForItem(item);
+		if (null == key) {
+			return null;
+		}
+		Node<K, V> existing = mIndex.get(key);
+		if (null != existing) {
+			return existing.mValue;
+		}
+		mWriteLock.lock();
+		try {
+			existing = mIndex.get(key);
+			if (null != existing) {
+				return existing.mValue;
+			}
+			Snapshot<K, V> snapshot = mSnapshot;
+			append(snapshot, new Node<>(key, item), snapshot.mVersion + 1, snapshot.mSize + 1);
+			return null;
+		} finally {
+			mWriteLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the item with a specified key, creating and adding it if there is
+	 * none yet. The factory is called at most once per absent key, while
+	 * writers are blocked; readers are not affected.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @param factory
+	 *            Creates the item if it is absent. The created item must have
+	 *            the given key.
+	 * @return The existing or created item, or null if the factory returned
+	 *         null.
+	 */
+	public V computeIfAbsent(K key, ItemFactory<K, V> factory) {
+		Node<K, V> existing = mIndex.get(key);
+		if (null != existing) {
+			return existing.mValue;
+		}
+		mWriteLock.lock();
+		try {
+			existing = mIndex.get(key);
+			if (null != existing) {
+				return existing.mValue;
+			}
+			V item = factory.create(key);
+			if (null == item) {
+				return null;
+			}
+			if (!key.equals(getKeyForItem(item))) {
+				throw new IllegalArgumentException("The created item has a different key");
+			}
+			Snapshot<K, V> snapshot = mSnapshot;
+			append(snapshot, new Node<>(key, item), snapshot.mVersion + 1, snapshot.mSize + 1);
+			return item;
+		} finally {
+			mWriteLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		boolean insertionResult = false;
+		mWriteLock.lock();
+		try {
+			for (V v : c) {
+				insertionResult |= add(v);
+			}
+		} finally {
+			mWriteLock.unlock();
+		}
+		return insertionResult;
+	}
+
+	public V get(K key) {
+		Node<K, V> node = null == key ? null : mIndex.get(key);
+		return null == node ? null : node.mValue;
+	}
+
+	/**
+	 * Gets the item at a specified position of the current snapshot. This
+	 * never blocks. It takes constant time, except for the first positional
+	 * access to a snapshot whose order log holds removed items, which lists
+	 * the visible items in O(n). Since every write publishes a new snapshot,
+	 * alternating removals and positional reads make every read O(n).
+	 */
+	public V getAt(int index) {
+		Snapshot<K, V> snapshot = mSnapshot;
+		if (index < 0 || index >= snapshot.mSize) {
+			return null;
+		}
+		return snapshot.getNode(index).mValue;
+	}
+
+	@Override
+	public void clear() {
+		mWriteLock.lock();
+		try {
+			Snapshot<K, V> snapshot = mSnapshot;
+			mIndex.clear();
+			mSnapshot = new Snapshot<>(newNodes(DEFAULT_CAPACITY), 0, 0, snapshot.mVersion + 1);
+		} finally {
+			mWriteLock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+		if (null == o) {
+			return false;
+		}
+		Type itemType = mItemType;
+		if (null == itemType) {
+			itemType = TypeUtils.getGenericParameterType(this, 1);
+			mItemType = itemType;
+		}
+		return o.getClass().equals(itemType) && containsKey(getKeyForItem((V) o));
+	}
+
+	public boolean containsKey(K key) {
+		return null != key && mIndex.containsKey(key);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean result = true;
+		for (Object o : c) {
+			result &= contains(o);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return mSnapshot.mSize == 0;
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the items in insertion order.
+	 * Changes made after this call are not visible to the iterator.
+	 */
+	@Override
+	public Iterator<V> iterator() {
+		return new SnapshotIterator<>(this, mSnapshot);
+	}
+
+	/**
+	 * Takes a snapshot of this collection. Taking a snapshot costs O(1); the
+	 * snapshot is not affected by later changes.
+	 * 
+	 * @return A read-only view of the items at the time of this call, in
+	 *         insertion order.
+	 */
+	public Collection<V> snapshot() {
+		final Snapshot<K, V> snapshot = mSnapshot;
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new SnapshotIterator<>(null, snapshot);
+			}
+
+			@Override
+			public int size() {
+				return snapshot.mSize;
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o) {
+		return null != o && removeByKey(getKeyForItem((V) o));
+	}
+
+	public boolean removeAt(int index) {
+		mWriteLock.lock();
+		try {
+			V item = getAt(index);
+			return null != item && removeByKey(getKeyForItem(item));
+		} finally {
+			mWriteLock.unlock();
+		}
+	}
+
+	public boolean removeByKey(K key) {
+		if (null == key) {
+			return false;
+		}
+		mWriteLock.lock();
+		try {
+			Node<K, V> node = mIndex.get(key);
+			return null != node && removeNode(node);
+		} finally {
+			mWriteLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a node unless it has already been removed or replaced.
+	 */
+	private boolean removeNode(Node<K, V> node) {
+		mWriteLock.lock();
+		try {
+			if (!mIndex.remove(node.mKey, node)) {
+				return false;
+			}
+			Snapshot<K, V> snapshot = mSnapshot;
+			long version = snapshot.mVersion + 1;
+			node.mRemovedVersion = version;
+			snapshot = new Snapshot<>(snapshot.mNodes, snapshot.mCount, snapshot.mSize - 1, version);
+			mSnapshot = snapshot;
+			if (snapshot.mCount > DEFAULT_CAPACITY && snapshot.mSize < snapshot.mCount / 2) {
+				compact(snapshot, snapshot.mNodes.length);
+			}
+			return true;
+		} finally {
+			mWriteLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean removalResult = true;
+		mWriteLock.lock();
+		try {
+			for (Object o : c) {
+				removalResult &= remove(o);
+			}
+		} finally {
+			mWriteLock.unlock();
+		}
+		return removalResult;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			clear();
+			return true;
+		}
+		Collection<?> itemsToRetain = c instanceof Set ? c : new HashSet<>(c);
+		boolean removalResult = false;
+		mWriteLock.lock();
+		try {
+			for (V v : this) {
+				if (!itemsToRetain.contains(v)) {
+					removalResult |= removeByKey(getKeyForItem(v));
+				}
+			}
+		} finally {
+			mWriteLock.unlock();
+		}
+		return removalResult;
+	}
+
+	@Override
+	public int size() {
+		return mSnapshot.mSize;
+	}
+
+	@Override
+	public Object[] toArray() {
+		Snapshot<K, V> snapshot = mSnapshot;
+		Object[] result = new Object[snapshot.mSize];
+		snapshot.copyValuesTo(result);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		Snapshot<K, V> snapshot = mSnapshot;
+		int size = snapshot.mSize;
+		T[] result = a.length >= size ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+		snapshot.copyValuesTo(result);
+		if (result.length > size) {
+			result[size] = null;
+		}
+		return result;
+	}
+
+	protected abstract K getKeyForItem(V item);
+
+	/**
+	 * Appends a node to the order log and publishes a new snapshot. Must be
+	 * called while holding the write lock.
+	 */
+	private void append(Snapshot<K, V> snapshot, Node<K, V> node, long version, int size) {
+		if (snapshot.mCount == snapshot.mNodes.length) {
+			int liveCount = size - 1;
+			int capacity = liveCount < snapshot.mCount / 2 ? snapshot.mNodes.length : snapshot.mNodes.length * 2;
+			snapshot = compact(snapshot, capacity);
+		}
+		snapshot.mNodes[snapshot.mCount] = node;
+		mIndex.put(node.mKey, node);
+		mSnapshot = new Snapshot<>(snapshot.mNodes, snapshot.mCount + 1, size, version);
+	}
+
+	/**
+	 * Copies the nodes which are live at the current version into a new array
+	 * and publishes a snapshot over it. Older snapshots keep their own array.
+	 * Must be called while holding the write lock.
+	 */
+	private Snapshot<K, V> compact(Snapshot<K, V> snapshot, int capacity) {
+		Node<K, V>[] nodes = newNodes(capacity);
+		int count = 0;
+		for (int i = 0; i < snapshot.mCount; i++) {
+			Node<K, V> node = snapshot.mNodes[i];
+			if (node.mRemovedVersion == LIVE) {
+				nodes[count++] = node;
+			}
+		}
+		snapshot = new Snapshot<>(nodes, count, count, snapshot.mVersion);
+		mSnapshot = snapshot;
+		return snapshot;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <K, V> Node<K, V>[] newNodes(int capacity) {
+		return new Node[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Creates items for {@link ConcurrentKeyedCollection#computeIfAbsent}.
+	 * 
+	 * @param <K>
+	 *            Type of keys.
+	 * @param <V>
+	 *            Type of items.
+	 */
+	public interface ItemFactory<K, V> {
+		V create(K key);
+	}
+
+	private static final class Node<K, V> {
+
+		final K mKey;
+		final V mValue;
+		volatile long mRemovedVersion = LIVE;
+
+		Node(K key, V value) {
+			mKey = key;
+			mValue = value;
+		}
+	}
+
+	/**
+	 * An immutable view over the first nodes of an order log. Nodes beyond
+	 * {@link #mCount} may be written by later appends but are never read
+	 * through this snapshot, and nodes removed after {@link #mVersion} are
+	 * still visible through it.
+	 */
+	private static final class Snapshot<K, V> {
+
+		final Node<K, V>[] mNodes;
+		final int mCount;
+		final int mSize;
+		final long mVersion;
+		/**
+		 * The visible nodes, listed on the first positional access if some
+		 * nodes of the log are not visible. Readers that race to list them
+		 * compute the same array.
+		 */
+		private volatile Node<K, V>[] mVisibleNodes;
+
+		Snapshot(Node<K, V>[] nodes, int count, int size, long version) {
+			mNodes = nodes;
+			mCount = count;
+			mSize = size;
+			mVersion = version;
+		}
+
+		boolean isVisible(Node<K, V> node) {
+			return node.mRemovedVersion > mVersion;
+		}
+
+		Node<K, V> getNode(int index) {
+			if (mCount == mSize) {
+				return mNodes[index];
+			}
+			Node<K, V>[] visibleNodes = mVisibleNodes;
+			if (null == visibleNodes) {
+				visibleNodes = newNodes(mSize);
+				copyNodesTo(visibleNodes);
+				mVisibleNodes = visibleNodes;
+			}
+			return visibleNodes[index];
+		}
+
+		void copyValuesTo(Object[] target) {
+			int index = 0;
+			for (int i = 0; i < mCount && index < mSize; i++) {
+				Node<K, V> node = mNodes[i];
+				if (isVisible(node)) {
+					target[index++] = node.mValue;
+				}
+			}
+		}
+
+		private void copyNodesTo(Node<K, V>[] target) {
+			int index = 0;
+			for (int i = 0; i < mCount && index < mSize; i++) {
+				Node<K, V> node = mNodes[i];
+				if (isVisible(node)) {
+					target[index++] = node;
+				}
+			}
+		}
+	}
+
+	private static final class SnapshotIterator<K, V> implements Iterator<V> {
+
+		private final ConcurrentKeyedCollection<K, V> mOwner;
+		private final Snapshot<K, V> mSnapshot;
+		private int mNext;
+		private Node<K, V> mLast;
+
+		SnapshotIterator(ConcurrentKeyedCollection<K, V> owner, Snapshot<K, V> snapshot) {
+			mOwner = owner;
+			mSnapshot = snapshot;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (mNext < mSnapshot.mCount && !mSnapshot.isVisible(mSnapshot.mNodes[mNext])) {
+				mNext++;
+			}
+			return mNext < mSnapshot.mCount;
+		}
+
+		@Override
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			mLast = mSnapshot.mNodes[mNext++];
+			return mLast.mValue;
+		}
+
+		@Override
+		public void remove() {
+			if (null == mOwner) {
+				throw new UnsupportedOperationException("Snapshots are read-only");
+			}
+			if (null == mLast) {
+				throw new IllegalStateException();
+			}
+			mOwner.removeNode(mLast);
+			mLast = null;
+		}
+	}
+}
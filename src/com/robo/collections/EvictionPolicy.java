@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+/**
+ * Decides which item a {@link BoundedKeyedCollection} evicts when it exceeds
+ * its bounds. The collection reports every insertion, access and removal of a
+ * key, and asks for a victim while it is over its limit. Implementations are
+ * called under the collection's lock and need not be thread-safe themselves.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * 
+ * @author robo-admin
+ * 
+ */
+public interface EvictionPolicy<K> {
+
+	/**
+	 * Called when an item with a specified key has been added.
+	 */
+	void recordInsertion(K key);
+
+	/**
+	 * Called when an item with a specified key has been read or replaced.
+	 */
+	void recordAccess(K key);
+
+	/**
+	 * Called when an item with a specified key has been removed for any reason
+	 * other than eviction.
+	 */
+	void recordRemoval(K key);
+
+	/**
+	 * Selects the key to evict next and stops tracking it.
+	 * 
+	 * @return The key, or null if the policy tracks no keys.
+	 */
+	K selectVictim();
+
+	/**
+	 * Stops tracking all keys.
+	 */
+	void clear();
+}
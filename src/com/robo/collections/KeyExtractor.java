@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+/**
+ * Extracts a key from an item.
+ * 
+ * @param <S>
+ *            Type of keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public interface KeyExtractor<S, V> {
+	/**
+	 * Gets the key of an item. The key must not change while the item is in a
+	 * collection.
+	 * 
+	 * @param item
+	 *            The item.
+	 * @return The key, or null if the item has no key.
+	 */
+	S getKey(V item);
+}
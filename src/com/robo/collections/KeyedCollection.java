@@ -16,41 +16,199 @@
  */
 package com.robo.collections;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
+import com.robo.InvalidOperationException;
 import com.robo.reflect.TypeUtils;
 
+/**
+ * A collection of items that are indexed by a key extracted from each item.
+ * Items keep their insertion order and can be accessed by position through
+ * {@link #getAt(int)}.
+ * <p>
+ * Keys and items are stored in parallel arrays in insertion order, and an
+ * open-addressing hash table maps keys to their slots, so lookups and removals
+ * by key take constant time. Removing an item leaves an empty slot behind;
+ * empty slots are compacted away when the arrays are full. While there are
+ * empty slots, a Fenwick tree counts the occupied ones, so that positional
+ * access takes logarithmic time without modifying the collection; reading
+ * by position is as safe as iterating, e.g. from several threads at once.
+ * <p>
+ * Collections of up to 8 items have no hash table; their keys are found by
+ * scanning the short key array, which saves memory and is as fast at that
+ * size. The table is built when the collection outgrows this, and dropped
+ * again when the collection becomes empty or shrinks far below it.
+ * <p>
+ * Items can additionally be looked up by other attributes through secondary
+ * indexes registered with {@link #addIndex(KeyExtractor, boolean)}.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
 public abstract class KeyedCollection<K, V> implements Collection<V> {
 
-	private Map<K, V> mInner;
-	private List<K> mKeys;
+	private static final int EMPTY = -1;
+	private static final int DELETED = -2;
+	private static final int DEFAULT_CAPACITY = 8;
+	private static final int SMALL_CAPACITY = 8;
+	private static final Object[] EMPTY_SLOTS = new Object[0];
+	private static final int[] EMPTY_HASHES = new int[0];
+
+	private Object[] mKeys = EMPTY_SLOTS;
+	private Object[] mValues = EMPTY_SLOTS;
+	private int[] mHashes = EMPTY_HASHES;
+	private int[] mTable = EMPTY_HASHES;
+	private int[] mOccupied;
+	private int mUsed;
+	private int mSize;
+	private int mModCount;
+	private Type mItemType;
+	private List<SecondaryIndex<?, V>> mIndexes;
+	private List<V> mPendingIndexAdditions;
+	private List<V> mPendingIndexRemovals;
 
 	protected KeyedCollection() {
-		this(new HashMap<K, V>());
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a collection that can hold a specified number of items before it
+	 * has to grow.
+	 * 
+	 * @param initialCapacity
+	 *            The initial capacity.
+	 */
+	protected KeyedCollection(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("initialCapacity must not be negative");
+		}
+		if (initialCapacity > DEFAULT_CAPACITY) {
+			allocate(initialCapacity);
+		}
 	}
 
+	/**
+	 * @deprecated Items are no longer stored in a {@link Map}; the given map is
+	 *             ignored. Use {@link #KeyedCollection()} or
+	 *             {@link #KeyedCollection(int)} instead.
+	 */
+	@Deprecated
 	protected KeyedCollection(Map<K, V> map) {
-		mInner = map;
-		mKeys = new ArrayList<>();
+		this(DEFAULT_CAPACITY);
 	}
 
+	/**
+	 * Adds an item to this collection. If the collection already contains an
+	 * item with the same key, that item is replaced in place.
+	 * 
+	 * @return true if the item was added or replaced the existing one. false if
+	 *         the item has no key.
+	 * @throws InvalidOperationException
+	 *             If the item violates a unique secondary index.
+	 */
+	@SuppressWarnings("unchecked")
 	@Override
-	public boolean add(V e) {
+	public boolean add(V e) throws InvalidOperationException {
 		K key = getKeyForItem(e);
-		if (addKey(key)) {
-			mInner.put(key, e);
+		if (null == key) {
+			return false;
+		}
+		if (null != mIndexes && null == mPendingIndexAdditions) {
+			checkUniqueIndexes(e, key);
+		}
+		int hash = hash(key);
+		int slot = findSlot(key, hash);
+		if (slot >= 0) {
+			V replaced = (V) mValues[slot];
+			mValues[slot] = e;
+			if (null != mIndexes) {
+				removeFromIndexes(replaced);
+				addToIndexes(e);
+			}
 			return true;
 		}
-		return false;
+		if (mUsed == mValues.length) {
+			ensureSlotAvailable();
+		}
+		slot = mUsed++;
+		mKeys[slot] = key;
+		mValues[slot] = e;
+		mHashes[slot] = hash;
+		insertIntoTable(hash, slot);
+		if (null != mOccupied) {
+			updateOccupied(mOccupied, slot, 1);
+		}
+		mSize++;
+		mModCount++;
+		if (null != mIndexes) {
+			addToIndexes(e);
+		}
+		return true;
 	}
 
+	/**
+	 * Adds all items of a specified collection. If secondary indexes are
+	 * registered, unique indexes are validated against the whole batch before
+	 * any item is added, and the indexes are updated once after all items have
+	 * been added.
+	 * 
+	 * @throws InvalidOperationException
+	 *             If the items violate a unique secondary index. The collection
+	 *             is left unchanged in that case.
+	 */
 	@Override
-	public boolean addAll(Collection<? extends V> c) {
+	public boolean addAll(Collection<? extends V> c) throws InvalidOperationException {
+		int required = mSize + c.size();
+		if (required > mValues.length) {
+			resize(required);
+		}
+		if (null == mIndexes) {
+			return addEach(c);
+		}
+		List<V> items = new ArrayList<>(c);
+		checkUniqueIndexes(items);
+		mPendingIndexAdditions = new ArrayList<>(items.size());
+		mPendingIndexRemovals = new ArrayList<>();
+		try {
+			return addEach(items);
+		} finally {
+			List<V> additions = mPendingIndexAdditions;
+			List<V> removals = mPendingIndexRemovals;
+			mPendingIndexAdditions = null;
+			mPendingIndexRemovals = null;
+			for (SecondaryIndex<?, V> index : mIndexes) {
+				index.ensureCapacity(additions.size());
+				for (V v : additions) {
+					index.add(v);
+				}
+				for (V v : removals) {
+					index.remove(v);
+				}
+			}
+		}
+	}
+
+	private boolean addEach(Collection<? extends V> c) {
 		boolean insertionResult = false;
 		for (V v : c) {
 			insertionResult |= add(v);
@@ -58,35 +216,158 @@ public abstract class KeyedCollection<K, V> implements Collection<V> {
 		return insertionResult;
 	}
 
-	public V get(K key) {
-		if (containsKey(key)) {
-			return mInner.get(key);
+	/**
+	 * Registers a secondary index over the items of this collection. The index
+	 * is filled with the current items and kept in sync as items are added and
+	 * removed.
+	 * 
+	 * @param extractor
+	 *            Extracts the secondary key from an item. Items with a null key
+	 *            are not indexed.
+	 * @param unique
+	 *            If true, no two items may share a secondary key; adding an item
+	 *            that violates this throws {@link InvalidOperationException}.
+	 * @return The index.
+	 * @throws InvalidOperationException
+	 *             If the index is unique and the current items violate it.
+	 */
+	public <S> SecondaryIndex<S, V> addIndex(KeyExtractor<S, V> extractor, boolean unique)
+			throws InvalidOperationException {
+		SecondaryIndex<S, V> index = new SecondaryIndex<>(extractor, unique, getIndexLock());
+		index.ensureCapacity(mSize);
+		for (V v : this) {
+			S key = index.getKey(v);
+			if (unique && null != key && index.containsKey(key)) {
+				throw new InvalidOperationException("Duplicate key in unique index: " + key);
+			}
+			index.add(v);
 		}
+		if (null == mIndexes) {
+			mIndexes = new ArrayList<>(2);
+		}
+		mIndexes.add(index);
+		return index;
+	}
+
+	/**
+	 * Unregisters a secondary index. The index is no longer kept in sync.
+	 * 
+	 * @return true if the index was registered with this collection.
+	 */
+	public boolean removeIndex(SecondaryIndex<?, V> index) {
+		if (null == mIndexes || !mIndexes.remove(index)) {
+			return false;
+		}
+		if (mIndexes.isEmpty()) {
+			mIndexes = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the lock that guards reads of the secondary indexes of this
+	 * collection.
+	 * 
+	 * @return The lock, or null if this collection is not thread-safe.
+	 */
+	Object getIndexLock() {
 		return null;
 	}
 
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		int slot = null == key ? EMPTY : findSlot(key, hash(key));
+		return slot >= 0 ? (V) mValues[slot] : null;
+	}
+
+	@SuppressWarnings("unchecked")
 	public V getAt(int index) {
 		if (isValidIndex(index)) {
-			return get(mKeys.get(index));
+			return (V) mValues[slotAt(index)];
 		}
 		return null;
 	}
 
+	/**
+	 * Gets the position of the item with a specified key. This takes constant
+	 * time unless items have been removed since the arrays were last
+	 * compacted, in which case it takes logarithmic time.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @return The position of the item, or -1 if there is no item with the
+	 *         key.
+	 */
+	public int indexOfKey(K key) {
+		int slot = null == key ? EMPTY : findSlot(key, hash(key));
+		if (slot < 0) {
+			return -1;
+		}
+		return null == mOccupied ? slot : countOccupied(mOccupied, slot);
+	}
+
+	/**
+	 * Moves an item to another position. The items in between shift by one
+	 * position towards the vacated one.
+	 * 
+	 * @param fromIndex
+	 *            Current position of the item.
+	 * @param toIndex
+	 *            New position of the item.
+	 * @return true if both positions are valid. Otherwise false.
+	 */
+	public boolean move(int fromIndex, int toIndex) {
+		if (!isValidIndex(fromIndex) || !isValidIndex(toIndex)) {
+			return false;
+		}
+		compactIfFragmented();
+		if (fromIndex == toIndex) {
+			return true;
+		}
+		Object key = mKeys[fromIndex];
+		Object value = mValues[fromIndex];
+		int hash = mHashes[fromIndex];
+		int from = Math.min(fromIndex, toIndex);
+		int to = Math.max(fromIndex, toIndex);
+		int source = fromIndex < toIndex ? from + 1 : from;
+		int target = fromIndex < toIndex ? from : from + 1;
+		System.arraycopy(mKeys, source, mKeys, target, to - from);
+		System.arraycopy(mValues, source, mValues, target, to - from);
+		System.arraycopy(mHashes, source, mHashes, target, to - from);
+		mKeys[toIndex] = key;
+		mValues[toIndex] = value;
+		mHashes[toIndex] = hash;
+		rebuildTable();
+		mModCount++;
+		return true;
+	}
+
 	@Override
 	public void clear() {
-		mKeys.clear();
-		mInner.clear();
+		release();
+		mSize = 0;
+		mModCount++;
+		if (null != mIndexes) {
+			for (SecondaryIndex<?, V> index : mIndexes) {
+				index.clear();
+			}
+		}
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean contains(Object o) {
-		return null != o && o.getClass().equals(TypeUtils.getGenericParameterType(this, 1))
-				&& containsKey(getKeyForItem((V) o));
+		if (null == o) {
+			return false;
+		}
+		if (null == mItemType) {
+			mItemType = TypeUtils.getGenericParameterType(this, 1);
+		}
+		return o.getClass().equals(mItemType) && containsKey(getKeyForItem((V) o));
 	}
 
 	public boolean containsKey(K key) {
-		return null != key && mKeys.contains(key);
+		return null != key && findSlot(key, hash(key)) >= 0;
 	}
 
 	@Override
@@ -103,30 +384,137 @@ public abstract class KeyedCollection<K, V> implements Collection<V> {
 
 	@Override
 	public boolean isEmpty() {
-		return size() > 0;
+		return mSize == 0;
 	}
 
+	/**
+	 * Returns an iterator over the items in insertion order.
+	 */
 	@Override
 	public Iterator<V> iterator() {
-		return mInner.values().iterator();
+		return new ItemIterator();
+	}
+
+	/**
+	 * Returns a spliterator over the items in insertion order. It reports
+	 * {@link Spliterator#ORDERED}, {@link Spliterator#SIZED} and
+	 * {@link Spliterator#SUBSIZED}, and splits into halves of exact size, so
+	 * parallel streams over the collection divide the work evenly.
+	 * <p>
+	 * The spliterator is not late-binding: it binds to the items of the
+	 * collection when it is created, not at its first traversal or split. Any
+	 * modification after that makes its splitting and traversal methods throw
+	 * {@link ConcurrentModificationException}.
+	 */
+	@Override
+	public Spliterator<V> spliterator() {
+		return new ItemSpliterator(mValues, mOccupied, 0, mUsed, mModCount);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void forEach(Consumer<? super V> action) {
+		if (null == action) {
+			throw new NullPointerException();
+		}
+		int expectedModCount = mModCount;
+		Object[] values = mValues;
+		int used = mUsed;
+		for (int slot = 0; slot < used && mModCount == expectedModCount; slot++) {
+			Object value = values[slot];
+			if (null != value) {
+				action.accept((V) value);
+			}
+		}
+		if (mModCount != expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+
+	/**
+	 * Removes all items that satisfy a specified predicate in a single pass
+	 * over the items.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean removeIf(Predicate<? super V> filter) {
+		if (null == filter) {
+			throw new NullPointerException();
+		}
+		boolean removalResult = false;
+		for (int slot = 0; slot < mUsed; slot++) {
+			Object value = mValues[slot];
+			if (null != value && filter.test((V) value)) {
+				removalResult |= removeByKey((K) mKeys[slot]);
+			}
+		}
+		return removalResult;
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean remove(Object o) {
-		return removeByKey(getKeyForItem((V) o));
+		return null != o && removeByKey(getKeyForItem((V) o));
 	}
 
+	@SuppressWarnings("unchecked")
 	public boolean removeAt(int index) {
-		return isValidIndex(index) && removeByKey(mKeys.get(index));
+		if (isValidIndex(index)) {
+			return removeByKey((K) mKeys[slotAt(index)]);
+		}
+		return false;
 	}
 
+	@SuppressWarnings("unchecked")
 	public boolean removeByKey(K key) {
-		if (removeKey(key)) {
-			mInner.remove(key);
-			return true;
+		if (null == key) {
+			return false;
+		}
+		int hash = hash(key);
+		if (mTable.length == 0) {
+			int slot = findSlot(key, hash);
+			if (slot >= 0) {
+				removeSlot(slot);
+				return true;
+			}
+			return false;
+		}
+		int mask = mTable.length - 1;
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+			int slot = mTable[i];
+			if (slot == EMPTY) {
+				return false;
+			}
+			if (slot >= 0 && mHashes[slot] == hash && key.equals(mKeys[slot])) {
+				mTable[i] = DELETED;
+				removeSlot(slot);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Empties a slot that is no longer referenced by the hash table. If this
+	 * removes the last item of a collection in the hashed layout, the arrays
+	 * are released so that the collection starts over in the small layout.
+	 */
+	@SuppressWarnings("unchecked")
+	private void removeSlot(int slot) {
+		V removed = (V) mValues[slot];
+		mKeys[slot] = null;
+		mValues[slot] = null;
+		mSize--;
+		mModCount++;
+		if (mSize == 0 && mTable.length > 0) {
+			release();
+		} else if (null == mOccupied) {
+			mOccupied = buildOccupied(mValues, mUsed);
+		} else {
+			updateOccupied(mOccupied, slot, -1);
+		}
+		if (null != mIndexes) {
+			removeFromIndexes(removed);
 		}
-		return false;
 	}
 
 	@Override
@@ -141,53 +529,483 @@ public abstract class KeyedCollection<K, V> implements Collection<V> {
 		return removalResult;
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public boolean retainAll(Collection<?> c) {
 		if (null == c || c.isEmpty()) {
 			clear();
 			return true;
 		}
-		List<V> itemsToRemove = new ArrayList<>();
-		for (V v : this) {
-			if (!c.contains(v)) {
-				itemsToRemove.add(v);
+		Collection<?> itemsToRetain = c instanceof Set ? c : new HashSet<>(c);
+		boolean removalResult = false;
+		for (int slot = 0; slot < mUsed; slot++) {
+			Object value = mValues[slot];
+			if (null != value && !itemsToRetain.contains(value)) {
+				removalResult |= removeByKey((K) mKeys[slot]);
 			}
 		}
-		return removeAll(itemsToRemove);
+		return removalResult;
 	}
 
 	@Override
 	public int size() {
-		return mInner.size();
+		return mSize;
 	}
 
 	@Override
 	public Object[] toArray() {
-		return mInner.values().toArray();
+		Object[] result = new Object[mSize];
+		copyValuesTo(result);
+		return result;
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T[] toArray(T[] a) {
-		return mInner.values().toArray(a);
+		T[] result = a.length >= mSize ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), mSize);
+		copyValuesTo(result);
+		if (result.length > mSize) {
+			result[mSize] = null;
+		}
+		return result;
 	}
 
-	private boolean addKey(K key) {
-		if (null != key) {
-			return mKeys.add(key);
+	private void addToIndexes(V item) {
+		if (null != mPendingIndexAdditions) {
+			mPendingIndexAdditions.add(item);
+			return;
+		}
+		for (SecondaryIndex<?, V> index : mIndexes) {
+			index.add(item);
 		}
-		return false;
 	}
 
-	private boolean removeKey(K key) {
-		if (null != key) {
-			return mKeys.remove(key);
+	private void removeFromIndexes(V item) {
+		if (null != mPendingIndexRemovals) {
+			mPendingIndexRemovals.add(item);
+			return;
+		}
+		for (SecondaryIndex<?, V> index : mIndexes) {
+			index.remove(item);
+		}
+	}
+
+	/**
+	 * Checks that adding an item with a specified key does not put two items
+	 * with different keys under the same key of a unique index.
+	 */
+	private void checkUniqueIndexes(V item, K key) {
+		for (SecondaryIndex<?, V> index : mIndexes) {
+			if (index.isUnique()) {
+				checkUniqueIndex(index, item, key);
+			}
+		}
+	}
+
+	private <S> void checkUniqueIndex(SecondaryIndex<S, V> index, V item, K key) {
+		S secondaryKey = index.getKey(item);
+		V existing = null == secondaryKey ? null : index.get(secondaryKey);
+		if (null != existing && !key.equals(getKeyForItem(existing))) {
+			throw new InvalidOperationException("Duplicate key in unique index: " + secondaryKey);
+		}
+	}
+
+	/**
+	 * Checks a batch of items against the unique indexes, taking into account
+	 * that items of the batch may replace current items with the same key.
+	 */
+	private void checkUniqueIndexes(List<V> items) {
+		Set<K> batchKeys = null;
+		for (SecondaryIndex<?, V> index : mIndexes) {
+			if (index.isUnique()) {
+				if (null == batchKeys) {
+					batchKeys = new HashSet<>();
+					for (V v : items) {
+						batchKeys.add(getKeyForItem(v));
+					}
+				}
+				checkUniqueIndex(index, items, batchKeys);
+			}
+		}
+	}
+
+	private <S> void checkUniqueIndex(SecondaryIndex<S, V> index, List<V> items, Set<K> batchKeys) {
+		Map<S, K> seen = new HashMap<>();
+		for (V v : items) {
+			K key = getKeyForItem(v);
+			S secondaryKey = null == key ? null : index.getKey(v);
+			if (null == secondaryKey) {
+				continue;
+			}
+			K previous = seen.put(secondaryKey, key);
+			V existing = index.get(secondaryKey);
+			K existingKey = null == existing ? null : getKeyForItem(existing);
+			if ((null != previous && !previous.equals(key))
+					|| (null != existingKey && !existingKey.equals(key) && !batchKeys.contains(existingKey))) {
+				throw new InvalidOperationException("Duplicate key in unique index: " + secondaryKey);
+			}
+		}
+	}
+
+	private void copyValuesTo(Object[] target) {
+		if (mUsed == mSize) {
+			System.arraycopy(mValues, 0, target, 0, mSize);
+			return;
+		}
+		int index = 0;
+		for (int slot = 0; slot < mUsed; slot++) {
+			Object value = mValues[slot];
+			if (null != value) {
+				target[index++] = value;
+			}
+		}
+	}
+
+	private int findSlot(Object key, int hash) {
+		int[] table = mTable;
+		if (table.length == 0) {
+			for (int slot = 0; slot < mUsed; slot++) {
+				if (mHashes[slot] == hash && key.equals(mKeys[slot])) {
+					return slot;
+				}
+			}
+			return EMPTY;
+		}
+		int mask = table.length - 1;
+		for (int i = hash & mask; table.length > 0; i = (i + 1) & mask) {
+			int slot = table[i];
+			if (slot == EMPTY) {
+				return EMPTY;
+			}
+			if (slot >= 0 && mHashes[slot] == hash && key.equals(mKeys[slot])) {
+				return slot;
+			}
+		}
+		return EMPTY;
+	}
+
+	private void insertIntoTable(int hash, int slot) {
+		if (mTable.length == 0) {
+			return;
+		}
+		int mask = mTable.length - 1;
+		int i = hash & mask;
+		while (mTable[i] >= 0) {
+			i = (i + 1) & mask;
+		}
+		mTable[i] = slot;
+	}
+
+	/**
+	 * Makes room for one more slot, either by compacting removed slots away or
+	 * by growing the arrays.
+	 */
+	private void ensureSlotAvailable() {
+		if (mValues.length == 0) {
+			allocate(DEFAULT_CAPACITY);
+		} else if (mSize <= mUsed / 2 || (mTable.length == 0 && mSize < mUsed)) {
+			compact();
+		} else {
+			resize(mValues.length * 2);
+		}
+	}
+
+	private void allocate(int capacity) {
+		mKeys = new Object[capacity];
+		mValues = new Object[capacity];
+		mHashes = new int[capacity];
+		mOccupied = null;
+		if (capacity > SMALL_CAPACITY) {
+			mTable = new int[tableSizeFor(capacity)];
+			Arrays.fill(mTable, EMPTY);
+		} else {
+			mTable = EMPTY_HASHES;
+		}
+	}
+
+	private void release() {
+		mKeys = EMPTY_SLOTS;
+		mValues = EMPTY_SLOTS;
+		mHashes = EMPTY_HASHES;
+		mTable = EMPTY_HASHES;
+		mOccupied = null;
+		mUsed = 0;
+	}
+
+	private void resize(int capacity) {
+		Object[] keys = mKeys;
+		Object[] values = mValues;
+		int[] hashes = mHashes;
+		int used = mUsed;
+		allocate(capacity);
+		mUsed = 0;
+		for (int slot = 0; slot < used; slot++) {
+			if (null != values[slot]) {
+				mKeys[mUsed] = keys[slot];
+				mValues[mUsed] = values[slot];
+				mHashes[mUsed] = hashes[slot];
+				insertIntoTable(hashes[slot], mUsed);
+				mUsed++;
+			}
+		}
+		mModCount++;
+	}
+
+	private void compactIfFragmented() {
+		if (mUsed != mSize) {
+			compact();
+		}
+	}
+
+	/**
+	 * Gets the slot of the item at a specified position.
+	 */
+	private int slotAt(int index) {
+		return null == mOccupied ? index : findOccupied(mOccupied, index);
+	}
+
+	/**
+	 * Moves all items to the front of the arrays, closing gaps left by removed
+	 * items, and rebuilds the hash table.
+	 */
+	private void compact() {
+		if (mValues.length > SMALL_CAPACITY && mSize <= SMALL_CAPACITY / 2) {
+			resize(SMALL_CAPACITY);
+			return;
+		}
+		int target = 0;
+		for (int slot = 0; slot < mUsed; slot++) {
+			if (null != mValues[slot]) {
+				if (target != slot) {
+					mKeys[target] = mKeys[slot];
+					mValues[target] = mValues[slot];
+					mHashes[target] = mHashes[slot];
+				}
+				target++;
+			}
+		}
+		Arrays.fill(mKeys, target, mUsed, null);
+		Arrays.fill(mValues, target, mUsed, null);
+		mUsed = target;
+		mOccupied = null;
+		rebuildTable();
+		mModCount++;
+	}
+
+	private void rebuildTable() {
+		if (mTable.length == 0) {
+			return;
+		}
+		Arrays.fill(mTable, EMPTY);
+		for (int slot = 0; slot < mUsed; slot++) {
+			insertIntoTable(mHashes[slot], slot);
 		}
-		return false;
 	}
 
 	private boolean isValidIndex(int index) {
 		return index >= 0 && index < size();
 	}
 
+	private static int tableSizeFor(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+		return size < 0 ? 1 << 30 : size;
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Builds a Fenwick tree that counts the occupied slots among the first
+	 * used slots of a value array.
+	 */
+	private static int[] buildOccupied(Object[] values, int used) {
+		int[] tree = new int[values.length + 1];
+		for (int i = 1; i < tree.length; i++) {
+			if (i <= used && null != values[i - 1]) {
+				tree[i]++;
+			}
+			int parent = i + (i & -i);
+			if (parent < tree.length) {
+				tree[parent] += tree[i];
+			}
+		}
+		return tree;
+	}
+
+	private static void updateOccupied(int[] tree, int slot, int delta) {
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Counts the occupied slots before a specified slot.
+	 */
+	private static int countOccupied(int[] tree, int slot) {
+		int count = 0;
+		for (int i = slot; i > 0; i -= i & -i) {
+			count += tree[i];
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the slot that holds the item at a specified position.
+	 */
+	private static int findOccupied(int[] tree, int index) {
+		int slot = 0;
+		int remaining = index + 1;
+		for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+			int next = slot + step;
+			if (next < tree.length && tree[next] < remaining) {
+				slot = next;
+				remaining -= tree[next];
+			}
+		}
+		return slot;
+	}
+
 	protected abstract K getKeyForItem(V item);
+
+	/**
+	 * Spliterator over a range of slots. It binds the arrays of the collection
+	 * when it is created, and counts the items in its range through the
+	 * Fenwick tree of occupied slots, if any, so that its size is exact.
+	 */
+	private final class ItemSpliterator implements Spliterator<V> {
+
+		private final Object[] mItems;
+		private final int[] mOccupiedSlots;
+		private int mIndex;
+		private final int mFence;
+		private final int mExpectedModCount;
+
+		ItemSpliterator(Object[] items, int[] occupiedSlots, int origin, int fence, int expectedModCount) {
+			mItems = items;
+			mOccupiedSlots = occupiedSlots;
+			mIndex = origin;
+			mFence = fence;
+			mExpectedModCount = expectedModCount;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean tryAdvance(Consumer<? super V> action) {
+			if (null == action) {
+				throw new NullPointerException();
+			}
+			checkForComodification();
+			while (mIndex < mFence) {
+				Object value = mItems[mIndex++];
+				if (null != value) {
+					action.accept((V) value);
+					checkForComodification();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void forEachRemaining(Consumer<? super V> action) {
+			if (null == action) {
+				throw new NullPointerException();
+			}
+			checkForComodification();
+			Object[] values = mItems;
+			for (int i = mIndex; i < mFence; i++) {
+				Object value = values[i];
+				if (null != value) {
+					action.accept((V) value);
+				}
+			}
+			mIndex = mFence;
+			checkForComodification();
+		}
+
+		@Override
+		public Spliterator<V> trySplit() {
+			checkForComodification();
+			int middle;
+			if (null == mOccupiedSlots) {
+				middle = (mIndex + mFence) >>> 1;
+			} else {
+				int first = countOccupied(mOccupiedSlots, mIndex);
+				int count = countOccupied(mOccupiedSlots, mFence) - first;
+				middle = count < 2 ? mIndex : findOccupied(mOccupiedSlots, first + count / 2);
+			}
+			if (middle <= mIndex) {
+				return null;
+			}
+			Spliterator<V> prefix = new ItemSpliterator(mItems, mOccupiedSlots, mIndex, middle, mExpectedModCount);
+			mIndex = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			if (null == mOccupiedSlots) {
+				return mFence - mIndex;
+			}
+			return countOccupied(mOccupiedSlots, mFence) - countOccupied(mOccupiedSlots, mIndex);
+		}
+
+		@Override
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL;
+		}
+
+		private void checkForComodification() {
+			if (mModCount != mExpectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	private final class ItemIterator implements Iterator<V> {
+
+		private int mNextSlot;
+		private int mLastSlot = -1;
+		private int mExpectedModCount = mModCount;
+
+		@Override
+		public boolean hasNext() {
+			checkForComodification();
+			while (mNextSlot < mUsed && null == mValues[mNextSlot]) {
+				mNextSlot++;
+			}
+			return mNextSlot < mUsed;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			mLastSlot = mNextSlot++;
+			return (V) mValues[mLastSlot];
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void remove() {
+			if (mLastSlot < 0) {
+				throw new IllegalStateException();
+			}
+			checkForComodification();
+			removeByKey((K) mKeys[mLastSlot]);
+			mLastSlot = -1;
+			mExpectedModCount = mModCount;
+		}
+
+		private void checkForComodification() {
+			if (mModCount != mExpectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
 }
@@ -0,0 +1,360 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.List;
+
+import com.robo.ApplicationException;
+
+/**
+ * Writes collections to and reads them from NIO channels in a compact binary
+ * format, encoding items with a {@link ValueCodec}.
+ * <p>
+ * A stream is either a snapshot, which holds all items of a collection, or a
+ * delta, which holds the changes recorded by a {@link ChangeRecorder} since
+ * the previous checkpoint. Restoring a snapshot and then applying its deltas in
+ * order yields the same items in the same order as the original collection.
+ * Keys are not written; they are extracted from the decoded items.
+ * <p>
+ * Items are encoded straight into a single reusable buffer that is written to
+ * the channel whenever it fills up, and decoded straight from the read buffer,
+ * so neither direction builds a full copy of the data. A serializer is
+ * therefore not thread-safe; use one per thread.
+ * 
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public final class KeyedCollectionSerializer<V> {
+
+	private static final int MAGIC = 0x524B4353;
+	private static final byte FORMAT_VERSION = 1;
+	private static final byte TYPE_SNAPSHOT = 1;
+	private static final byte TYPE_DELTA = 2;
+	private static final byte OP_END = 0;
+	private static final byte OP_ADD = 1;
+	private static final byte OP_REMOVE = 2;
+	private static final byte OP_MOVE = 3;
+	private static final int HEADER_SIZE = 6;
+	private static final int RECORD_HEADER_SIZE = 5;
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_RECORD_SIZE = 1 << 30;
+
+	private final ValueCodec<V> mCodec;
+	private final int mMaxRecordSize;
+	private ByteBuffer mBuffer;
+
+	public KeyedCollectionSerializer(ValueCodec<V> codec) {
+		this(codec, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a serializer.
+	 * 
+	 * @param codec
+	 *            Encodes and decodes items.
+	 * @param bufferSize
+	 *            Initial size of the I/O buffer. The buffer grows if a single
+	 *            item does not fit.
+	 */
+	public KeyedCollectionSerializer(ValueCodec<V> codec, int bufferSize) {
+		this(codec, bufferSize, MAX_RECORD_SIZE);
+	}
+
+	/**
+	 * Creates a serializer.
+	 * 
+	 * @param codec
+	 *            Encodes and decodes items.
+	 * @param bufferSize
+	 *            Initial size of the I/O buffer. The buffer grows if a single
+	 *            item does not fit.
+	 * @param maxRecordSize
+	 *            Maximum encoded size of a single item, at most 1 GiB. Larger
+	 *            items fail to write, and larger record sizes in a stream are
+	 *            treated as corrupt before any buffer is allocated for them.
+	 */
+	public KeyedCollectionSerializer(ValueCodec<V> codec, int bufferSize, int maxRecordSize) {
+		if (null == codec) {
+			throw new NullPointerException("codec");
+		}
+		if (maxRecordSize <= 0 || maxRecordSize > MAX_RECORD_SIZE) {
+			throw new IllegalArgumentException("maxRecordSize must be between 1 and " + MAX_RECORD_SIZE);
+		}
+		mCodec = codec;
+		mMaxRecordSize = maxRecordSize;
+		mBuffer = ByteBuffer.allocateDirect(Math.max(bufferSize, HEADER_SIZE + RECORD_HEADER_SIZE + 8));
+	}
+
+	/**
+	 * Writes all items of a collection as a snapshot.
+	 * 
+	 * @param items
+	 *            The items, written in iteration order.
+	 * @param channel
+	 *            The channel to write to. Not closed by this method.
+	 * @throws ApplicationException
+	 *             If writing fails.
+	 */
+	public void writeSnapshot(Collection<? extends V> items, WritableByteChannel channel)
+			throws ApplicationException {
+		try {
+			mBuffer.clear();
+			writeHeader(TYPE_SNAPSHOT);
+			for (V item : items) {
+				writeItem(OP_ADD, item, channel);
+			}
+			writeEnd(channel);
+		} catch (IOException e) {
+			throw new ApplicationException("Unable to write snapshot", e);
+		}
+	}
+
+	/**
+	 * Reads a snapshot and adds its items to a collection.
+	 * 
+	 * @param channel
+	 *            The channel to read from. Not closed by this method.
+	 * @param target
+	 *            The collection to add the items to.
+	 * @return Number of items read.
+	 * @throws ApplicationException
+	 *             If reading fails or the stream is not a snapshot.
+	 */
+	public int readSnapshot(ReadableByteChannel channel, Collection<? super V> target) throws ApplicationException {
+		try {
+			mBuffer.clear().limit(0);
+			readHeader(channel, TYPE_SNAPSHOT);
+			int count = 0;
+			while (true) {
+				byte op = readOp(channel);
+				if (op == OP_END) {
+					return count;
+				}
+				if (op != OP_ADD) {
+					throw new ApplicationException("Unexpected record type in snapshot: " + op);
+				}
+				target.add(readItem(channel));
+				count++;
+			}
+		} catch (IOException e) {
+			throw new ApplicationException("Unable to read snapshot", e);
+		}
+	}
+
+	/**
+	 * Writes changes of a collection as a delta.
+	 * 
+	 * @param changes
+	 *            The changes, usually taken from
+	 *            {@link ChangeRecorder#checkpoint()}.
+	 * @param channel
+	 *            The channel to write to. Not closed by this method.
+	 * @throws ApplicationException
+	 *             If writing fails.
+	 */
+	public void writeDelta(List<CollectionChange<V>> changes, WritableByteChannel channel)
+			throws ApplicationException {
+		try {
+			mBuffer.clear();
+			writeHeader(TYPE_DELTA);
+			for (CollectionChange<V> change : changes) {
+				if (change.getType() == CollectionChange.Type.MOVE) {
+					ensureWritable(RECORD_HEADER_SIZE + 4, channel);
+					mBuffer.put(OP_MOVE).putInt(change.getIndex()).putInt(change.getToIndex());
+					continue;
+				}
+				byte op = change.getType() == CollectionChange.Type.REMOVE ? OP_REMOVE : OP_ADD;
+				for (V item : change.getItems()) {
+					writeItem(op, item, channel);
+				}
+			}
+			writeEnd(channel);
+		} catch (IOException e) {
+			throw new ApplicationException("Unable to write delta", e);
+		}
+	}
+
+	/**
+	 * Reads a delta and applies its changes to a collection. Inserted and
+	 * replaced items are added, removed items are removed by key and moves are
+	 * replayed by position.
+	 * 
+	 * @param channel
+	 *            The channel to read from. Not closed by this method.
+	 * @param target
+	 *            The collection to apply the changes to. It should hold the
+	 *            state the delta was recorded against.
+	 * @return Number of changes applied.
+	 * @throws ApplicationException
+	 *             If reading fails or the stream is not a delta.
+	 */
+	public int readDelta(ReadableByteChannel channel, KeyedCollection<?, V> target) throws ApplicationException {
+		try {
+			mBuffer.clear().limit(0);
+			readHeader(channel, TYPE_DELTA);
+			int count = 0;
+			while (true) {
+				byte op = readOp(channel);
+				switch (op) {
+				case OP_END:
+					return count;
+				case OP_ADD:
+					target.add(readItem(channel));
+					break;
+				case OP_REMOVE:
+					target.remove(readItem(channel));
+					break;
+				case OP_MOVE:
+					ensureReadable(8, channel);
+					target.move(mBuffer.getInt(), mBuffer.getInt());
+					break;
+				default:
+					throw new ApplicationException("Unexpected record type in delta: " + op);
+				}
+				count++;
+			}
+		} catch (IOException e) {
+			throw new ApplicationException("Unable to read delta", e);
+		}
+	}
+
+	private void writeHeader(byte type) {
+		mBuffer.putInt(MAGIC).put(FORMAT_VERSION).put(type);
+	}
+
+	private void writeItem(byte op, V item, WritableByteChannel channel) throws IOException {
+		int size = mCodec.sizeOf(item);
+		if (size < 0 || size > mMaxRecordSize) {
+			throw new ApplicationException("Record size " + size + " exceeds the maximum of " + mMaxRecordSize);
+		}
+		ensureWritable(RECORD_HEADER_SIZE + size, channel);
+		mBuffer.put(op).putInt(size);
+		int start = mBuffer.position();
+		mCodec.encode(item, mBuffer);
+		if (mBuffer.position() - start != size) {
+			throw new ApplicationException("Codec wrote " + (mBuffer.position() - start) + " bytes, expected "
+					+ size);
+		}
+	}
+
+	private void writeEnd(WritableByteChannel channel) throws IOException {
+		ensureWritable(1, channel);
+		mBuffer.put(OP_END);
+		flush(channel);
+	}
+
+	/**
+	 * Makes room for a specified number of bytes, flushing the buffer to the
+	 * channel first and growing it if the bytes still do not fit.
+	 */
+	private void ensureWritable(int bytes, WritableByteChannel channel) throws IOException {
+		if (mBuffer.remaining() >= bytes) {
+			return;
+		}
+		flush(channel);
+		if (mBuffer.capacity() < bytes) {
+			mBuffer = ByteBuffer.allocateDirect(capacityFor(bytes));
+		}
+	}
+
+	private void flush(WritableByteChannel channel) throws IOException {
+		mBuffer.flip();
+		while (mBuffer.hasRemaining()) {
+			channel.write(mBuffer);
+		}
+		mBuffer.clear();
+	}
+
+	private void readHeader(ReadableByteChannel channel, byte expectedType) throws IOException {
+		ensureReadable(HEADER_SIZE, channel);
+		int magic = mBuffer.getInt();
+		byte version = mBuffer.get();
+		byte type = mBuffer.get();
+		if (magic != MAGIC || version != FORMAT_VERSION) {
+			throw new ApplicationException("Not a collection stream or unsupported version");
+		}
+		if (type != expectedType) {
+			throw new ApplicationException("Expected stream type " + expectedType + " but was " + type);
+		}
+	}
+
+	private byte readOp(ReadableByteChannel channel) throws IOException {
+		ensureReadable(1, channel);
+		return mBuffer.get();
+	}
+
+	/**
+	 * Decodes the next item in place: the buffer's limit is narrowed to the
+	 * item's bytes while the codec reads them.
+	 */
+	private V readItem(ReadableByteChannel channel) throws IOException {
+		ensureReadable(4, channel);
+		int size = mBuffer.getInt();
+		if (size < 0 || size > mMaxRecordSize) {
+			throw new ApplicationException("Corrupt record size: " + size);
+		}
+		ensureReadable(size, channel);
+		int limit = mBuffer.limit();
+		int end = mBuffer.position() + size;
+		mBuffer.limit(end);
+		V item = mCodec.decode(mBuffer);
+		mBuffer.limit(limit);
+		mBuffer.position(end);
+		return item;
+	}
+
+	/**
+	 * Reads from the channel until at least a specified number of bytes are
+	 * buffered, growing the buffer if they do not fit.
+	 */
+	private void ensureReadable(int bytes, ReadableByteChannel channel) throws IOException {
+		if (mBuffer.remaining() >= bytes) {
+			return;
+		}
+		if (mBuffer.capacity() < bytes) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(capacityFor(bytes));
+			buffer.put(mBuffer);
+			mBuffer = buffer;
+		} else {
+			mBuffer.compact();
+		}
+		while (mBuffer.position() < bytes) {
+			if (channel.read(mBuffer) < 0) {
+				throw new EOFException("Unexpected end of stream");
+			}
+		}
+		mBuffer.flip();
+	}
+
+	/**
+	 * Rounds a buffer size up to a power of two, or keeps it as is where the
+	 * power of two would overflow.
+	 */
+	private static int capacityFor(int bytes) {
+		int capacity = Integer.highestOneBit(bytes - 1) << 1;
+		return capacity >= bytes ? capacity : bytes;
+	}
+}
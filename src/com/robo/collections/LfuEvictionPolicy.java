@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * An {@link EvictionPolicy} that evicts the least frequently used item, and
+ * among equally frequently used items the one that reached its frequency
+ * first. Keys are grouped by frequency in a linked list of buckets, so every
+ * operation takes constant time.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class LfuEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	private final Map<K, Bucket<K>> mBuckets = new HashMap<>();
+	private Bucket<K> mLowest;
+
+	@Override
+	public void recordInsertion(K key) {
+		if (mBuckets.containsKey(key)) {
+			recordAccess(key);
+			return;
+		}
+		Bucket<K> bucket = mLowest;
+		if (null == bucket || bucket.mFrequency != 1) {
+			bucket = new Bucket<>(1);
+			link(null, bucket);
+		}
+		bucket.mKeys.add(key);
+		mBuckets.put(key, bucket);
+	}
+
+	@Override
+	public void recordAccess(K key) {
+		Bucket<K> bucket = mBuckets.get(key);
+		if (null == bucket) {
+			return;
+		}
+		Bucket<K> next = bucket.mNext;
+		if (null == next || next.mFrequency != bucket.mFrequency + 1) {
+			next = new Bucket<>(bucket.mFrequency + 1);
+			link(bucket, next);
+		}
+		next.mKeys.add(key);
+		mBuckets.put(key, next);
+		removeFrom(bucket, key);
+	}
+
+	@Override
+	public void recordRemoval(K key) {
+		Bucket<K> bucket = mBuckets.remove(key);
+		if (null != bucket) {
+			removeFrom(bucket, key);
+		}
+	}
+
+	@Override
+	public K selectVictim() {
+		if (null == mLowest) {
+			return null;
+		}
+		Iterator<K> iterator = mLowest.mKeys.iterator();
+		K victim = iterator.next();
+		recordRemoval(victim);
+		return victim;
+	}
+
+	@Override
+	public void clear() {
+		mBuckets.clear();
+		mLowest = null;
+	}
+
+	private void removeFrom(Bucket<K> bucket, K key) {
+		bucket.mKeys.remove(key);
+		if (bucket.mKeys.isEmpty()) {
+			if (null == bucket.mPrevious) {
+				mLowest = bucket.mNext;
+			} else {
+				bucket.mPrevious.mNext = bucket.mNext;
+			}
+			if (null != bucket.mNext) {
+				bucket.mNext.mPrevious = bucket.mPrevious;
+			}
+		}
+	}
+
+	/**
+	 * Links a bucket after another one, or at the head if there is none.
+	 */
+	private void link(Bucket<K> previous, Bucket<K> bucket) {
+		Bucket<K> next = null == previous ? mLowest : previous.mNext;
+		bucket.mPrevious = previous;
+		bucket.mNext = next;
+		if (null != next) {
+			next.mPrevious = bucket;
+		}
+		if (null == previous) {
+			mLowest = bucket;
+		} else {
+			previous.mNext = bucket;
+		}
+	}
+
+	private static final class Bucket<K> {
+
+		final int mFrequency;
+		final LinkedHashSet<K> mKeys = new LinkedHashSet<>();
+		Bucket<K> mPrevious;
+		Bucket<K> mNext;
+
+		Bucket(int frequency) {
+			mFrequency = frequency;
+		}
+	}
+}
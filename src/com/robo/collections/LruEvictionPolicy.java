@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * An {@link EvictionPolicy} that evicts the least recently used item.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class LruEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	private final LinkedHashMap<K, Boolean> mKeys = new LinkedHashMap<>(16, 0.75f, true);
+
+	@Override
+	public void recordInsertion(K key) {
+		mKeys.put(key, Boolean.TRUE);
+	}
+
+	@Override
+	public void recordAccess(K key) {
+		mKeys.get(key);
+	}
+
+	@Override
+	public void recordRemoval(K key) {
+		mKeys.remove(key);
+	}
+
+	@Override
+	public K selectVictim() {
+		Iterator<K> iterator = mKeys.keySet().iterator();
+		if (!iterator.hasNext()) {
+			return null;
+		}
+		K victim = iterator.next();
+		iterator.remove();
+		return victim;
+	}
+
+	@Override
+	public void clear() {
+		mKeys.clear();
+	}
+
+	/**
+	 * Gets the least recently used key without removing it.
+	 */
+	K peekVictim() {
+		Iterator<K> iterator = mKeys.keySet().iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	int size() {
+		return mKeys.size();
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import com.robo.InvalidOperationException;
+
+/**
+ * A {@link KeyedCollection} that reports insertions, removals, replacements
+ * and moves to {@link CollectionChangeListener}s as position-aware
+ * {@link CollectionChange}s, so that mirrors such as UI lists can be updated
+ * incrementally.
+ * <p>
+ * Changes are collected in batches. Every modifying operation is a batch of
+ * its own, and several operations can be grouped into one batch by enclosing
+ * them in {@link #beginBatch()} and {@link #endBatch()}. Within a batch,
+ * adjacent changes of the same kind are coalesced into ranges, and removing an
+ * item that was inserted in the same batch cancels the insertion. Listeners
+ * are notified once when the outermost batch ends.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public abstract class ObservableKeyedCollection<K, V> extends KeyedCollection<K, V> {
+
+	private final List<CollectionChangeListener<V>> mListeners = new CopyOnWriteArrayList<>();
+	private List<CollectionChange<V>> mPendingChanges = new ArrayList<>();
+	private int mBatchDepth;
+
+	protected ObservableKeyedCollection() {
+		super();
+	}
+
+	protected ObservableKeyedCollection(int initialCapacity) {
+		super(initialCapacity);
+	}
+
+	public void addChangeListener(CollectionChangeListener<V> listener) {
+		if (null == listener) {
+			throw new NullPointerException("listener");
+		}
+		mListeners.add(listener);
+	}
+
+	public boolean removeChangeListener(CollectionChangeListener<V> listener) {
+		return mListeners.remove(listener);
+	}
+
+	/**
+	 * Starts a batch. Changes made until the matching call to
+	 * {@link #endBatch()} are delivered together. Batches may be nested; only
+	 * the outermost one delivers.
+	 */
+	public void beginBatch() {
+		mBatchDepth++;
+	}
+
+	/**
+	 * Ends a batch started by {@link #beginBatch()}. If this ends the outermost
+	 * batch and anything has changed, listeners are notified.
+	 * 
+	 * @throws InvalidOperationException
+	 *             If no batch has been started.
+	 */
+	public void endBatch() throws InvalidOperationException {
+		if (mBatchDepth == 0) {
+			throw new InvalidOperationException("No batch has been started");
+		}
+		if (--mBatchDepth > 0 || mPendingChanges.isEmpty()) {
+			return;
+		}
+		List<CollectionChange<V>> changes = Collections.unmodifiableList(mPendingChanges);
+		mPendingChanges = new ArrayList<>();
+		for (CollectionChangeListener<V> listener : mListeners) {
+			listener.onCollectionChanged(changes);
+		}
+	}
+
+	@Override
+	public boolean add(V e) throws InvalidOperationException {
+		K key = getKeyForItem(e);
+		if (null == key) {
+			return false;
+		}
+		beginBatch();
+		try {
+			int index = indexOfKey(key);
+			boolean insertionResult = super.add(e);
+			if (index >= 0) {
+				recordReplace(index, e);
+			} else {
+				recordInsert(size() - 1, e);
+			}
+			return insertionResult;
+		} finally {
+			endBatch();
+		}
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) throws InvalidOperationException {
+		beginBatch();
+		try {
+			return super.addAll(c);
+		} finally {
+			endBatch();
+		}
+	}
+
+	@Override
+	public boolean move(int fromIndex, int toIndex) {
+		V item = getAt(fromIndex);
+		if (!super.move(fromIndex, toIndex)) {
+			return false;
+		}
+		if (fromIndex != toIndex) {
+			beginBatch();
+			mPendingChanges.add(new CollectionChange<>(CollectionChange.Type.MOVE, fromIndex, toIndex, item));
+			endBatch();
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		if (isEmpty()) {
+			return;
+		}
+		beginBatch();
+		try {
+			for (Object item : toArray()) {
+				recordRemove(0, item);
+			}
+			super.clear();
+		} finally {
+			endBatch();
+		}
+	}
+
+	@Override
+	public boolean removeAt(int index) {
+		beginBatch();
+		try {
+			return super.removeAt(index);
+		} finally {
+			endBatch();
+		}
+	}
+
+	@Override
+	public boolean removeByKey(K key) {
+		V item = null == key ? null : get(key);
+		if (null == item) {
+			return false;
+		}
+		beginBatch();
+		try {
+			int index = indexOfKey(key);
+			super.removeByKey(key);
+			recordRemove(index, item);
+			return true;
+		} finally {
+			endBatch();
+		}
+	}
+
+	/**
+	 * Removes the items with the keys of the items of a specified collection
+	 * in a single pass, so that the positions of the removed items are
+	 * tracked without looking each one up.
+	 * 
+	 * @return true if an item was removed for every item of the collection.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean removalResult = true;
+		final Set<K> keysToRemove = new HashSet<>();
+		for (Object o : c) {
+			K key = null == o ? null : getKeyForItem((V) o);
+			if (null == key || !containsKey(key) || !keysToRemove.add(key)) {
+				removalResult = false;
+			}
+		}
+		if (!keysToRemove.isEmpty()) {
+			removeIf(new Predicate<V>() {
+				@Override
+				public boolean test(V item) {
+					return keysToRemove.contains(getKeyForItem(item));
+				}
+			});
+		}
+		return removalResult;
+	}
+
+	/**
+	 * Removes all items that satisfy a specified predicate in a single pass,
+	 * tracking the positions of the removed items as it goes.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean removeIf(Predicate<? super V> filter) {
+		if (null == filter) {
+			throw new NullPointerException();
+		}
+		beginBatch();
+		try {
+			boolean removalResult = false;
+			int index = 0;
+			for (Object o : toArray()) {
+				V item = (V) o;
+				if (filter.test(item)) {
+					super.removeByKey(getKeyForItem(item));
+					recordRemove(index, item);
+					removalResult = true;
+				} else {
+					index++;
+				}
+			}
+			return removalResult;
+		} finally {
+			endBatch();
+		}
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			clear();
+			return true;
+		}
+		final Collection<?> itemsToRetain = c instanceof Set ? c : new HashSet<>(c);
+		return removeIf(new Predicate<V>() {
+			@Override
+			public boolean test(V item) {
+				return !itemsToRetain.contains(item);
+			}
+		});
+	}
+
+	private void recordInsert(int index, V item) {
+		CollectionChange<V> last = getLastChange();
+		if (null == last || !last.mergeInsert(index, item)) {
+			mPendingChanges.add(new CollectionChange<>(CollectionChange.Type.INSERT, index, index, item));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void recordRemove(int index, Object item) {
+		CollectionChange<V> last = getLastChange();
+		if (null != last && last.mergeRemove(index, (V) item)) {
+			if (last.isEmpty()) {
+				mPendingChanges.remove(mPendingChanges.size() - 1);
+			}
+		} else {
+			mPendingChanges.add(new CollectionChange<>(CollectionChange.Type.REMOVE, index, index, (V) item));
+		}
+	}
+
+	private void recordReplace(int index, V item) {
+		CollectionChange<V> last = getLastChange();
+		if (null == last || !last.mergeReplace(index, item)) {
+			mPendingChanges.add(new CollectionChange<>(CollectionChange.Type.REPLACE, index, index, item));
+		}
+	}
+
+	private CollectionChange<V> getLastChange() {
+		int size = mPendingChanges.size();
+		return size == 0 ? null : mPendingChanges.get(size - 1);
+	}
+}
@@ -0,0 +1,720 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.robo.ApplicationException;
+import com.robo.reflect.TypeUtils;
+
+/**
+ * A {@link KeyedCollection} variant that keeps its items outside of the Java
+ * heap. Items are encoded by a {@link ValueCodec} into a direct buffer, and the
+ * insertion order and the key index are direct buffers of offsets and slots,
+ * so the garbage collector sees only a handful of objects regardless of the
+ * number of items. Items are decoded on every access; keys are not stored but
+ * taken from the decoded item when comparing candidates with equal hashes.
+ * <p>
+ * A collection can be written to a file through {@link #writeTo(File)} and
+ * later opened read-only through {@link #OffHeapKeyedCollection(File, ValueCodec)},
+ * which maps the file into memory without reading it. The file keeps the key
+ * hashes of its index, so keys of a collection that is written must have hash
+ * codes that are the same in every process, such as strings, boxed primitives
+ * or classes that compute their hash code from such values. Writing a
+ * collection that holds keys with identity hash codes, e.g. enum constants or
+ * classes that do not override {@link Object#hashCode()}, is rejected.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public abstract class OffHeapKeyedCollection<K, V> implements Collection<V> {
+
+	private static final int MAGIC = 0x524B4331;
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int EMPTY = -1;
+	private static final int DELETED = -2;
+	private static final int REMOVED = -1;
+	private static final int ORDER_ENTRY_SIZE = 8;
+	private static final int TABLE_ENTRY_SIZE = 4;
+	private static final int LENGTH_SIZE = 4;
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final int DEFAULT_DATA_CAPACITY = 4096;
+	private static final int MAX_DATA_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private final ValueCodec<V> mCodec;
+	private final boolean mReadOnly;
+	private ByteBuffer mData;
+	private int mDataEnd;
+	private int mGarbage;
+	private ByteBuffer mOrder;
+	private int mUsed;
+	private int mSize;
+	private ByteBuffer mTable;
+	private int mTableMask;
+	private int mModCount;
+	private int[] mOccupied;
+	private int mIdentityHashedKeys;
+	private Class<?> mLastKeyClass;
+	private boolean mLastKeyClassHashed;
+	private Type mItemType;
+
+	protected OffHeapKeyedCollection(ValueCodec<V> codec) {
+		this(codec, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty collection.
+	 * 
+	 * @param codec
+	 *            Encodes and decodes items.
+	 * @param initialCapacity
+	 *            Number of items the collection can hold before its index has
+	 *            to grow.
+	 */
+	protected OffHeapKeyedCollection(ValueCodec<V> codec, int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("initialCapacity must not be negative");
+		}
+		mCodec = codec;
+		mReadOnly = false;
+		mData = ByteBuffer.allocateDirect(DEFAULT_DATA_CAPACITY);
+		allocateIndex(Math.max(initialCapacity, DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Opens a read-only collection from a file written by
+	 * {@link #writeTo(File)}. The file is mapped into memory, so opening costs
+	 * the same regardless of its size; items are read on demand.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param codec
+	 *            Decodes items. Must match the codec that wrote the file.
+	 * @throws ApplicationException
+	 *             If the file cannot be read or is not a collection file.
+	 */
+	protected OffHeapKeyedCollection(File file, ValueCodec<V> codec) throws ApplicationException {
+		mCodec = codec;
+		mReadOnly = true;
+		ByteBuffer mapped;
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			FileChannel channel = input.getChannel();
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new ApplicationException("Unable to map " + file, e);
+		}
+		if (mapped.limit() < HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION) {
+			throw new ApplicationException(file + " is not a keyed collection file");
+		}
+		mUsed = mapped.getInt(8);
+		mSize = mUsed;
+		int tableSize = mapped.getInt(12);
+		mDataEnd = (int) mapped.getLong(16);
+		mTableMask = tableSize - 1;
+		int position = HEADER_SIZE;
+		mOrder = slice(mapped, position, mUsed * ORDER_ENTRY_SIZE);
+		position += mUsed * ORDER_ENTRY_SIZE;
+		mTable = slice(mapped, position, tableSize * TABLE_ENTRY_SIZE);
+		position += tableSize * TABLE_ENTRY_SIZE;
+		mData = slice(mapped, position, mDataEnd);
+	}
+
+	/**
+	 * Adds an item to this collection. If the collection already contains an
+	 * item with the same key, that item is replaced in place.
+	 * 
+	 * @return true if the item was added or replaced the existing one. false if
+	 *         the item has no key.
+	 * @throws UnsupportedOperationException
+	 *             If this collection is read-only.
+	 * @throws ApplicationException
+	 *             If the encoded items would exceed the largest buffer that
+	 *             can be allocated.
+	 */
+	@Override
+	public boolean add(V e) {
+		ensureWritable();
+		K key = getKeyForItem(e);
+		if (null == key) {
+			return false;
+		}
+		int hash = hash(key);
+		int slot = findSlot(key, hash);
+		int offset = appendRecord(e);
+		if (slot >= 0) {
+			mGarbage += recordSize(offsetAt(slot));
+			mOrder.putInt(slot * ORDER_ENTRY_SIZE, offset);
+			return true;
+		}
+		if (mUsed * ORDER_ENTRY_SIZE == mOrder.capacity()) {
+			ensureSlotAvailable();
+		}
+		slot = mUsed++;
+		mOrder.putInt(slot * ORDER_ENTRY_SIZE, offset);
+		mOrder.putInt(slot * ORDER_ENTRY_SIZE + 4, hash);
+		insertIntoTable(hash, slot);
+		if (null != mOccupied) {
+			updateOccupied(mOccupied, slot, 1);
+		}
+		if (hasIdentityHash(key)) {
+			mIdentityHashedKeys++;
+		}
+		mSize++;
+		mModCount++;
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		boolean insertionResult = false;
+		for (V v : c) {
+			insertionResult |= add(v);
+		}
+		return insertionResult;
+	}
+
+	public V get(K key) {
+		if (null == key) {
+			return null;
+		}
+		int hash = hash(key);
+		for (int i = hash & mTableMask;; i = (i + 1) & mTableMask) {
+			int slot = mTable.getInt(i * TABLE_ENTRY_SIZE);
+			if (slot == EMPTY) {
+				return null;
+			}
+			if (slot >= 0 && mOrder.getInt(slot * ORDER_ENTRY_SIZE + 4) == hash) {
+				// the decoded candidate is the result, so it is decoded only once
+				V item = decodeAt(offsetAt(slot));
+				if (key.equals(getKeyForItem(item))) {
+					return item;
+				}
+			}
+		}
+	}
+
+	public V getAt(int index) {
+		if (isValidIndex(index)) {
+			return decodeAt(offsetAt(slotAt(index)));
+		}
+		return null;
+	}
+
+	@Override
+	public void clear() {
+		ensureWritable();
+		mData = ByteBuffer.allocateDirect(DEFAULT_DATA_CAPACITY);
+		mDataEnd = 0;
+		mGarbage = 0;
+		mUsed = 0;
+		mSize = 0;
+		mIdentityHashedKeys = 0;
+		allocateIndex(DEFAULT_CAPACITY);
+		mModCount++;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+		if (null == o) {
+			return false;
+		}
+		if (null == mItemType) {
+			mItemType = TypeUtils.getGenericParameterType(this, 1);
+		}
+		return o.getClass().equals(mItemType) && containsKey(getKeyForItem((V) o));
+	}
+
+	public boolean containsKey(K key) {
+		return null != key && findSlot(key, hash(key)) >= 0;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean result = true;
+		for (Object o : c) {
+			result &= contains(o);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/**
+	 * Returns an iterator that decodes the items in insertion order.
+	 */
+	@Override
+	public Iterator<V> iterator() {
+		return new ItemIterator();
+	}
+
+	public boolean isReadOnly() {
+		return mReadOnly;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o) {
+		return null != o && removeByKey(getKeyForItem((V) o));
+	}
+
+	public boolean removeAt(int index) {
+		ensureWritable();
+		if (isValidIndex(index)) {
+			return removeByKey(getKeyForItem(decodeAt(offsetAt(slotAt(index)))));
+		}
+		return false;
+	}
+
+	public boolean removeByKey(K key) {
+		ensureWritable();
+		if (null == key) {
+			return false;
+		}
+		int hash = hash(key);
+		for (int i = hash & mTableMask;; i = (i + 1) & mTableMask) {
+			int slot = mTable.getInt(i * TABLE_ENTRY_SIZE);
+			if (slot == EMPTY) {
+				return false;
+			}
+			if (slot >= 0 && isSlotFor(slot, key, hash)) {
+				mTable.putInt(i * TABLE_ENTRY_SIZE, DELETED);
+				mGarbage += recordSize(offsetAt(slot));
+				mOrder.putInt(slot * ORDER_ENTRY_SIZE, REMOVED);
+				if (null == mOccupied) {
+					mOccupied = buildOccupied();
+				} else {
+					updateOccupied(mOccupied, slot, -1);
+				}
+				if (hasIdentityHash(key)) {
+					mIdentityHashedKeys--;
+				}
+				mSize--;
+				mModCount++;
+				return true;
+			}
+		}
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean removalResult = true;
+		for (Object o : c) {
+			removalResult &= remove(o);
+		}
+		return removalResult;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		ensureWritable();
+		if (null == c || c.isEmpty()) {
+			clear();
+			return true;
+		}
+		Collection<?> itemsToRetain = c instanceof Set ? c : new HashSet<>(c);
+		boolean removalResult = false;
+		for (int slot = 0; slot < mUsed; slot++) {
+			int offset = offsetAt(slot);
+			if (offset != REMOVED) {
+				V value = decodeAt(offset);
+				if (!itemsToRetain.contains(value)) {
+					removalResult |= removeByKey(getKeyForItem(value));
+				}
+			}
+		}
+		return removalResult;
+	}
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	@Override
+	public Object[] toArray() {
+		Object[] result = new Object[mSize];
+		copyValuesTo(result);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		T[] result = a.length >= mSize ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), mSize);
+		copyValuesTo(result);
+		if (result.length > mSize) {
+			result[mSize] = null;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes this collection to a file which can later be opened through
+	 * {@link #OffHeapKeyedCollection(File, ValueCodec)}. Space left by removed
+	 * items is not written.
+	 * 
+	 * @param file
+	 *            The file. Overwritten if it exists.
+	 * @throws ApplicationException
+	 *             If the file cannot be written, or the collection holds keys
+	 *             whose hash codes are not stable across processes.
+	 */
+	public void writeTo(File file) throws ApplicationException {
+		if (mIdentityHashedKeys > 0) {
+			throw new ApplicationException("Keys with identity hash codes cannot be written to a file");
+		}
+		if (!mReadOnly) {
+			compactIfFragmented();
+			if (mGarbage > 0) {
+				compactData(mDataEnd - mGarbage);
+			}
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(mUsed).putInt(mTableMask + 1).putLong(mDataEnd);
+		header.flip();
+		ByteBuffer[] sections = new ByteBuffer[] { header, slice(mOrder, 0, mUsed * ORDER_ENTRY_SIZE),
+				slice(mTable, 0, (mTableMask + 1) * TABLE_ENTRY_SIZE), slice(mData, 0, mDataEnd) };
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+			FileChannel channel = output.getChannel();
+			channel.truncate(0);
+			for (ByteBuffer section : sections) {
+				while (section.hasRemaining()) {
+					channel.write(section);
+				}
+			}
+		} catch (IOException e) {
+			throw new ApplicationException("Unable to write " + file, e);
+		}
+	}
+
+	protected abstract K getKeyForItem(V item);
+
+	private void ensureWritable() {
+		if (mReadOnly) {
+			throw new UnsupportedOperationException("The collection is read-only");
+		}
+	}
+
+	private void copyValuesTo(Object[] target) {
+		int index = 0;
+		for (int slot = 0; slot < mUsed; slot++) {
+			int offset = offsetAt(slot);
+			if (offset != REMOVED) {
+				target[index++] = decodeAt(offset);
+			}
+		}
+	}
+
+	private int offsetAt(int slot) {
+		return mOrder.getInt(slot * ORDER_ENTRY_SIZE);
+	}
+
+	private int recordSize(int offset) {
+		return LENGTH_SIZE + mData.getInt(offset);
+	}
+
+	private V decodeAt(int offset) {
+		int length = mData.getInt(offset);
+		return mCodec.decode(slice(mData, offset + LENGTH_SIZE, length));
+	}
+
+	private int appendRecord(V value) {
+		int length = mCodec.sizeOf(value);
+		long required = (long) LENGTH_SIZE + length;
+		if (mData.capacity() - mDataEnd < required) {
+			compactData(growDataCapacity(mData.capacity(), mDataEnd - mGarbage, required));
+		}
+		int offset = mDataEnd;
+		mData.putInt(offset, length);
+		ByteBuffer target = slice(mData, offset + LENGTH_SIZE, length);
+		mCodec.encode(value, target);
+		if (target.hasRemaining()) {
+			throw new ApplicationException("The codec wrote fewer bytes than it reported");
+		}
+		mDataEnd = offset + (int) required;
+		return offset;
+	}
+
+	/**
+	 * Gets the capacity of a data buffer that holds the live records plus a
+	 * new record, with room to spare for later ones.
+	 * 
+	 * @param capacity
+	 *            Capacity of the current buffer.
+	 * @param liveSize
+	 *            Size of the live records.
+	 * @param required
+	 *            Size of the new record.
+	 * @throws ApplicationException
+	 *             If the records would not fit in the largest buffer that can
+	 *             be allocated.
+	 */
+	static int growDataCapacity(int capacity, int liveSize, long required) throws ApplicationException {
+		if (liveSize + required > MAX_DATA_CAPACITY) {
+			throw new ApplicationException("The collection cannot hold more than " + MAX_DATA_CAPACITY
+					+ " bytes of encoded items");
+		}
+		long grown = Math.max(capacity, 1);
+		while (grown - liveSize < required || liveSize > grown / 2) {
+			grown *= 2;
+		}
+		return (int) Math.min(grown, MAX_DATA_CAPACITY);
+	}
+
+	/**
+	 * Copies the records of live items into a new data buffer of a specified
+	 * capacity and updates their offsets.
+	 */
+	private void compactData(int capacity) {
+		ByteBuffer data = ByteBuffer.allocateDirect(capacity);
+		int end = 0;
+		for (int slot = 0; slot < mUsed; slot++) {
+			int offset = offsetAt(slot);
+			if (offset != REMOVED) {
+				int size = recordSize(offset);
+				data.position(end);
+				data.put(slice(mData, offset, size));
+				mOrder.putInt(slot * ORDER_ENTRY_SIZE, end);
+				end += size;
+			}
+		}
+		data.clear();
+		mData = data;
+		mDataEnd = end;
+		mGarbage = 0;
+	}
+
+	private boolean isSlotFor(int slot, K key, int hash) {
+		return mOrder.getInt(slot * ORDER_ENTRY_SIZE + 4) == hash
+				&& key.equals(getKeyForItem(decodeAt(offsetAt(slot))));
+	}
+
+	private int findSlot(K key, int hash) {
+		for (int i = hash & mTableMask;; i = (i + 1) & mTableMask) {
+			int slot = mTable.getInt(i * TABLE_ENTRY_SIZE);
+			if (slot == EMPTY) {
+				return EMPTY;
+			}
+			if (slot >= 0 && isSlotFor(slot, key, hash)) {
+				return slot;
+			}
+		}
+	}
+
+	private void insertIntoTable(int hash, int slot) {
+		int i = hash & mTableMask;
+		while (mTable.getInt(i * TABLE_ENTRY_SIZE) >= 0) {
+			i = (i + 1) & mTableMask;
+		}
+		mTable.putInt(i * TABLE_ENTRY_SIZE, slot);
+	}
+
+	private void ensureSlotAvailable() {
+		int capacity = mOrder.capacity() / ORDER_ENTRY_SIZE;
+		rebuildIndex(mSize <= mUsed / 2 ? capacity : capacity * 2);
+	}
+
+	private void compactIfFragmented() {
+		if (mUsed != mSize) {
+			rebuildIndex(mOrder.capacity() / ORDER_ENTRY_SIZE);
+		}
+	}
+
+	/**
+	 * Gets the slot of the item at a specified position.
+	 */
+	private int slotAt(int index) {
+		return null == mOccupied ? index : findOccupied(mOccupied, index);
+	}
+
+	/**
+	 * Builds a Fenwick tree that counts the occupied slots of the order.
+	 */
+	private int[] buildOccupied() {
+		int[] tree = new int[mOrder.capacity() / ORDER_ENTRY_SIZE + 1];
+		for (int i = 1; i < tree.length; i++) {
+			if (i <= mUsed && offsetAt(i - 1) != REMOVED) {
+				tree[i]++;
+			}
+			int parent = i + (i & -i);
+			if (parent < tree.length) {
+				tree[parent] += tree[i];
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Tells whether a key's hash code depends on the object's identity, using
+	 * a one-entry cache as keys are usually of one class.
+	 */
+	private boolean hasIdentityHash(K key) {
+		Class<?> keyClass = key.getClass();
+		if (keyClass != mLastKeyClass) {
+			Class<?> declaringClass;
+			try {
+				declaringClass = keyClass.getMethod("hashCode").getDeclaringClass();
+			} catch (NoSuchMethodException e) {
+				declaringClass = Object.class;
+			}
+			mLastKeyClassHashed = declaringClass == Object.class || declaringClass == Enum.class;
+			mLastKeyClass = keyClass;
+		}
+		return mLastKeyClassHashed;
+	}
+
+	private void allocateIndex(int capacity) {
+		mOrder = ByteBuffer.allocateDirect(capacity * ORDER_ENTRY_SIZE);
+		mOccupied = null;
+		int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		mTable = ByteBuffer.allocateDirect(tableSize * TABLE_ENTRY_SIZE);
+		mTableMask = tableSize - 1;
+		for (int i = 0; i < tableSize; i++) {
+			mTable.putInt(i * TABLE_ENTRY_SIZE, EMPTY);
+		}
+	}
+
+	/**
+	 * Rebuilds the order and the hash table with a specified capacity,
+	 * dropping removed slots.
+	 */
+	private void rebuildIndex(int capacity) {
+		ByteBuffer order = mOrder;
+		int used = mUsed;
+		allocateIndex(capacity);
+		mUsed = 0;
+		for (int slot = 0; slot < used; slot++) {
+			int offset = order.getInt(slot * ORDER_ENTRY_SIZE);
+			if (offset != REMOVED) {
+				int hash = order.getInt(slot * ORDER_ENTRY_SIZE + 4);
+				mOrder.putInt(mUsed * ORDER_ENTRY_SIZE, offset);
+				mOrder.putInt(mUsed * ORDER_ENTRY_SIZE + 4, hash);
+				insertIntoTable(hash, mUsed);
+				mUsed++;
+			}
+		}
+		mModCount++;
+	}
+
+	private boolean isValidIndex(int index) {
+		return index >= 0 && index < size();
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.limit(offset + length);
+		duplicate.position(offset);
+		return duplicate.slice();
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static void updateOccupied(int[] tree, int slot, int delta) {
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Finds the slot that holds the item at a specified position.
+	 */
+	private static int findOccupied(int[] tree, int index) {
+		int slot = 0;
+		int remaining = index + 1;
+		for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+			int next = slot + step;
+			if (next < tree.length && tree[next] < remaining) {
+				slot = next;
+				remaining -= tree[next];
+			}
+		}
+		return slot;
+	}
+
+	private final class ItemIterator implements Iterator<V> {
+
+		private int mNextSlot;
+		private int mLastSlot = -1;
+		private int mExpectedModCount = mModCount;
+
+		@Override
+		public boolean hasNext() {
+			checkForComodification();
+			while (mNextSlot < mUsed && offsetAt(mNextSlot) == REMOVED) {
+				mNextSlot++;
+			}
+			return mNextSlot < mUsed;
+		}
+
+		@Override
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			mLastSlot = mNextSlot++;
+			return decodeAt(offsetAt(mLastSlot));
+		}
+
+		@Override
+		public void remove() {
+			if (mLastSlot < 0) {
+				throw new IllegalStateException();
+			}
+			checkForComodification();
+			removeByKey(getKeyForItem(decodeAt(offsetAt(mLastSlot))));
+			mLastSlot = -1;
+			mExpectedModCount = mModCount;
+		}
+
+		private void checkForComodification() {
+			if (mModCount != mExpectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+}
@@ -0,0 +1,722 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.lang.reflect.Type;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.robo.reflect.TypeUtils;
+
+/**
+ * A {@link KeyedCollection} variant built on persistent data structures, so
+ * that {@link #snapshot()} costs O(1) and a snapshot never changes while the
+ * collection goes on being modified.
+ * <p>
+ * Keys are indexed by a hash array mapped trie and the insertion order is a
+ * 32-way trie whose nodes count their live items, which also gives
+ * O(log<sub>32</sub> n) positional access. Every update copies only the path
+ * from the root to the changed item and shares all other nodes with earlier
+ * versions. The collection is meant for a single writer; any number of
+ * readers may work on snapshots without locking.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public abstract class PersistentKeyedCollection<K, V> implements Collection<V> {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	private static final int MIN_REBUILD_SIZE = 64;
+
+	private volatile Snapshot<K, V> mCurrent = new Snapshot<>(this, null, null, 0, 0, 0);
+	private volatile Type mItemType;
+
+	/**
+	 * Takes a snapshot of this collection in O(1).
+	 * 
+	 * @return A read-only view of the items at the time of this call.
+	 */
+	public Snapshot<K, V> snapshot() {
+		return mCurrent;
+	}
+
+	/**
+	 * Adds an item to this collection. If the collection already contains an
+	 * item with the same key, that item is replaced in place.
+	 * 
+	 * @return true if the item was added or replaced the existing one. false if
+	 *         the item has no key.
+	 */
+	@Override
+	public boolean add(V e) {
+		K key = getKeyForItem(e);
+		if (null == key) {
+			return false;
+		}
+		Snapshot<K, V> current = mCurrent;
+		int hash = hash(key);
+		Entry<K, V> existing = null == current.mIndex ? null : current.mIndex.find(key, hash, 0);
+		if (null != existing) {
+			Entry<K, V> entry = new Entry<>(key, e, hash, existing.mPosition);
+			mCurrent = new Snapshot<>(this, current.mIndex.assoc(entry, 0), setAt(current.mOrder, current.mOrderShift,
+					entry.mPosition, entry, 0), current.mOrderShift, current.mUsed, current.mSize);
+			return true;
+		}
+		if (current.mUsed == Integer.MAX_VALUE) {
+			throw new IllegalStateException("The collection is full");
+		}
+		Entry<K, V> entry = new Entry<>(key, e, hash, current.mUsed);
+		OrderNode order = current.mOrder;
+		int shift = current.mOrderShift;
+		if (shift < 30 && current.mUsed == 1 << (shift + BITS)) {
+			Object[] children = new Object[WIDTH];
+			children[0] = order;
+			order = new OrderNode(children, order.mLive);
+			shift += BITS;
+		}
+		HamtNode<K, V> index = null == current.mIndex ? BitmapNode.<K, V> empty() : current.mIndex;
+		mCurrent = new Snapshot<>(this, index.assoc(entry, 0), append(order, shift, entry.mPosition, entry), shift,
+				current.mUsed + 1, current.mSize + 1);
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		boolean insertionResult = false;
+		for (V v : c) {
+			insertionResult |= add(v);
+		}
+		return insertionResult;
+	}
+
+	public V get(K key) {
+		return mCurrent.get(key);
+	}
+
+	public V getAt(int index) {
+		return mCurrent.getAt(index);
+	}
+
+	@Override
+	public void clear() {
+		mCurrent = new Snapshot<>(this, null, null, 0, 0, 0);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return mCurrent.contains(o);
+	}
+
+	public boolean containsKey(K key) {
+		return mCurrent.containsKey(key);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		return mCurrent.containsAll(c);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return mCurrent.mSize == 0;
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the items in insertion order.
+	 * Changes made after this call are not visible to the iterator, and
+	 * {@link Iterator#remove()} removes the item from this collection.
+	 */
+	@Override
+	public Iterator<V> iterator() {
+		final Iterator<V> iterator = mCurrent.iterator();
+		return new Iterator<V>() {
+			private V mLast;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public V next() {
+				mLast = iterator.next();
+				return mLast;
+			}
+
+			@Override
+			public void remove() {
+				if (null == mLast) {
+					throw new IllegalStateException();
+				}
+				removeByKey(getKeyForItem(mLast));
+				mLast = null;
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o) {
+		return null != o && removeByKey(getKeyForItem((V) o));
+	}
+
+	public boolean removeAt(int index) {
+		V item = getAt(index);
+		return null != item && removeByKey(getKeyForItem(item));
+	}
+
+	public boolean removeByKey(K key) {
+		Snapshot<K, V> current = mCurrent;
+		if (null == key || null == current.mIndex) {
+			return false;
+		}
+		int hash = hash(key);
+		Entry<K, V> existing = current.mIndex.find(key, hash, 0);
+		if (null == existing) {
+			return false;
+		}
+		Snapshot<K, V> next = new Snapshot<>(this, current.mIndex.dissoc(key, hash, 0), setAt(current.mOrder,
+				current.mOrderShift, existing.mPosition, null, -1), current.mOrderShift, current.mUsed,
+				current.mSize - 1);
+		if (next.mUsed >= MIN_REBUILD_SIZE && next.mSize < next.mUsed / 2) {
+			next = rebuild(next);
+		}
+		mCurrent = next;
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean removalResult = true;
+		for (Object o : c) {
+			removalResult &= remove(o);
+		}
+		return removalResult;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			clear();
+			return true;
+		}
+		Collection<?> itemsToRetain = c instanceof Set ? c : new HashSet<>(c);
+		boolean removalResult = false;
+		for (V v : mCurrent) {
+			if (!itemsToRetain.contains(v)) {
+				removalResult |= removeByKey(getKeyForItem(v));
+			}
+		}
+		return removalResult;
+	}
+
+	@Override
+	public int size() {
+		return mCurrent.mSize;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return mCurrent.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		return mCurrent.toArray(a);
+	}
+
+	protected abstract K getKeyForItem(V item);
+
+	@SuppressWarnings("unchecked")
+	private boolean containsItem(Object o, Snapshot<K, V> snapshot) {
+		if (null == o) {
+			return false;
+		}
+		Type itemType = mItemType;
+		if (null == itemType) {
+			itemType = TypeUtils.getGenericParameterType(this, 1);
+			mItemType = itemType;
+		}
+		return o.getClass().equals(itemType) && snapshot.containsKey(getKeyForItem((V) o));
+	}
+
+	/**
+	 * Renumbers the live items from zero, dropping the positions of removed
+	 * items. Earlier snapshots keep their own structures.
+	 */
+	private static <K, V> Snapshot<K, V> rebuild(Snapshot<K, V> snapshot) {
+		HamtNode<K, V> index = BitmapNode.empty();
+		OrderNode order = null;
+		int shift = 0;
+		int position = 0;
+		for (Entry<K, V> entry : snapshot.entries()) {
+			if (shift < 30 && position == 1 << (shift + BITS)) {
+				Object[] children = new Object[WIDTH];
+				children[0] = order;
+				order = new OrderNode(children, order.mLive);
+				shift += BITS;
+			}
+			Entry<K, V> moved = new Entry<>(entry.mKey, entry.mValue, entry.mHash, position);
+			index = index.assoc(moved, 0);
+			order = append(order, shift, position, moved);
+			position++;
+		}
+		return new Snapshot<>(snapshot.mOwner, position == 0 ? null : index, order, shift, position, position);
+	}
+
+	private static OrderNode append(OrderNode node, int shift, int position, Object entry) {
+		Object[] children = null == node ? new Object[WIDTH] : node.mChildren.clone();
+		int i = (position >>> shift) & MASK;
+		if (shift == 0) {
+			children[i] = entry;
+		} else {
+			children[i] = append((OrderNode) children[i], shift - BITS, position, entry);
+		}
+		return new OrderNode(children, (null == node ? 0 : node.mLive) + 1);
+	}
+
+	private static OrderNode setAt(OrderNode node, int shift, int position, Object entry, int delta) {
+		Object[] children = node.mChildren.clone();
+		int i = (position >>> shift) & MASK;
+		if (shift == 0) {
+			children[i] = entry;
+		} else {
+			children[i] = setAt((OrderNode) children[i], shift - BITS, position, entry, delta);
+		}
+		return new OrderNode(children, node.mLive + delta);
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * An immutable state of a {@link PersistentKeyedCollection}. All read
+	 * operations are lock-free and unaffected by later changes to the
+	 * collection.
+	 * 
+	 * @param <K>
+	 *            Type of keys.
+	 * @param <V>
+	 *            Type of items.
+	 */
+	public static final class Snapshot<K, V> extends AbstractCollection<V> {
+
+		private final PersistentKeyedCollection<K, V> mOwner;
+		private final HamtNode<K, V> mIndex;
+		private final OrderNode mOrder;
+		private final int mOrderShift;
+		private final int mUsed;
+		private final int mSize;
+
+		Snapshot(PersistentKeyedCollection<K, V> owner, HamtNode<K, V> index, OrderNode order, int orderShift,
+				int used, int size) {
+			mOwner = owner;
+			mIndex = index;
+			mOrder = order;
+			mOrderShift = orderShift;
+			mUsed = used;
+			mSize = size;
+		}
+
+		public V get(K key) {
+			Entry<K, V> entry = null == key || null == mIndex ? null : mIndex.find(key, hash(key), 0);
+			return null == entry ? null : entry.mValue;
+		}
+
+		/**
+		 * Gets the item at a specified position in insertion order, in
+		 * O(log<sub>32</sub> n).
+		 */
+		@SuppressWarnings("unchecked")
+		public V getAt(int index) {
+			if (index < 0 || index >= mSize) {
+				return null;
+			}
+			OrderNode node = mOrder;
+			for (int shift = mOrderShift; shift > 0; shift -= BITS) {
+				for (Object child : node.mChildren) {
+					OrderNode childNode = (OrderNode) child;
+					if (null == childNode) {
+						continue;
+					}
+					if (index < childNode.mLive) {
+						node = childNode;
+						break;
+					}
+					index -= childNode.mLive;
+				}
+			}
+			for (Object child : node.mChildren) {
+				if (null != child && index-- == 0) {
+					return ((Entry<K, V>) child).mValue;
+				}
+			}
+			return null;
+		}
+
+		public boolean containsKey(K key) {
+			return null != key && null != mIndex && null != mIndex.find(key, hash(key), 0);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return mOwner.containsItem(o, this);
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			final Iterator<Entry<K, V>> entries = entries().iterator();
+			return new Iterator<V>() {
+				@Override
+				public boolean hasNext() {
+					return entries.hasNext();
+				}
+
+				@Override
+				public V next() {
+					return entries.next().mValue;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Snapshots are read-only");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return mSize;
+		}
+
+		Iterable<Entry<K, V>> entries() {
+			return new Iterable<Entry<K, V>>() {
+				@Override
+				public Iterator<Entry<K, V>> iterator() {
+					return new EntryIterator<>(Snapshot.this);
+				}
+			};
+		}
+
+		/**
+		 * Gets the leaf of the order trie which holds a specified position.
+		 */
+		Object[] leafFor(int position) {
+			OrderNode node = mOrder;
+			for (int shift = mOrderShift; shift > 0; shift -= BITS) {
+				node = (OrderNode) node.mChildren[(position >>> shift) & MASK];
+			}
+			return node.mChildren;
+		}
+	}
+
+	static final class Entry<K, V> {
+
+		final K mKey;
+		final V mValue;
+		final int mHash;
+		final int mPosition;
+
+		Entry(K key, V value, int hash, int position) {
+			mKey = key;
+			mValue = value;
+			mHash = hash;
+			mPosition = position;
+		}
+	}
+
+	/**
+	 * A node of the order trie. Leaves hold entries, inner nodes hold nodes;
+	 * each node counts the live entries below it.
+	 */
+	static final class OrderNode {
+
+		final Object[] mChildren;
+		final int mLive;
+
+		OrderNode(Object[] children, int live) {
+			mChildren = children;
+			mLive = live;
+		}
+	}
+
+	private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+
+		private final Snapshot<K, V> mSnapshot;
+		private Object[] mLeaf;
+		private int mPosition;
+		private Entry<K, V> mNext;
+
+		EntryIterator(Snapshot<K, V> snapshot) {
+			mSnapshot = snapshot;
+			advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return null != mNext;
+		}
+
+		@Override
+		public Entry<K, V> next() {
+			Entry<K, V> next = mNext;
+			if (null == next) {
+				throw new NoSuchElementException();
+			}
+			advance();
+			return next;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			mNext = null;
+			while (mPosition < mSnapshot.mUsed) {
+				if (null == mLeaf || (mPosition & MASK) == 0) {
+					mLeaf = mSnapshot.leafFor(mPosition);
+				}
+				Object entry = mLeaf[mPosition & MASK];
+				mPosition++;
+				if (null != entry) {
+					mNext = (Entry<K, V>) entry;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A node of the hash array mapped trie that indexes entries by key.
+	 */
+	abstract static class HamtNode<K, V> {
+
+		abstract Entry<K, V> find(Object key, int hash, int shift);
+
+		abstract HamtNode<K, V> assoc(Entry<K, V> entry, int shift);
+
+		/**
+		 * @return The node without the key, or null if it became empty.
+		 */
+		abstract HamtNode<K, V> dissoc(Object key, int hash, int shift);
+	}
+
+	/**
+	 * A trie node that stores up to 32 entries or sub-nodes, compressed by a
+	 * bitmap of the occupied hash fragments.
+	 */
+	static final class BitmapNode<K, V> extends HamtNode<K, V> {
+
+		private static final BitmapNode<?, ?> EMPTY = new BitmapNode<>(0, new Object[0]);
+
+		private final int mBitmap;
+		private final Object[] mArray;
+
+		BitmapNode(int bitmap, Object[] array) {
+			mBitmap = bitmap;
+			mArray = array;
+		}
+
+		@SuppressWarnings("unchecked")
+		static <K, V> BitmapNode<K, V> empty() {
+			return (BitmapNode<K, V>) EMPTY;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		Entry<K, V> find(Object key, int hash, int shift) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((mBitmap & bit) == 0) {
+				return null;
+			}
+			Object child = mArray[Integer.bitCount(mBitmap & (bit - 1))];
+			if (child instanceof HamtNode) {
+				return ((HamtNode<K, V>) child).find(key, hash, shift + BITS);
+			}
+			Entry<K, V> entry = (Entry<K, V>) child;
+			return entry.mHash == hash && key.equals(entry.mKey) ? entry : null;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		HamtNode<K, V> assoc(Entry<K, V> entry, int shift) {
+			int bit = 1 << ((entry.mHash >>> shift) & MASK);
+			int i = Integer.bitCount(mBitmap & (bit - 1));
+			if ((mBitmap & bit) == 0) {
+				Object[] array = new Object[mArray.length + 1];
+				System.arraycopy(mArray, 0, array, 0, i);
+				array[i] = entry;
+				System.arraycopy(mArray, i, array, i + 1, mArray.length - i);
+				return new BitmapNode<>(mBitmap | bit, array);
+			}
+			Object child = mArray[i];
+			Object replacement;
+			if (child instanceof HamtNode) {
+				replacement = ((HamtNode<K, V>) child).assoc(entry, shift + BITS);
+			} else {
+				Entry<K, V> existing = (Entry<K, V>) child;
+				if (existing.mHash == entry.mHash && existing.mKey.equals(entry.mKey)) {
+					replacement = entry;
+				} else {
+					replacement = merge(existing, entry, shift + BITS);
+				}
+			}
+			Object[] array = mArray.clone();
+			array[i] = replacement;
+			return new BitmapNode<>(mBitmap, array);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		HamtNode<K, V> dissoc(Object key, int hash, int shift) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((mBitmap & bit) == 0) {
+				return this;
+			}
+			int i = Integer.bitCount(mBitmap & (bit - 1));
+			Object child = mArray[i];
+			if (child instanceof HamtNode) {
+				HamtNode<K, V> node = ((HamtNode<K, V>) child).dissoc(key, hash, shift + BITS);
+				if (node == child) {
+					return this;
+				}
+				if (null != node) {
+					Object[] array = mArray.clone();
+					array[i] = node;
+					return new BitmapNode<>(mBitmap, array);
+				}
+			} else {
+				Entry<K, V> entry = (Entry<K, V>) child;
+				if (entry.mHash != hash || !key.equals(entry.mKey)) {
+					return this;
+				}
+			}
+			if (mArray.length == 1) {
+				return null;
+			}
+			Object[] array = new Object[mArray.length - 1];
+			System.arraycopy(mArray, 0, array, 0, i);
+			System.arraycopy(mArray, i + 1, array, i, mArray.length - i - 1);
+			return new BitmapNode<>(mBitmap & ~bit, array);
+		}
+
+		static <K, V> HamtNode<K, V> merge(Entry<K, V> first, Entry<K, V> second, int shift) {
+			if (first.mHash == second.mHash || shift >= 32) {
+				return new CollisionNode<>(first.mHash, new Object[] { first, second });
+			}
+			int firstFragment = (first.mHash >>> shift) & MASK;
+			int secondFragment = (second.mHash >>> shift) & MASK;
+			if (firstFragment == secondFragment) {
+				return new BitmapNode<>(1 << firstFragment, new Object[] { merge(first, second, shift + BITS) });
+			}
+			Object[] array = firstFragment < secondFragment ? new Object[] { first, second } : new Object[] {
+					second, first };
+			return new BitmapNode<>((1 << firstFragment) | (1 << secondFragment), array);
+		}
+	}
+
+	/**
+	 * A trie node that holds entries whose keys have the same hash.
+	 */
+	static final class CollisionNode<K, V> extends HamtNode<K, V> {
+
+		private final int mHash;
+		private final Object[] mEntries;
+
+		CollisionNode(int hash, Object[] entries) {
+			mHash = hash;
+			mEntries = entries;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		Entry<K, V> find(Object key, int hash, int shift) {
+			if (hash != mHash) {
+				return null;
+			}
+			for (Object o : mEntries) {
+				Entry<K, V> entry = (Entry<K, V>) o;
+				if (key.equals(entry.mKey)) {
+					return entry;
+				}
+			}
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		HamtNode<K, V> assoc(Entry<K, V> entry, int shift) {
+			if (entry.mHash != mHash) {
+				BitmapNode<K, V> node = new BitmapNode<>(1 << ((mHash >>> shift) & MASK), new Object[] { this });
+				return node.assoc(entry, shift);
+			}
+			for (int i = 0; i < mEntries.length; i++) {
+				if (((Entry<K, V>) mEntries[i]).mKey.equals(entry.mKey)) {
+					Object[] entries = mEntries.clone();
+					entries[i] = entry;
+					return new CollisionNode<>(mHash, entries);
+				}
+			}
+			Object[] entries = new Object[mEntries.length + 1];
+			System.arraycopy(mEntries, 0, entries, 0, mEntries.length);
+			entries[mEntries.length] = entry;
+			return new CollisionNode<>(mHash, entries);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		HamtNode<K, V> dissoc(Object key, int hash, int shift) {
+			if (hash != mHash) {
+				return this;
+			}
+			for (int i = 0; i < mEntries.length; i++) {
+				if (key.equals(((Entry<K, V>) mEntries[i]).mKey)) {
+					if (mEntries.length == 1) {
+						return null;
+					}
+					Object[] entries = new Object[mEntries.length - 1];
+					System.arraycopy(mEntries, 0, entries, 0, i);
+					System.arraycopy(mEntries, i + 1, entries, i, mEntries.length - i - 1);
+					return new CollisionNode<>(mHash, entries);
+				}
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,461 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.robo.reflect.TypeUtils;
+
+/**
+ * Slot, hash table and position bookkeeping shared by
+ * {@link IntKeyedCollection} and {@link LongKeyedCollection}. Items are kept
+ * in insertion order in slots; subclasses keep the key of each slot in a
+ * primitive array and look keys up through the open-addressing table of slot
+ * indices. Positional access after removals goes through a Fenwick tree of
+ * occupied slots, as in {@link KeyedCollection}.
+ * 
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+abstract class PrimitiveKeyedCollection<V> implements Collection<V> {
+
+	static final int EMPTY = -1;
+	static final int DELETED = -2;
+	private static final int DEFAULT_CAPACITY = 8;
+	private static final Object[] EMPTY_SLOTS = new Object[0];
+	private static final int[] EMPTY_TABLE = new int[0];
+
+	private final int mInitialCapacity;
+	Object[] mValues = EMPTY_SLOTS;
+	int[] mTable = EMPTY_TABLE;
+	private int[] mOccupied;
+	private int mUsed;
+	private int mSize;
+	private int mModCount;
+	private Type mItemType;
+
+	/**
+	 * @param initialCapacity
+	 *            Number of items the collection holds before it has to grow.
+	 *            The arrays are allocated on the first insertion.
+	 */
+	PrimitiveKeyedCollection(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("initialCapacity must not be negative");
+		}
+		mInitialCapacity = Math.max(initialCapacity, DEFAULT_CAPACITY);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		int required = mSize + c.size();
+		if (required > mValues.length) {
+			if (mValues.length == 0) {
+				allocate(Math.max(required, mInitialCapacity));
+			} else {
+				resize(required);
+			}
+		}
+		boolean insertionResult = false;
+		for (V v : c) {
+			insertionResult |= add(v);
+		}
+		return insertionResult;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V getAt(int index) {
+		if (isValidIndex(index)) {
+			return (V) mValues[slotAt(index)];
+		}
+		return null;
+	}
+
+	@Override
+	public void clear() {
+		resizeKeys(0);
+		mValues = EMPTY_SLOTS;
+		mTable = EMPTY_TABLE;
+		mOccupied = null;
+		mUsed = 0;
+		mSize = 0;
+		mModCount++;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+		if (null == o) {
+			return false;
+		}
+		if (null == mItemType) {
+			mItemType = TypeUtils.getGenericParameterType(this, 0);
+		}
+		return o.getClass().equals(mItemType) && findSlotOf((V) o) >= 0;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean result = true;
+		for (Object o : c) {
+			result &= contains(o);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/**
+	 * Returns an iterator over the items in insertion order.
+	 */
+	@Override
+	public Iterator<V> iterator() {
+		return new ItemIterator();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o) {
+		if (null == o) {
+			return false;
+		}
+		int slot = findSlotOf((V) o);
+		return slot >= 0 && removeSlot(slot);
+	}
+
+	public boolean removeAt(int index) {
+		return isValidIndex(index) && removeSlot(slotAt(index));
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean removalResult = true;
+		for (Object o : c) {
+			removalResult &= remove(o);
+		}
+		return removalResult;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			clear();
+			return true;
+		}
+		Collection<?> itemsToRetain = c instanceof Set ? c : new HashSet<>(c);
+		boolean removalResult = false;
+		for (int slot = 0; slot < mUsed; slot++) {
+			Object value = mValues[slot];
+			if (null != value && !itemsToRetain.contains(value)) {
+				removalResult |= removeSlot(slot);
+			}
+		}
+		return removalResult;
+	}
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	@Override
+	public Object[] toArray() {
+		Object[] result = new Object[mSize];
+		copyValuesTo(result);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		T[] result = a.length >= mSize ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), mSize);
+		copyValuesTo(result);
+		if (result.length > mSize) {
+			result[mSize] = null;
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the slot of the item with the key of a specified item.
+	 * 
+	 * @return The slot, or {@link #EMPTY} if there is no such item.
+	 */
+	abstract int findSlotOf(V item);
+
+	/**
+	 * Gets the hash of the key in a specified slot, as used to place it in the
+	 * table.
+	 */
+	abstract int hashAt(int slot);
+
+	/**
+	 * Resizes the key array, keeping the keys of the slots that remain.
+	 */
+	abstract void resizeKeys(int capacity);
+
+	abstract void moveKey(int fromSlot, int toSlot);
+
+	/**
+	 * Reserves the slot for a new item, growing or compacting the arrays if
+	 * they are full. The caller stores the key in the returned slot and then
+	 * calls {@link #insertSlot(int, int, Object)}.
+	 */
+	final int reserveSlot() {
+		if (mUsed == mValues.length) {
+			ensureSlotAvailable();
+		}
+		return mUsed++;
+	}
+
+	/**
+	 * Stores a new item in a slot obtained from {@link #reserveSlot()}, whose
+	 * key has already been set.
+	 */
+	final void insertSlot(int slot, int hash, V value) {
+		mValues[slot] = value;
+		insertIntoTable(hash, slot);
+		if (null != mOccupied) {
+			updateOccupied(mOccupied, slot, 1);
+		}
+		mSize++;
+		mModCount++;
+	}
+
+	/**
+	 * Removes the item in a slot.
+	 * 
+	 * @return Always true.
+	 */
+	final boolean removeSlot(int slot) {
+		int mask = mTable.length - 1;
+		int i = hashAt(slot) & mask;
+		while (mTable[i] != slot) {
+			i = (i + 1) & mask;
+		}
+		mTable[i] = DELETED;
+		mValues[slot] = null;
+		mSize--;
+		mModCount++;
+		if (null == mOccupied) {
+			mOccupied = buildOccupied(mValues, mUsed);
+		} else {
+			updateOccupied(mOccupied, slot, -1);
+		}
+		return true;
+	}
+
+	private void copyValuesTo(Object[] target) {
+		if (mUsed == mSize) {
+			System.arraycopy(mValues, 0, target, 0, mSize);
+			return;
+		}
+		int index = 0;
+		for (int slot = 0; slot < mUsed; slot++) {
+			Object value = mValues[slot];
+			if (null != value) {
+				target[index++] = value;
+			}
+		}
+	}
+
+	private void insertIntoTable(int hash, int slot) {
+		int mask = mTable.length - 1;
+		int i = hash & mask;
+		while (mTable[i] >= 0) {
+			i = (i + 1) & mask;
+		}
+		mTable[i] = slot;
+	}
+
+	/**
+	 * Makes room for one more slot, either by compacting removed slots away or
+	 * by growing the arrays.
+	 */
+	private void ensureSlotAvailable() {
+		if (mValues.length == 0) {
+			allocate(mInitialCapacity);
+		} else if (mSize <= mUsed / 2) {
+			compact();
+		} else {
+			resize(mValues.length * 2);
+		}
+	}
+
+	private void allocate(int capacity) {
+		resizeKeys(capacity);
+		mValues = new Object[capacity];
+		mOccupied = null;
+		mTable = new int[tableSizeFor(capacity)];
+		Arrays.fill(mTable, EMPTY);
+	}
+
+	/**
+	 * Grows the arrays to a specified capacity, closing the gaps left by
+	 * removed items on the way.
+	 */
+	private void resize(int capacity) {
+		resizeKeys(capacity);
+		mValues = Arrays.copyOf(mValues, capacity);
+		mTable = new int[tableSizeFor(capacity)];
+		compact();
+	}
+
+	/**
+	 * Gets the slot of the item at a specified position.
+	 */
+	private int slotAt(int index) {
+		return null == mOccupied ? index : findOccupied(mOccupied, index);
+	}
+
+	/**
+	 * Moves all items to the front of the arrays, closing gaps left by removed
+	 * items, and rebuilds the hash table.
+	 */
+	private void compact() {
+		int target = 0;
+		for (int slot = 0; slot < mUsed; slot++) {
+			if (null != mValues[slot]) {
+				if (target != slot) {
+					moveKey(slot, target);
+					mValues[target] = mValues[slot];
+				}
+				target++;
+			}
+		}
+		Arrays.fill(mValues, target, mUsed, null);
+		mUsed = target;
+		mOccupied = null;
+		Arrays.fill(mTable, EMPTY);
+		for (int slot = 0; slot < mUsed; slot++) {
+			insertIntoTable(hashAt(slot), slot);
+		}
+		mModCount++;
+	}
+
+	private boolean isValidIndex(int index) {
+		return index >= 0 && index < size();
+	}
+
+	private static int tableSizeFor(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+		return size < 0 ? 1 << 30 : size;
+	}
+
+	/**
+	 * Builds a Fenwick tree that counts the occupied slots among the first
+	 * used slots of a value array.
+	 */
+	private static int[] buildOccupied(Object[] values, int used) {
+		int[] tree = new int[values.length + 1];
+		for (int i = 1; i < tree.length; i++) {
+			if (i <= used && null != values[i - 1]) {
+				tree[i]++;
+			}
+			int parent = i + (i & -i);
+			if (parent < tree.length) {
+				tree[parent] += tree[i];
+			}
+		}
+		return tree;
+	}
+
+	private static void updateOccupied(int[] tree, int slot, int delta) {
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Finds the slot that holds the item at a specified position.
+	 */
+	private static int findOccupied(int[] tree, int index) {
+		int slot = 0;
+		int remaining = index + 1;
+		for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+			int next = slot + step;
+			if (next < tree.length && tree[next] < remaining) {
+				slot = next;
+				remaining -= tree[next];
+			}
+		}
+		return slot;
+	}
+
+	private final class ItemIterator implements Iterator<V> {
+
+		private int mNextSlot;
+		private int mLastSlot = -1;
+		private int mExpectedModCount = mModCount;
+
+		@Override
+		public boolean hasNext() {
+			checkForComodification();
+			while (mNextSlot < mUsed && null == mValues[mNextSlot]) {
+				mNextSlot++;
+			}
+			return mNextSlot < mUsed;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			mLastSlot = mNextSlot++;
+			return (V) mValues[mLastSlot];
+		}
+
+		@Override
+		public void remove() {
+			if (mLastSlot < 0) {
+				throw new IllegalStateException();
+			}
+			checkForComodification();
+			removeSlot(mLastSlot);
+			mLastSlot = -1;
+			mExpectedModCount = mModCount;
+		}
+
+		private void checkForComodification() {
+			if (mModCount != mExpectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+}
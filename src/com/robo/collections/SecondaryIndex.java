@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An index over the items of a {@link KeyedCollection} by a key other than the
+ * collection's own key. Indexes are created through
+ * {@link KeyedCollection#addIndex(KeyExtractor, boolean)} and kept in sync by
+ * the collection; lookups and index updates take constant time.
+ * <p>
+ * An index is as thread-safe as its collection. An index of a thread-safe
+ * collection such as {@link BoundedKeyedCollection} reads under the
+ * collection's lock, and {@link #getAll(Object)} then returns a copy instead
+ * of a view.
+ * 
+ * @param <S>
+ *            Type of secondary keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public final class SecondaryIndex<S, V> {
+
+	private final KeyExtractor<S, V> mExtractor;
+	private final boolean mUnique;
+	private final Object mLock;
+	private Map<S, Object> mEntries = new HashMap<>();
+
+	/**
+	 * @param lock
+	 *            The lock under which the collection updates this index, or
+	 *            null if the collection is not thread-safe.
+	 */
+	SecondaryIndex(KeyExtractor<S, V> extractor, boolean unique, Object lock) {
+		mExtractor = extractor;
+		mUnique = unique;
+		mLock = lock;
+	}
+
+	/**
+	 * Gets an item with a specified secondary key. If the index is not unique
+	 * and several items share the key, the one added first is returned.
+	 * 
+	 * @param key
+	 *            The secondary key.
+	 * @return The item if found. Otherwise null.
+	 */
+	public V get(S key) {
+		if (null == mLock) {
+			return find(key);
+		}
+		synchronized (mLock) {
+			return find(key);
+		}
+	}
+
+	/**
+	 * Gets all items with a specified secondary key.
+	 * 
+	 * @param key
+	 *            The secondary key.
+	 * @return A read-only collection of the items in the order they were
+	 *         added. Empty if there is none. If several items share the key
+	 *         and the index is not guarded by a lock, the collection is a view
+	 *         that reflects later changes; otherwise it is a copy.
+	 */
+	@SuppressWarnings("unchecked")
+	public Collection<V> getAll(S key) {
+		if (null == mLock) {
+			return findAll(key);
+		}
+		synchronized (mLock) {
+			Object entry = mEntries.get(key);
+			if (entry instanceof Bucket) {
+				return Collections.unmodifiableList(new ArrayList<>((Bucket<V>) entry));
+			}
+			return findAll(key);
+		}
+	}
+
+	public boolean containsKey(S key) {
+		if (null == mLock) {
+			return mEntries.containsKey(key);
+		}
+		synchronized (mLock) {
+			return mEntries.containsKey(key);
+		}
+	}
+
+	public boolean isUnique() {
+		return mUnique;
+	}
+
+	/**
+	 * Gets number of distinct secondary keys in this index.
+	 */
+	public int keyCount() {
+		if (null == mLock) {
+			return mEntries.size();
+		}
+		synchronized (mLock) {
+			return mEntries.size();
+		}
+	}
+
+	S getKey(V item) {
+		return mExtractor.getKey(item);
+	}
+
+	void add(V item) {
+		S key = mExtractor.getKey(item);
+		if (null == key) {
+			return;
+		}
+		Object entry = mEntries.get(key);
+		if (null == entry) {
+			mEntries.put(key, item);
+		} else {
+			Bucket<V> bucket = toBucket(key, entry);
+			bucket.append(item);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	void remove(V item) {
+		S key = mExtractor.getKey(item);
+		if (null == key) {
+			return;
+		}
+		Object entry = mEntries.get(key);
+		if (entry == item) {
+			mEntries.remove(key);
+		} else if (entry instanceof Bucket) {
+			Bucket<V> bucket = (Bucket<V>) entry;
+			bucket.unlink(item);
+			if (bucket.isEmpty()) {
+				mEntries.remove(key);
+			}
+		}
+	}
+
+	void clear() {
+		mEntries = new HashMap<>();
+	}
+
+	/**
+	 * Prepares this index to receive a specified number of additional items
+	 * without rehashing more than once.
+	 */
+	void ensureCapacity(int additionalItems) {
+		int expected = mEntries.size() + additionalItems;
+		if (expected > 64 && additionalItems > mEntries.size()) {
+			Map<S, Object> entries = new HashMap<>((int) (expected / 0.75f) + 1);
+			entries.putAll(mEntries);
+			mEntries = entries;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V find(S key) {
+		Object entry = mEntries.get(key);
+		if (entry instanceof Bucket) {
+			return ((Bucket<V>) entry).mHead.mItem;
+		}
+		return (V) entry;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<V> findAll(S key) {
+		Object entry = mEntries.get(key);
+		if (null == entry) {
+			return Collections.emptyList();
+		}
+		if (entry instanceof Bucket) {
+			return (Bucket<V>) entry;
+		}
+		return Collections.singletonList((V) entry);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Bucket<V> toBucket(S key, Object entry) {
+		if (entry instanceof Bucket) {
+			return (Bucket<V>) entry;
+		}
+		Bucket<V> bucket = new Bucket<>();
+		bucket.append((V) entry);
+		mEntries.put(key, bucket);
+		return bucket;
+	}
+
+	/**
+	 * Holds the items sharing a key in a non-unique index, linked in the order
+	 * they were added. The nodes are also mapped by item identity, so an item
+	 * is removed in constant time however many items share its key. A
+	 * dedicated type keeps buckets distinguishable from items that happen to
+	 * be collections.
+	 */
+	private static final class Bucket<V> extends AbstractCollection<V> {
+		final IdentityHashMap<V, Node<V>> mNodes = new IdentityHashMap<>(4);
+		Node<V> mHead;
+		Node<V> mTail;
+
+		void append(V item) {
+			Node<V> node = new Node<>(item);
+			node.mPrevious = mTail;
+			if (null == mTail) {
+				mHead = node;
+			} else {
+				mTail.mNext = node;
+			}
+			mTail = node;
+			mNodes.put(item, node);
+		}
+
+		void unlink(V item) {
+			Node<V> node = mNodes.remove(item);
+			if (null == node) {
+				return;
+			}
+			if (null == node.mPrevious) {
+				mHead = node.mNext;
+			} else {
+				node.mPrevious.mNext = node.mNext;
+			}
+			if (null == node.mNext) {
+				mTail = node.mPrevious;
+			} else {
+				node.mNext.mPrevious = node.mPrevious;
+			}
+		}
+
+		@Override
+		public int size() {
+			return mNodes.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return null == mHead;
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+				private Node<V> mNext = mHead;
+
+				@Override
+				public boolean hasNext() {
+					return null != mNext;
+				}
+
+				@Override
+				public V next() {
+					if (null == mNext) {
+						throw new NoSuchElementException();
+					}
+					V item = mNext.mItem;
+					mNext = mNext.mNext;
+					return item;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+	private static final class Node<V> {
+		final V mItem;
+		Node<V> mPrevious;
+		Node<V> mNext;
+
+		Node(V item) {
+			mItem = item;
+		}
+	}
+}
@@ -0,0 +1,928 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.lang.reflect.Type;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.robo.reflect.TypeUtils;
+
+/**
+ * A {@link KeyedCollection} variant that keeps its items sorted by key instead
+ * of by insertion order. Iteration and {@link #getAt(int)} follow the key
+ * order, and items can be looked up by key range through
+ * {@link #subRange(Object, Object)}, {@link #floor(Object)} and
+ * {@link #ceiling(Object)}.
+ * <p>
+ * Items are stored in a B+-tree whose leaves hold up to 64 keys and items in
+ * flat arrays and are linked to their neighbours, so scans walk contiguous
+ * memory. Branch nodes record the number of items under each child, which
+ * makes positional access and {@link #indexOfKey(Object)} O(log n) as well.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public abstract class SortedKeyedCollection<K, V> implements Collection<V> {
+
+	private static final int LEAF_CAPACITY = 64;
+	private static final int BRANCH_CAPACITY = 32;
+
+	private final Comparator<? super K> mComparator;
+	private Node mRoot;
+	private Leaf mFirst;
+	private Leaf mLast;
+	private int mSize;
+	private int mModCount;
+	private boolean mGrown;
+	private Type mItemType;
+
+	/**
+	 * Creates a collection ordered by the natural ordering of its keys, which
+	 * must implement {@link Comparable}.
+	 */
+	protected SortedKeyedCollection() {
+		this(null);
+	}
+
+	/**
+	 * Creates a collection ordered by a specified comparator.
+	 * 
+	 * @param comparator
+	 *            Compares keys. If null, the natural ordering is used.
+	 */
+	protected SortedKeyedCollection(Comparator<? super K> comparator) {
+		mComparator = comparator;
+	}
+
+	public Comparator<? super K> comparator() {
+		return mComparator;
+	}
+
+	/**
+	 * Adds an item to this collection. If the collection already contains an
+	 * item with the same key, that item is replaced.
+	 * 
+	 * @return true if the item was added or replaced the existing one. false if
+	 *         the item has no key.
+	 */
+	@Override
+	public boolean add(V e) {
+		K key = getKeyForItem(e);
+		if (null == key) {
+			return false;
+		}
+		if (null == mRoot) {
+			compare(key, key);
+			Leaf leaf = new Leaf();
+			leaf.mKeys[0] = key;
+			leaf.mValues[0] = e;
+			leaf.mCount = 1;
+			mRoot = leaf;
+			mFirst = leaf;
+			mLast = leaf;
+			mSize = 1;
+			mModCount++;
+			return true;
+		}
+		Node split = insert(mRoot, key, e);
+		if (null != split) {
+			Branch root = new Branch();
+			root.mChildren[0] = mRoot;
+			root.mSizes[0] = sizeOf(mRoot);
+			root.mKeys[1] = split.lowKey();
+			root.mChildren[1] = split;
+			root.mSizes[1] = sizeOf(split);
+			root.mCount = 2;
+			mRoot = root;
+		}
+		if (mGrown) {
+			mSize++;
+			mModCount++;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		boolean insertionResult = false;
+		for (V v : c) {
+			insertionResult |= add(v);
+		}
+		return insertionResult;
+	}
+
+	public V get(K key) {
+		if (null == key || null == mRoot) {
+			return null;
+		}
+		Node node = mRoot;
+		while (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			node = branch.mChildren[childIndex(branch, key)];
+		}
+		Leaf leaf = (Leaf) node;
+		int pos = search(leaf, key);
+		return pos >= 0 ? leaf.<V> valueAt(pos) : null;
+	}
+
+	/**
+	 * Gets the item at a specified position in key order in O(log n).
+	 * 
+	 * @param index
+	 *            The position.
+	 * @return The item, or null if the position is out of range.
+	 */
+	public V getAt(int index) {
+		if (index < 0 || index >= mSize) {
+			return null;
+		}
+		Node node = mRoot;
+		while (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			int i = 0;
+			while (index >= branch.mSizes[i]) {
+				index -= branch.mSizes[i++];
+			}
+			node = branch.mChildren[i];
+		}
+		return ((Leaf) node).valueAt(index);
+	}
+
+	/**
+	 * Gets the position of the item with a specified key in O(log n).
+	 * 
+	 * @param key
+	 *            The key.
+	 * @return The position of the item, or -1 if there is no item with the
+	 *         key.
+	 */
+	public int indexOfKey(K key) {
+		if (null == key || null == mRoot) {
+			return -1;
+		}
+		int rank = rank(key);
+		return rank >= 0 ? rank : -1;
+	}
+
+	/**
+	 * Gets the item with the greatest key less than or equal to a specified
+	 * key.
+	 * 
+	 * @return The item, or null if there is none.
+	 */
+	public V floor(K key) {
+		if (null == key || null == mRoot) {
+			return null;
+		}
+		Node node = mRoot;
+		while (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			node = branch.mChildren[childIndex(branch, key)];
+		}
+		Leaf leaf = (Leaf) node;
+		int pos = search(leaf, key);
+		if (pos >= 0) {
+			return leaf.valueAt(pos);
+		}
+		pos = -pos - 2;
+		if (pos >= 0) {
+			return leaf.valueAt(pos);
+		}
+		Leaf previous = leaf.mPrevious;
+		while (null != previous && previous.mCount == 0) {
+			previous = previous.mPrevious;
+		}
+		return null == previous ? null : previous.<V> valueAt(previous.mCount - 1);
+	}
+
+	/**
+	 * Gets the item with the least key greater than or equal to a specified
+	 * key.
+	 * 
+	 * @return The item, or null if there is none.
+	 */
+	public V ceiling(K key) {
+		if (null == key || null == mRoot) {
+			return null;
+		}
+		Node node = mRoot;
+		while (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			node = branch.mChildren[childIndex(branch, key)];
+		}
+		Leaf leaf = (Leaf) node;
+		int pos = search(leaf, key);
+		if (pos < 0) {
+			pos = -pos - 1;
+		}
+		if (pos < leaf.mCount) {
+			return leaf.valueAt(pos);
+		}
+		Leaf next = leaf.mNext;
+		while (null != next && next.mCount == 0) {
+			next = next.mNext;
+		}
+		return null == next ? null : next.<V> valueAt(0);
+	}
+
+	/**
+	 * Gets a read-only view of the items whose keys lie in a range, in key
+	 * order. The view reflects later changes to this collection; its size is
+	 * computed in O(log n) and iteration starts in O(log n).
+	 * 
+	 * @param fromKey
+	 *            Inclusive lower bound, or null for no lower bound.
+	 * @param toKey
+	 *            Exclusive upper bound, or null for no upper bound.
+	 * @return The view.
+	 */
+	public Collection<V> subRange(final K fromKey, final K toKey) {
+		if (null != fromKey && null != toKey && compare(fromKey, toKey) > 0) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new ItemIterator(fromKey, toKey);
+			}
+
+			@Override
+			public int size() {
+				int from = null == fromKey ? 0 : insertionPoint(fromKey);
+				int to = null == toKey ? mSize : insertionPoint(toKey);
+				return to - from;
+			}
+		};
+	}
+
+	@Override
+	public void clear() {
+		mRoot = null;
+		mFirst = null;
+		mLast = null;
+		mSize = 0;
+		mModCount++;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+		if (null == o) {
+			return false;
+		}
+		if (null == mItemType) {
+			mItemType = TypeUtils.getGenericParameterType(this, 1);
+		}
+		return o.getClass().equals(mItemType) && containsKey(getKeyForItem((V) o));
+	}
+
+	public boolean containsKey(K key) {
+		return null != get(key);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		for (Object o : c) {
+			if (!contains(o)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/**
+	 * Returns an iterator over the items in key order.
+	 */
+	@Override
+	public Iterator<V> iterator() {
+		return new ItemIterator(null, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o) {
+		return null != o && removeByKey(getKeyForItem((V) o));
+	}
+
+	public boolean removeAt(int index) {
+		V item = getAt(index);
+		return null != item && removeByKey(getKeyForItem(item));
+	}
+
+	public boolean removeByKey(K key) {
+		if (null == key || null == mRoot || !delete(mRoot, key)) {
+			return false;
+		}
+		mSize--;
+		mModCount++;
+		if (mSize == 0) {
+			clear();
+			return true;
+		}
+		while (mRoot instanceof Branch && ((Branch) mRoot).mCount == 1) {
+			mRoot = ((Branch) mRoot).mChildren[0];
+		}
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			return false;
+		}
+		boolean removalResult = true;
+		for (Object o : c) {
+			removalResult &= remove(o);
+		}
+		return removalResult;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if (null == c || c.isEmpty()) {
+			clear();
+			return true;
+		}
+		boolean removalResult = false;
+		Iterator<V> iterator = iterator();
+		while (iterator.hasNext()) {
+			if (!c.contains(iterator.next())) {
+				iterator.remove();
+				removalResult = true;
+			}
+		}
+		return removalResult;
+	}
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	@Override
+	public Object[] toArray() {
+		Object[] result = new Object[mSize];
+		int index = 0;
+		for (Leaf leaf = mFirst; null != leaf; leaf = leaf.mNext) {
+			System.arraycopy(leaf.mValues, 0, result, index, leaf.mCount);
+			index += leaf.mCount;
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		T[] result = a.length >= mSize ? a : (T[]) java.lang.reflect.Array.newInstance(a.getClass()
+				.getComponentType(), mSize);
+		int index = 0;
+		for (Leaf leaf = mFirst; null != leaf; leaf = leaf.mNext) {
+			System.arraycopy(leaf.mValues, 0, result, index, leaf.mCount);
+			index += leaf.mCount;
+		}
+		if (result.length > mSize) {
+			result[mSize] = null;
+		}
+		return result;
+	}
+
+	protected abstract K getKeyForItem(V item);
+
+	@SuppressWarnings("unchecked")
+	private int compare(Object a, Object b) {
+		if (null == mComparator) {
+			return ((Comparable<Object>) a).compareTo(b);
+		}
+		return mComparator.compare((K) a, (K) b);
+	}
+
+	/**
+	 * Binary search over the keys of a leaf.
+	 * 
+	 * @return The position of the key if found. Otherwise
+	 *         <code>-(insertion point) - 1</code>.
+	 */
+	private int search(Leaf leaf, Object key) {
+		int low = 0;
+		int high = leaf.mCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = compare(leaf.mKeys[mid], key);
+			if (c < 0) {
+				low = mid + 1;
+			} else if (c > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Finds the child of a branch whose key range contains a specified key.
+	 * The first separator is never compared, since every key less than the
+	 * second one belongs to the first child.
+	 */
+	private int childIndex(Branch branch, Object key) {
+		int low = 1;
+		int high = branch.mCount - 1;
+		int result = 0;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (compare(branch.mKeys[mid], key) <= 0) {
+				result = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the items with keys less than a specified key.
+	 * 
+	 * @return The count if the key is present. Otherwise
+	 *         <code>-(count) - 1</code>.
+	 */
+	private int rank(Object key) {
+		Node node = mRoot;
+		int rank = 0;
+		while (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			int i = childIndex(branch, key);
+			for (int j = 0; j < i; j++) {
+				rank += branch.mSizes[j];
+			}
+			node = branch.mChildren[i];
+		}
+		int pos = search((Leaf) node, key);
+		return pos >= 0 ? rank + pos : -(rank + (-pos - 1)) - 1;
+	}
+
+	private int insertionPoint(Object key) {
+		if (null == mRoot) {
+			return 0;
+		}
+		int rank = rank(key);
+		return rank >= 0 ? rank : -rank - 1;
+	}
+
+	/**
+	 * Inserts or replaces an item in a subtree and sets {@link #mGrown} if the
+	 * item was inserted.
+	 * 
+	 * @return The new right sibling if the node had to be split. Otherwise
+	 *         null.
+	 */
+	private Node insert(Node node, K key, V value) {
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			int pos = search(leaf, key);
+			if (pos >= 0) {
+				leaf.mValues[pos] = value;
+				mGrown = false;
+				return null;
+			}
+			pos = -pos - 1;
+			mGrown = true;
+			if (leaf.mCount < LEAF_CAPACITY) {
+				leaf.insert(pos, key, value);
+				return null;
+			}
+			Leaf right = splitLeaf(leaf, pos == LEAF_CAPACITY && null == leaf.mNext);
+			if (leaf.mCount < LEAF_CAPACITY && pos <= leaf.mCount) {
+				leaf.insert(pos, key, value);
+			} else {
+				right.insert(pos - leaf.mCount, key, value);
+			}
+			return right;
+		}
+		Branch branch = (Branch) node;
+		int i = childIndex(branch, key);
+		Node split = insert(branch.mChildren[i], key, value);
+		if (mGrown) {
+			branch.mSizes[i]++;
+		}
+		if (null == split) {
+			return null;
+		}
+		int splitSize = sizeOf(split);
+		branch.mSizes[i] -= splitSize;
+		if (branch.mCount < BRANCH_CAPACITY) {
+			branch.insert(i + 1, split, splitSize);
+			return null;
+		}
+		Branch right = branch.split(i + 1 == BRANCH_CAPACITY);
+		if (branch.mCount < BRANCH_CAPACITY && i + 1 <= branch.mCount) {
+			branch.insert(i + 1, split, splitSize);
+		} else {
+			right.insert(i + 1 - branch.mCount, split, splitSize);
+		}
+		return right;
+	}
+
+	/**
+	 * Splits a full leaf in two and links the new right half. When items are
+	 * appended in ascending order the leaf is left full and the new leaf
+	 * empty, so sequential loading produces full leaves.
+	 */
+	private Leaf splitLeaf(Leaf leaf, boolean appending) {
+		Leaf right = new Leaf();
+		int from = appending ? leaf.mCount : leaf.mCount / 2;
+		right.mCount = leaf.mCount - from;
+		System.arraycopy(leaf.mKeys, from, right.mKeys, 0, right.mCount);
+		System.arraycopy(leaf.mValues, from, right.mValues, 0, right.mCount);
+		leaf.truncate(from);
+		right.mNext = leaf.mNext;
+		right.mPrevious = leaf;
+		if (null == leaf.mNext) {
+			mLast = right;
+		} else {
+			leaf.mNext.mPrevious = right;
+		}
+		leaf.mNext = right;
+		return right;
+	}
+
+	/**
+	 * Deletes an item from a subtree and rebalances the nodes on the way back
+	 * up. A child left empty is unlinked even when it has no sibling to merge
+	 * with, so no empty leaf stays in the chain.
+	 * 
+	 * @return true if the item was found.
+	 */
+	private boolean delete(Node node, Object key) {
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			int pos = search(leaf, key);
+			if (pos < 0) {
+				return false;
+			}
+			leaf.delete(pos);
+			return true;
+		}
+		Branch branch = (Branch) node;
+		int i = childIndex(branch, key);
+		if (!delete(branch.mChildren[i], key)) {
+			return false;
+		}
+		branch.mSizes[i]--;
+		Node child = branch.mChildren[i];
+		if (child.mCount == 0) {
+			if (child instanceof Leaf) {
+				unlink((Leaf) child);
+			}
+			branch.delete(i);
+		} else if (branch.mCount > 1 && child.mCount < child.capacity() / 2) {
+			rebalance(branch, i > 0 ? i - 1 : i);
+		}
+		return true;
+	}
+
+	private void unlink(Leaf leaf) {
+		if (null == leaf.mPrevious) {
+			mFirst = leaf.mNext;
+		} else {
+			leaf.mPrevious.mNext = leaf.mNext;
+		}
+		if (null == leaf.mNext) {
+			mLast = leaf.mPrevious;
+		} else {
+			leaf.mNext.mPrevious = leaf.mPrevious;
+		}
+	}
+
+	/**
+	 * Merges two adjacent children of a branch if they fit into one node, or
+	 * otherwise spreads their entries evenly between them.
+	 */
+	private void rebalance(Branch parent, int left) {
+		Node a = parent.mChildren[left];
+		Node b = parent.mChildren[left + 1];
+		int total = a.mCount + b.mCount;
+		if (a instanceof Leaf) {
+			Leaf leftLeaf = (Leaf) a;
+			Leaf rightLeaf = (Leaf) b;
+			if (total <= LEAF_CAPACITY) {
+				System.arraycopy(rightLeaf.mKeys, 0, leftLeaf.mKeys, leftLeaf.mCount, rightLeaf.mCount);
+				System.arraycopy(rightLeaf.mValues, 0, leftLeaf.mValues, leftLeaf.mCount, rightLeaf.mCount);
+				leftLeaf.mCount = total;
+				leftLeaf.mNext = rightLeaf.mNext;
+				if (null == rightLeaf.mNext) {
+					mLast = leftLeaf;
+				} else {
+					rightLeaf.mNext.mPrevious = leftLeaf;
+				}
+				parent.mSizes[left] = total;
+				parent.delete(left + 1);
+				return;
+			}
+			int target = total / 2;
+			if (leftLeaf.mCount < target) {
+				int moved = target - leftLeaf.mCount;
+				System.arraycopy(rightLeaf.mKeys, 0, leftLeaf.mKeys, leftLeaf.mCount, moved);
+				System.arraycopy(rightLeaf.mValues, 0, leftLeaf.mValues, leftLeaf.mCount, moved);
+				leftLeaf.mCount = target;
+				for (int i = 0; i < moved; i++) {
+					rightLeaf.delete(0);
+				}
+			} else {
+				int moved = leftLeaf.mCount - target;
+				for (int i = 0; i < moved; i++) {
+					rightLeaf.insert(i, leftLeaf.mKeys[target + i], leftLeaf.mValues[target + i]);
+				}
+				leftLeaf.truncate(target);
+			}
+			parent.mSizes[left] = leftLeaf.mCount;
+			parent.mSizes[left + 1] = rightLeaf.mCount;
+			parent.mKeys[left + 1] = rightLeaf.mKeys[0];
+			return;
+		}
+		Branch leftBranch = (Branch) a;
+		Branch rightBranch = (Branch) b;
+		// the right branch's first child is bounded by the parent's separator
+		rightBranch.mKeys[0] = parent.mKeys[left + 1];
+		if (total <= BRANCH_CAPACITY) {
+			for (int i = 0; i < rightBranch.mCount; i++) {
+				leftBranch.append(rightBranch.mKeys[i], rightBranch.mChildren[i], rightBranch.mSizes[i]);
+			}
+			parent.mSizes[left] += parent.mSizes[left + 1];
+			parent.delete(left + 1);
+			return;
+		}
+		int target = total / 2;
+		while (leftBranch.mCount < target) {
+			leftBranch.append(rightBranch.mKeys[0], rightBranch.mChildren[0], rightBranch.mSizes[0]);
+			parent.mSizes[left] += rightBranch.mSizes[0];
+			parent.mSizes[left + 1] -= rightBranch.mSizes[0];
+			rightBranch.delete(0);
+		}
+		while (leftBranch.mCount > target) {
+			int last = leftBranch.mCount - 1;
+			rightBranch.insert(0, leftBranch.mChildren[last], leftBranch.mSizes[last]);
+			rightBranch.mKeys[0] = leftBranch.mKeys[last];
+			parent.mSizes[left] -= leftBranch.mSizes[last];
+			parent.mSizes[left + 1] += leftBranch.mSizes[last];
+			leftBranch.delete(last);
+		}
+		parent.mKeys[left + 1] = rightBranch.mKeys[0];
+	}
+
+	private static int sizeOf(Node node) {
+		if (node instanceof Leaf) {
+			return node.mCount;
+		}
+		Branch branch = (Branch) node;
+		int size = 0;
+		for (int i = 0; i < branch.mCount; i++) {
+			size += branch.mSizes[i];
+		}
+		return size;
+	}
+
+	private abstract static class Node {
+		int mCount;
+
+		abstract Object lowKey();
+
+		abstract int capacity();
+	}
+
+	private static final class Leaf extends Node {
+		final Object[] mKeys = new Object[LEAF_CAPACITY];
+		final Object[] mValues = new Object[LEAF_CAPACITY];
+		Leaf mPrevious;
+		Leaf mNext;
+
+		@SuppressWarnings("unchecked")
+		<V> V valueAt(int pos) {
+			return (V) mValues[pos];
+		}
+
+		void insert(int pos, Object key, Object value) {
+			System.arraycopy(mKeys, pos, mKeys, pos + 1, mCount - pos);
+			System.arraycopy(mValues, pos, mValues, pos + 1, mCount - pos);
+			mKeys[pos] = key;
+			mValues[pos] = value;
+			mCount++;
+		}
+
+		void delete(int pos) {
+			mCount--;
+			System.arraycopy(mKeys, pos + 1, mKeys, pos, mCount - pos);
+			System.arraycopy(mValues, pos + 1, mValues, pos, mCount - pos);
+			mKeys[mCount] = null;
+			mValues[mCount] = null;
+		}
+
+		void truncate(int count) {
+			for (int i = count; i < mCount; i++) {
+				mKeys[i] = null;
+				mValues[i] = null;
+			}
+			mCount = count;
+		}
+
+		@Override
+		Object lowKey() {
+			return mKeys[0];
+		}
+
+		@Override
+		int capacity() {
+			return LEAF_CAPACITY;
+		}
+	}
+
+	/**
+	 * Branch node. mKeys[i] is the lower bound of the keys under mChildren[i];
+	 * mSizes[i] is the number of items under it.
+	 */
+	private static final class Branch extends Node {
+		final Object[] mKeys = new Object[BRANCH_CAPACITY];
+		final Node[] mChildren = new Node[BRANCH_CAPACITY];
+		final int[] mSizes = new int[BRANCH_CAPACITY];
+
+		void insert(int pos, Node child, int size) {
+			System.arraycopy(mKeys, pos, mKeys, pos + 1, mCount - pos);
+			System.arraycopy(mChildren, pos, mChildren, pos + 1, mCount - pos);
+			System.arraycopy(mSizes, pos, mSizes, pos + 1, mCount - pos);
+			mKeys[pos] = child.lowKey();
+			mChildren[pos] = child;
+			mSizes[pos] = size;
+			mCount++;
+		}
+
+		void append(Object key, Node child, int size) {
+			mKeys[mCount] = key;
+			mChildren[mCount] = child;
+			mSizes[mCount] = size;
+			mCount++;
+		}
+
+		void delete(int pos) {
+			mCount--;
+			System.arraycopy(mKeys, pos + 1, mKeys, pos, mCount - pos);
+			System.arraycopy(mChildren, pos + 1, mChildren, pos, mCount - pos);
+			System.arraycopy(mSizes, pos + 1, mSizes, pos, mCount - pos);
+			mKeys[mCount] = null;
+			mChildren[mCount] = null;
+		}
+
+		/**
+		 * Moves the upper half of the children to a new branch. When appending,
+		 * only the last child moves, so the new branch ends up with two
+		 * children rather than one.
+		 */
+		Branch split(boolean appending) {
+			Branch right = new Branch();
+			int from = appending ? mCount - 1 : mCount / 2;
+			right.mCount = mCount - from;
+			System.arraycopy(mKeys, from, right.mKeys, 0, right.mCount);
+			System.arraycopy(mChildren, from, right.mChildren, 0, right.mCount);
+			System.arraycopy(mSizes, from, right.mSizes, 0, right.mCount);
+			for (int i = from; i < mCount; i++) {
+				mKeys[i] = null;
+				mChildren[i] = null;
+			}
+			mCount = from;
+			return right;
+		}
+
+		@Override
+		Object lowKey() {
+			return mKeys[0];
+		}
+
+		@Override
+		int capacity() {
+			return BRANCH_CAPACITY;
+		}
+	}
+
+	/**
+	 * Iterator over the items whose keys lie in a range. It walks the linked
+	 * leaves and finds its place again by key after a removal, since removals
+	 * may merge or rebalance leaves.
+	 */
+	private final class ItemIterator implements Iterator<V> {
+		private final K mToKey;
+		private Leaf mLeaf;
+		private int mPos;
+		private K mLastKey;
+		private int mExpectedModCount;
+
+		ItemIterator(K fromKey, K toKey) {
+			mToKey = toKey;
+			if (null == fromKey) {
+				mLeaf = mFirst;
+				mPos = 0;
+			} else {
+				seek(fromKey, true);
+			}
+			mExpectedModCount = mModCount;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (mModCount != mExpectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			while (null != mLeaf && mPos >= mLeaf.mCount) {
+				mLeaf = mLeaf.mNext;
+				mPos = 0;
+			}
+			return null != mLeaf && (null == mToKey || compare(mLeaf.mKeys[mPos], mToKey) < 0);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			mLastKey = (K) mLeaf.mKeys[mPos];
+			V item = mLeaf.valueAt(mPos);
+			if (++mPos == mLeaf.mCount) {
+				mLeaf = mLeaf.mNext;
+				mPos = 0;
+			}
+			return item;
+		}
+
+		@Override
+		public void remove() {
+			if (null == mLastKey) {
+				throw new IllegalStateException();
+			}
+			if (mModCount != mExpectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeByKey(mLastKey);
+			seek(mLastKey, false);
+			mLastKey = null;
+			mExpectedModCount = mModCount;
+		}
+
+		/**
+		 * Positions this iterator on the first key greater than, or if
+		 * inclusive equal to, a specified key.
+		 */
+		private void seek(Object key, boolean inclusive) {
+			mLeaf = null;
+			if (null == mRoot) {
+				return;
+			}
+			Node node = mRoot;
+			while (node instanceof Branch) {
+				Branch branch = (Branch) node;
+				node = branch.mChildren[childIndex(branch, key)];
+			}
+			Leaf leaf = (Leaf) node;
+			int pos = search(leaf, key);
+			pos = pos >= 0 ? (inclusive ? pos : pos + 1) : -pos - 1;
+			while (null != leaf && pos >= leaf.mCount) {
+				leaf = leaf.mNext;
+				pos = 0;
+			}
+			mLeaf = leaf;
+			mPos = pos;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.Arrays;
+
+/**
+ * An {@link EvictionPolicy} in the style of W-TinyLFU. New items enter a small
+ * LRU window. When the window overflows, its least recently used item becomes a
+ * candidate for the main LRU region and is admitted only if it has been used
+ * more often than the item it would displace, as estimated by a compact
+ * frequency sketch. This keeps one-hit items from flushing out frequently used
+ * ones, while the window still absorbs bursts of new items.
+ * 
+ * @param <K>
+ *            Type of keys.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class TinyLfuEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	private final LruEvictionPolicy<K> mWindow = new LruEvictionPolicy<>();
+	private final LruEvictionPolicy<K> mMain = new LruEvictionPolicy<>();
+	private final FrequencySketch mSketch;
+	private final int mWindowSize;
+	private K mCandidate;
+
+	/**
+	 * Creates a policy.
+	 * 
+	 * @param expectedSize
+	 *            The number of items the collection is expected to hold. Sizes
+	 *            the window (1% of it) and the frequency sketch.
+	 */
+	public TinyLfuEvictionPolicy(int expectedSize) {
+		mWindowSize = Math.max(1, expectedSize / 100);
+		mSketch = new FrequencySketch(Math.max(16, expectedSize));
+	}
+
+	@Override
+	public void recordInsertion(K key) {
+		mSketch.increment(key);
+		mWindow.recordInsertion(key);
+		if (mWindow.size() > mWindowSize) {
+			mCandidate = mWindow.selectVictim();
+			mMain.recordInsertion(mCandidate);
+		}
+	}
+
+	@Override
+	public void recordAccess(K key) {
+		mSketch.increment(key);
+		mWindow.recordAccess(key);
+		mMain.recordAccess(key);
+	}
+
+	@Override
+	public void recordRemoval(K key) {
+		mWindow.recordRemoval(key);
+		mMain.recordRemoval(key);
+		if (key.equals(mCandidate)) {
+			mCandidate = null;
+		}
+	}
+
+	/**
+	 * Selects a victim by letting the item most recently moved from the window
+	 * to the main region compete against the main region's least recently used
+	 * item; the less frequently used one loses.
+	 */
+	@Override
+	public K selectVictim() {
+		K candidate = mCandidate;
+		mCandidate = null;
+		K victim = mMain.peekVictim();
+		if (null == victim) {
+			return mWindow.selectVictim();
+		}
+		if (null != candidate && !candidate.equals(victim)
+				&& mSketch.frequency(candidate) <= mSketch.frequency(victim)) {
+			mMain.recordRemoval(candidate);
+			return candidate;
+		}
+		return mMain.selectVictim();
+	}
+
+	@Override
+	public void clear() {
+		mWindow.clear();
+		mMain.clear();
+		mSketch.clear();
+		mCandidate = null;
+	}
+
+	/**
+	 * A count-min sketch of 4-bit counters, halved periodically so that old
+	 * popularity fades out.
+	 */
+	private static final class FrequencySketch {
+
+		private static final int[] SEEDS = { 0x97CB3127, 0xB8D2C5A1, 0x63F0D9E5, 0x2A6B9F13 };
+		private static final int MAX_COUNT = 15;
+
+		private final byte[] mCounters;
+		private final int mMask;
+		private final int mSampleSize;
+		private int mAdditions;
+
+		FrequencySketch(int expectedSize) {
+			int width = Integer.highestOneBit(expectedSize - 1) << 1;
+			mCounters = new byte[width * SEEDS.length];
+			mMask = width - 1;
+			mSampleSize = 10 * width;
+		}
+
+		void increment(Object key) {
+			int hash = key.hashCode();
+			boolean added = false;
+			for (int row = 0; row < SEEDS.length; row++) {
+				int index = indexOf(hash, row);
+				if (mCounters[index] < MAX_COUNT) {
+					mCounters[index]++;
+					added = true;
+				}
+			}
+			if (added && ++mAdditions >= mSampleSize) {
+				reset();
+			}
+		}
+
+		int frequency(Object key) {
+			int hash = key.hashCode();
+			int frequency = MAX_COUNT;
+			for (int row = 0; row < SEEDS.length; row++) {
+				frequency = Math.min(frequency, mCounters[indexOf(hash, row)]);
+			}
+			return frequency;
+		}
+
+		void clear() {
+			Arrays.fill(mCounters, (byte) 0);
+			mAdditions = 0;
+		}
+
+		private void reset() {
+			for (int i = 0; i < mCounters.length; i++) {
+				mCounters[i] = (byte) (mCounters[i] >>> 1);
+			}
+			mAdditions /= 2;
+		}
+
+		private int indexOf(int hash, int row) {
+			int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % SEEDS.length];
+			h ^= h >>> 16;
+			return row * (mMask + 1) + (h & mMask);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts items to and from a compact binary form, so that collections can
+ * keep them outside of the Java heap or write them to channels.
+ * 
+ * @param <V>
+ *            Type of items.
+ * 
+ * @author robo-admin
+ * 
+ */
+public interface ValueCodec<V> {
+
+	/**
+	 * Gets number of bytes that {@link #encode(Object, ByteBuffer)} writes for
+	 * a specified item.
+	 */
+	int sizeOf(V value);
+
+	/**
+	 * Writes an item at the current position of a buffer, advancing the
+	 * position by exactly {@link #sizeOf(Object)} bytes.
+	 */
+	void encode(V value, ByteBuffer target);
+
+	/**
+	 * Reads an item from a buffer. The remaining bytes of the buffer are
+	 * exactly the bytes written by {@link #encode(Object, ByteBuffer)}.
+	 */
+	V decode(ByteBuffer source);
+}
@@ -16,6 +16,9 @@
  */
 package com.robo.navigation;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Default implementation of {@link ApplicationController}.
  * 
@@ -25,24 +28,78 @@ package com.robo.navigation;
 public class ApplicationControllerImp implements ApplicationController {
 
 	private final CommandContainer mContainer;
+	private final Map<Class<?>, DispatchPolicy> mPolicies = new ConcurrentHashMap<>();
 	
 	public ApplicationControllerImp(CommandContainer commandContainer) {
 		mContainer = commandContainer;
 	}
 	
+	/**
+	 * Sets the policy that decides whether and when commands of a specified
+	 * contract are executed, for instance to debounce or throttle bursts of
+	 * dispatches. Commands resolved by name share the policy of their contract.
+	 * 
+	 * @param contract
+	 *            The command contract.
+	 * @param policy
+	 *            The policy. If null, the current policy of the contract is
+	 *            removed and its commands are executed immediately.
+	 */
+	public void setDispatchPolicy(Class<? extends Command<?>> contract, DispatchPolicy policy) {
+		if (null == policy) {
+			mPolicies.remove(contract);
+		} else {
+			mPolicies.put(contract, policy);
+		}
+	}
+
 	@Override
 	public <T> void execute(Class<? extends Command<T>> contract, T parameter) {
-		execute(mContainer.resolve(contract), parameter);
+		DispatchPolicy policy = getDispatchPolicy(contract);
+		if (null == policy) {
+			execute(mContainer.resolve(contract), parameter);
+		} else {
+			policy.dispatch(new ResolvingCommand<>(contract, null), parameter);
+		}
 	}
 
 	@Override
 	public <T> void execute(Class<? extends Command<T>> contract, String name, T parameter) {
-		execute(mContainer.resolve(contract, name), parameter);
+		DispatchPolicy policy = getDispatchPolicy(contract);
+		if (null == policy) {
+			execute(mContainer.resolve(contract, name), parameter);
+		} else {
+			policy.dispatch(new ResolvingCommand<>(contract, name), parameter);
+		}
 	}
 
 	@Override
 	public <T> void execute(Command<T> command, T parameter) {
 		command.execute(parameter);
 	}
-	
+
+	private DispatchPolicy getDispatchPolicy(Class<?> contract) {
+		return mPolicies.isEmpty() ? null : mPolicies.get(contract);
+	}
+
+	/**
+	 * Resolves the actual command from the container only when it is executed,
+	 * so dispatches dropped by a {@link DispatchPolicy} cost no resolution.
+	 */
+	private final class ResolvingCommand<T> implements Command<T> {
+
+		private final Class<? extends Command<T>> mContract;
+		private final String mName;
+
+		ResolvingCommand(Class<? extends Command<T>> contract, String name) {
+			mContract = contract;
+			mName = name;
+		}
+
+		@Override
+		public void execute(T parameter) {
+			Command<T> command = null == mName ? mContainer.resolve(mContract) : mContainer.resolve(mContract, mName);
+			command.execute(parameter);
+		}
+	}
 }
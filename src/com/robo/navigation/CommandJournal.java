@@ -0,0 +1,414 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.robo.ApplicationException;
+import com.robo.InvalidOperationException;
+
+/**
+ * An append-only journal of command dispatches, stored as compact binary
+ * records in a directory of memory-mapped segment files. Appending a record
+ * only copies bytes into the mapped segment; flushing to the storage device is
+ * done for many records at once (group commit) by a background thread, or
+ * explicitly through {@link #commit()}.
+ * <p>
+ * Each record consists of its body length, a CRC-32 checksum of the body, the
+ * time of dispatch, the contract class name, the optional command name and the
+ * encoded parameter. A mapped segment may reach the storage device in any page
+ * order, so a crash can leave a record partially written; replay stops at the
+ * first record whose checksum does not match, and new records are appended in
+ * its place when the journal is opened again.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class CommandJournal implements Closeable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final int LENGTH_SIZE = 4;
+	private static final int CHECKSUM_SIZE = 4;
+	private static final int HEADER_SIZE = LENGTH_SIZE + CHECKSUM_SIZE;
+	private static final int NO_NAME = -1;
+
+	private final File mDirectory;
+	private final int mSegmentSize;
+	private final long mSyncIntervalNanos;
+	private final ParameterCodec mCodec;
+	private final Map<Class<?>, byte[]> mContractNames = new ConcurrentHashMap<>();
+	private final Object mLock = new Object();
+	private final Thread mSyncThread;
+	private FileChannel mChannel;
+	private MappedByteBuffer mBuffer;
+	private long mSegmentIndex;
+	private boolean mDirty;
+	private volatile boolean mClosed;
+
+	/**
+	 * Opens a journal in a specified directory. If the directory already
+	 * contains a journal, new records are appended after the existing ones.
+	 * 
+	 * @param directory
+	 *            The directory that holds the segment files.
+	 * @param segmentSize
+	 *            Size of each segment file in bytes.
+	 * @param syncInterval
+	 *            Interval between two group commits. If 0, every record is
+	 *            flushed as soon as it is appended.
+	 * @param unit
+	 *            Time unit of the sync interval.
+	 * @param codec
+	 *            The codec that encodes command parameters.
+	 * @throws ApplicationException
+	 *             If the journal cannot be opened.
+	 */
+	public CommandJournal(File directory, int segmentSize, long syncInterval, TimeUnit unit, ParameterCodec codec)
+			throws ApplicationException {
+		if (segmentSize <= HEADER_SIZE) {
+			throw new IllegalArgumentException("segmentSize is too small");
+		}
+		mDirectory = directory;
+		mSegmentSize = segmentSize;
+		mSyncIntervalNanos = unit.toNanos(syncInterval);
+		mCodec = codec;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new ApplicationException("Unable to create journal directory: " + directory);
+		}
+		long[] segments = listSegments();
+		mSegmentIndex = segments.length == 0 ? 0 : segments[segments.length - 1];
+		openSegment(mSegmentIndex);
+		int end = findEnd(mBuffer);
+		clear(mBuffer, end);
+		mBuffer.position(end);
+		if (mSyncIntervalNanos > 0) {
+			mSyncThread = new Thread(new Syncer(), "robo-command-journal");
+			mSyncThread.setDaemon(true);
+			mSyncThread.start();
+		} else {
+			mSyncThread = null;
+		}
+	}
+
+	/**
+	 * Appends a command dispatch to this journal.
+	 * 
+	 * @param contract
+	 *            The command contract. It must be loadable by name, so
+	 *            anonymous, local and lambda classes are rejected.
+	 * @param name
+	 *            The command name, may be null.
+	 * @param parameter
+	 *            The command parameter.
+	 * @throws IllegalArgumentException
+	 *             If the contract cannot be loaded by name on replay.
+	 * @throws ApplicationException
+	 *             If the record does not fit in a segment, or the journal
+	 *             cannot write a new segment.
+	 * @throws InvalidOperationException
+	 *             If the journal has been closed.
+	 */
+	public void append(Class<?> contract, String name, Object parameter) throws ApplicationException,
+			InvalidOperationException {
+		byte[] contractName = getContractName(contract);
+		byte[] commandName = null == name ? null : name.getBytes(UTF8);
+		byte[] data = mCodec.encode(parameter);
+		int bodySize = 8 + 2 + contractName.length + 2 + (null == commandName ? 0 : commandName.length) + 4
+				+ data.length;
+		int recordSize = HEADER_SIZE + bodySize;
+		if (recordSize > mSegmentSize) {
+			throw new ApplicationException("The record is larger than a journal segment");
+		}
+		synchronized (mLock) {
+			ensureOpen();
+			if (mBuffer.remaining() < recordSize) {
+				openNextSegment();
+			}
+			int start = mBuffer.position();
+			mBuffer.position(start + HEADER_SIZE);
+			mBuffer.putLong(System.currentTimeMillis());
+			mBuffer.putShort((short) contractName.length);
+			mBuffer.put(contractName);
+			if (null == commandName) {
+				mBuffer.putShort((short) NO_NAME);
+			} else {
+				mBuffer.putShort((short) commandName.length);
+				mBuffer.put(commandName);
+			}
+			mBuffer.putInt(data.length);
+			mBuffer.put(data);
+			mBuffer.putInt(start, bodySize);
+			mBuffer.putInt(start + LENGTH_SIZE, checksum(mBuffer, start + HEADER_SIZE, bodySize));
+			if (mSyncIntervalNanos > 0) {
+				mDirty = true;
+			} else {
+				mBuffer.force();
+			}
+		}
+	}
+
+	/**
+	 * Flushes all appended records to the storage device.
+	 */
+	public void commit() {
+		MappedByteBuffer buffer;
+		synchronized (mLock) {
+			if (mClosed || !mDirty) {
+				return;
+			}
+			buffer = mBuffer;
+			mDirty = false;
+		}
+		buffer.force();
+	}
+
+	/**
+	 * Re-executes all recorded command dispatches in the order they were
+	 * recorded. Commands are resolved from a specified container, by name if
+	 * one was recorded. Replay stops at the first torn or corrupted record.
+	 * 
+	 * @param container
+	 *            The container that resolves commands.
+	 * @return Number of replayed commands.
+	 * @throws ApplicationException
+	 *             If a segment cannot be read, or a recorded contract cannot be
+	 *             loaded.
+	 */
+	@SuppressWarnings("unchecked")
+	public int replay(CommandContainer container) throws ApplicationException {
+		int count = 0;
+		for (long segment : listSegments()) {
+			ByteBuffer buffer = readSegment(segment);
+			int end = findEnd(buffer);
+			while (buffer.position() < end) {
+				buffer.position(buffer.position() + HEADER_SIZE);
+				buffer.getLong();
+				Class<? extends Command<Object>> contract = (Class<? extends Command<Object>>) loadContract(
+						readString(buffer));
+				String name = readString(buffer);
+				byte[] data = new byte[buffer.getInt()];
+				buffer.get(data);
+				Command<Object> command = null == name ? container.resolve(contract) : container.resolve(contract,
+						name);
+				command.execute(mCodec.decode(data));
+				count++;
+			}
+			if (buffer.limit() - end >= LENGTH_SIZE && buffer.getInt(end) != 0) {
+				// a corrupted record, nothing after it can be trusted
+				break;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void close() {
+		synchronized (mLock) {
+			if (mClosed) {
+				return;
+			}
+			mClosed = true;
+			mBuffer.force();
+			closeChannel();
+		}
+		if (null != mSyncThread) {
+			mSyncThread.interrupt();
+		}
+	}
+
+	private void ensureOpen() {
+		if (mClosed) {
+			throw new InvalidOperationException("The journal has been closed");
+		}
+	}
+
+	private byte[] getContractName(Class<?> contract) {
+		byte[] name = mContractNames.get(contract);
+		if (null == name) {
+			if (contract.isAnonymousClass() || contract.isLocalClass() || contract.isSynthetic()) {
+				throw new IllegalArgumentException("Command " + contract.getName()
+						+ " cannot be journaled, use a named command class");
+			}
+			name = contract.getName().getBytes(UTF8);
+			mContractNames.put(contract, name);
+		}
+		return name;
+	}
+
+	private void openNextSegment() {
+		mBuffer.force();
+		mDirty = false;
+		closeChannel();
+		openSegment(++mSegmentIndex);
+	}
+
+	private void openSegment(long index) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(getSegmentFile(index), "rw");
+			mChannel = file.getChannel();
+			mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+		} catch (IOException e) {
+			if (null != file) {
+				try {
+					file.close();
+				} catch (IOException ignored) {
+				}
+			}
+			throw new ApplicationException("Unable to open journal segment " + index, e);
+		}
+	}
+
+	private void closeChannel() {
+		try {
+			mChannel.close();
+		} catch (IOException e) {
+			throw new ApplicationException("Unable to close journal segment " + mSegmentIndex, e);
+		}
+	}
+
+	private ByteBuffer readSegment(long index) {
+		synchronized (mLock) {
+			if (!mClosed && index == mSegmentIndex) {
+				ByteBuffer buffer = mBuffer.duplicate();
+				buffer.limit(buffer.position());
+				buffer.position(0);
+				return buffer;
+			}
+		}
+		try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(index), "r")) {
+			FileChannel channel = file.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new ApplicationException("Unable to read journal segment " + index, e);
+		}
+	}
+
+	private long[] listSegments() {
+		String[] names = mDirectory.list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if (null == names) {
+			return new long[0];
+		}
+		long[] segments = new long[names.length];
+		for (int i = 0; i < names.length; i++) {
+			segments[i] = Long.parseLong(names[i].substring(SEGMENT_PREFIX.length(),
+					names[i].length() - SEGMENT_SUFFIX.length()));
+		}
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private File getSegmentFile(long index) {
+		return new File(mDirectory, String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * Finds the end of the last intact record in a segment, i.e. the first
+	 * record that is empty, truncated or does not match its checksum.
+	 */
+	private static int findEnd(ByteBuffer buffer) {
+		int position = buffer.position();
+		int length;
+		while (buffer.limit() - position >= HEADER_SIZE && (length = buffer.getInt(position)) > 0
+				&& length <= buffer.limit() - position - HEADER_SIZE
+				&& buffer.getInt(position + LENGTH_SIZE) == checksum(buffer, position + HEADER_SIZE, length)) {
+			position += HEADER_SIZE + length;
+		}
+		return position;
+	}
+
+	private static int checksum(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer body = buffer.duplicate();
+		body.limit(offset + length);
+		body.position(offset);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Zeroes a segment from a specified position, so that stale bytes of a
+	 * torn record are never taken for a record appended later.
+	 */
+	private static void clear(ByteBuffer buffer, int position) {
+		int limit = buffer.limit();
+		for (; position < limit && (position & 7) != 0; position++) {
+			buffer.put(position, (byte) 0);
+		}
+		for (; position + 8 <= limit; position += 8) {
+			// only write where needed, clean pages stay clean
+			if (buffer.getLong(position) != 0) {
+				buffer.putLong(position, 0);
+			}
+		}
+		for (; position < limit; position++) {
+			buffer.put(position, (byte) 0);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		short length = buffer.getShort();
+		if (length == NO_NAME) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static Class<?> loadContract(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new ApplicationException("Unable to load command contract " + name, e);
+		}
+	}
+
+	private final class Syncer implements Runnable {
+		@Override
+		public void run() {
+			while (!mClosed) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(mSyncIntervalNanos);
+				} catch (InterruptedException e) {
+					continue;
+				}
+				commit();
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import com.robo.threading.TimerWheel;
+
+/**
+ * A {@link DispatchPolicy} that executes a command only after dispatches of it
+ * have stopped arriving for a quiet period. Only the last dispatch of a burst
+ * is executed, with the last given parameter.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class DebounceDispatchPolicy implements DispatchPolicy {
+
+	private final long mQuietPeriodNanos;
+	private final TimerWheel mTimerWheel;
+	private final Executor mExecutor;
+	private final Object mLock = new Object();
+	private TimerWheel.Timeout mPendingTimeout;
+
+	/**
+	 * Creates a debounce policy that runs on the shared {@link TimerWheel} and
+	 * executes commands on the wheel's thread.
+	 * 
+	 * @param quietPeriod
+	 *            Period without dispatches after which the last one is executed.
+	 * @param unit
+	 *            Time unit of the quiet period.
+	 */
+	public DebounceDispatchPolicy(long quietPeriod, TimeUnit unit) {
+		this(quietPeriod, unit, TimerWheel.getShared(), null);
+	}
+
+	/**
+	 * Creates a debounce policy.
+	 * 
+	 * @param quietPeriod
+	 *            Period without dispatches after which the last one is executed.
+	 * @param unit
+	 *            Time unit of the quiet period.
+	 * @param timerWheel
+	 *            The timer wheel that tracks the quiet period.
+	 * @param executor
+	 *            The executor that runs deferred commands, for instance one that
+	 *            posts to the main thread. If null, commands are run on the
+	 *            timer wheel's thread.
+	 */
+	public DebounceDispatchPolicy(long quietPeriod, TimeUnit unit, TimerWheel timerWheel, Executor executor) {
+		mQuietPeriodNanos = unit.toNanos(quietPeriod);
+		mTimerWheel = timerWheel;
+		mExecutor = executor;
+	}
+
+	@Override
+	public <TParam> void dispatch(Command<TParam> command, TParam parameter) {
+		Runnable execution = new DeferredExecution<>(command, parameter, mExecutor);
+		synchronized (mLock) {
+			if (null != mPendingTimeout) {
+				mPendingTimeout.cancel();
+			}
+			mPendingTimeout = mTimerWheel.schedule(execution, mQuietPeriodNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Runs a command with its parameter, optionally through an executor.
+	 */
+	static final class DeferredExecution<TParam> implements Runnable {
+
+		private final Command<TParam> mCommand;
+		private final TParam mParameter;
+		private final Executor mExecutor;
+
+		DeferredExecution(Command<TParam> command, TParam parameter, Executor executor) {
+			mCommand = command;
+			mParameter = parameter;
+			mExecutor = executor;
+		}
+
+		@Override
+		public void run() {
+			if (null == mExecutor) {
+				mCommand.execute(mParameter);
+			} else {
+				mExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						mCommand.execute(mParameter);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Executes the command on the calling thread, bypassing the executor.
+		 */
+		void executeNow() {
+			mCommand.execute(mParameter);
+		}
+	}
+}
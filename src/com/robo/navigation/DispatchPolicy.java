@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+/**
+ * Decides whether and when a command dispatched through an
+ * {@link ApplicationController} is actually executed. A policy instance holds
+ * the dispatch state of one command contract, so each contract should be given
+ * its own instance.
+ * 
+ * @author robo-admin
+ * 
+ */
+public interface DispatchPolicy {
+	/**
+	 * Dispatches a command. Implementations may execute the command
+	 * immediately, defer it, or drop it.
+	 * 
+	 * @param command
+	 *            The command to execute. Resolving the actual command instance
+	 *            is deferred until {@link Command#execute(Object)} is called, so
+	 *            dropping a dispatch is cheap.
+	 * @param parameter
+	 *            Parameter given to the command.
+	 */
+	<TParam> void dispatch(Command<TParam> command, TParam parameter);
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+/**
+ * A {@link DispatchPolicy} that drops a dispatch whose parameter equals the
+ * parameter of the previous dispatch. Dispatches that pass the check are handed
+ * over to another policy, or executed immediately if there is none.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class DistinctDispatchPolicy implements DispatchPolicy {
+
+	private static final Object NONE = new Object();
+
+	private final DispatchPolicy mNext;
+	private final Object mLock = new Object();
+	private Object mLastParameter = NONE;
+
+	public DistinctDispatchPolicy() {
+		this(null);
+	}
+
+	/**
+	 * Creates a distinct-until-changed policy.
+	 * 
+	 * @param next
+	 *            The policy that receives dispatches which pass the check, for
+	 *            instance a {@link DebounceDispatchPolicy}. If null, these
+	 *            dispatches are executed immediately.
+	 */
+	public DistinctDispatchPolicy(DispatchPolicy next) {
+		mNext = next;
+	}
+
+	@Override
+	public <TParam> void dispatch(Command<TParam> command, TParam parameter) {
+		synchronized (mLock) {
+			if (NONE != mLastParameter && (mLastParameter == parameter
+					|| (null != parameter && parameter.equals(mLastParameter)))) {
+				return;
+			}
+			mLastParameter = parameter;
+		}
+		if (null == mNext) {
+			command.execute(parameter);
+		} else {
+			mNext.dispatch(command, parameter);
+		}
+	}
+}
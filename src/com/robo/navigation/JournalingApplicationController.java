@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+/**
+ * An {@link ApplicationController} that records every command dispatch into a
+ * {@link CommandJournal} before handing it over to another controller. The
+ * recorded dispatches can later be re-executed with
+ * {@link CommandJournal#replay(CommandContainer)}.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class JournalingApplicationController implements ApplicationController {
+
+	private final ApplicationController mInner;
+	private final CommandJournal mJournal;
+
+	public JournalingApplicationController(ApplicationController inner, CommandJournal journal) {
+		mInner = inner;
+		mJournal = journal;
+	}
+
+	@Override
+	public <T> void execute(Class<? extends Command<T>> contract, T parameter) {
+		mJournal.append(contract, null, parameter);
+		mInner.execute(contract, parameter);
+	}
+
+	@Override
+	public <T> void execute(Class<? extends Command<T>> contract, String name, T parameter) {
+		mJournal.append(contract, name, parameter);
+		mInner.execute(contract, name, parameter);
+	}
+
+	/**
+	 * Records the command under its own class, which is resolved again from
+	 * the container on replay.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the command is an instance of an anonymous, local or
+	 *             lambda class, which cannot be resolved on replay.
+	 */
+	@Override
+	public <T> void execute(Command<T> command, T parameter) {
+		mJournal.append(command.getClass(), null, parameter);
+		mInner.execute(command, parameter);
+	}
+}
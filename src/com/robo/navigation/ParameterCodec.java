@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+/**
+ * Converts command parameters to and from bytes, so that command dispatches
+ * can be recorded by a {@link CommandJournal}.
+ * 
+ * @author robo-admin
+ * 
+ */
+public interface ParameterCodec {
+
+	/**
+	 * Encodes a command parameter.
+	 * 
+	 * @param parameter
+	 *            The parameter, may be null.
+	 * @return The encoded parameter.
+	 */
+	byte[] encode(Object parameter);
+
+	/**
+	 * Decodes a command parameter which has been encoded by
+	 * {@link #encode(Object)}.
+	 * 
+	 * @param data
+	 *            The encoded parameter.
+	 * @return The parameter.
+	 */
+	Object decode(byte[] data);
+}
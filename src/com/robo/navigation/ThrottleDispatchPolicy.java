@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import com.robo.threading.TimerWheel;
+
+/**
+ * A {@link DispatchPolicy} that executes a command at most once per interval.
+ * The first dispatch of an interval is executed immediately. Later dispatches
+ * within the same interval are dropped or, if trailing execution is enabled,
+ * the last of them is executed when the interval ends.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class ThrottleDispatchPolicy implements DispatchPolicy {
+
+	private final long mIntervalNanos;
+	private final boolean mTrailing;
+	private final TimerWheel mTimerWheel;
+	private final Executor mExecutor;
+	private final Object mLock = new Object();
+	private long mWindowStart;
+	private boolean mWindowOpen;
+	private DebounceDispatchPolicy.DeferredExecution<?> mTrailingExecution;
+	private TimerWheel.Timeout mTrailingTimeout;
+
+	/**
+	 * Creates a throttle policy that drops dispatches arriving within the
+	 * interval.
+	 * 
+	 * @param interval
+	 *            Minimum time between two executions.
+	 * @param unit
+	 *            Time unit of the interval.
+	 */
+	public ThrottleDispatchPolicy(long interval, TimeUnit unit) {
+		this(interval, unit, false, null, null);
+	}
+
+	/**
+	 * Creates a throttle policy.
+	 * 
+	 * @param interval
+	 *            Minimum time between two executions.
+	 * @param unit
+	 *            Time unit of the interval.
+	 * @param trailing
+	 *            If true, the last dispatch dropped within an interval is
+	 *            executed when the interval ends.
+	 * @param timerWheel
+	 *            The timer wheel that schedules trailing executions. If null,
+	 *            the shared wheel is used.
+	 * @param executor
+	 *            The executor that runs trailing executions. If null, they are
+	 *            run on the timer wheel's thread. A trailing execution that is
+	 *            still pending when the next interval's leading dispatch
+	 *            arrives is run on the dispatching thread instead, right
+	 *            before the leading one, so that they keep their order.
+	 */
+	public ThrottleDispatchPolicy(long interval, TimeUnit unit, boolean trailing, TimerWheel timerWheel,
+			Executor executor) {
+		mIntervalNanos = unit.toNanos(interval);
+		mTrailing = trailing;
+		mTimerWheel = trailing && null == timerWheel ? TimerWheel.getShared() : timerWheel;
+		mExecutor = executor;
+	}
+
+	@Override
+	public <TParam> void dispatch(Command<TParam> command, TParam parameter) {
+		long now = System.nanoTime();
+		DebounceDispatchPolicy.DeferredExecution<?> overdueExecution;
+		synchronized (mLock) {
+			if (!mWindowOpen || now - mWindowStart >= mIntervalNanos) {
+				overdueExecution = takeTrailingExecution();
+				openWindow(now);
+			} else {
+				if (mTrailing) {
+					mTrailingExecution = new DebounceDispatchPolicy.DeferredExecution<>(command, parameter,
+							mExecutor);
+					if (null == mTrailingTimeout) {
+						long delay = mIntervalNanos - (now - mWindowStart);
+						mTrailingTimeout = mTimerWheel.schedule(new TrailingExecution(), delay,
+								TimeUnit.NANOSECONDS);
+					}
+				}
+				return;
+			}
+		}
+		if (null != overdueExecution) {
+			// run inline so that it cannot be overtaken by the leading execution
+			overdueExecution.executeNow();
+		}
+		command.execute(parameter);
+	}
+
+	private void openWindow(long now) {
+		mWindowStart = now;
+		mWindowOpen = true;
+	}
+
+	/**
+	 * Takes the pending trailing execution away from its timeout, so that a
+	 * late timeout cannot run it after a newer leading execution. Must be
+	 * called while holding the lock.
+	 * 
+	 * @return The pending trailing execution, or null if there is none.
+	 */
+	private DebounceDispatchPolicy.DeferredExecution<?> takeTrailingExecution() {
+		DebounceDispatchPolicy.DeferredExecution<?> execution = mTrailingExecution;
+		if (null != mTrailingTimeout) {
+			mTrailingTimeout.cancel();
+			mTrailingTimeout = null;
+		}
+		mTrailingExecution = null;
+		return execution;
+	}
+
+	private final class TrailingExecution implements Runnable {
+		@Override
+		public void run() {
+			Runnable execution;
+			synchronized (mLock) {
+				execution = takeTrailingExecution();
+				if (null == execution) {
+					// a newer leading execution has already taken over
+					return;
+				}
+				openWindow(System.nanoTime());
+			}
+			if (null != execution) {
+				execution.run();
+			}
+		}
+	}
+}
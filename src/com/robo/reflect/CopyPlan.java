@@ -0,0 +1,795 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.reflect;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A precompiled recipe for copying objects of one class, used by {@link CopyUtils}. All
+ * reflective lookups happen in {@link #compile(Class)}; running a plan only reads and writes the
+ * fields it has collected.
+ *
+ * @author robo-admin
+ */
+abstract class CopyPlan {
+
+    /**
+     * Plan of immutable types: the source object is used as its own copy.
+     */
+    static final CopyPlan SHARED = new CopyPlan() {
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            return source;
+        }
+    };
+
+    /**
+     * Copies an object. Implementations register the copy in the given map before copying
+     * anything the object refers to, so that cycles lead back to the copy.
+     *
+     * @param source The object to copy. Never null.
+     * @param copies Copies made so far, keyed by their source objects.
+     * @return The copy.
+     */
+    abstract Object copy(Object source, IdentityHashMap<Object, Object> copies);
+
+    /**
+     * Compiles the plan for a specified class.
+     *
+     * @param type The class.
+     * @return The plan.
+     * @throws ReflectionException If objects of the class cannot be copied.
+     */
+    static CopyPlan compile(Class<?> type) throws ReflectionException {
+        if (CopyUtils.isImmutableType(type) || type.isSynthetic()) {
+            return SHARED;
+        }
+        if (type.isArray()) {
+            Class<?> componentType = type.getComponentType();
+            if (componentType.isPrimitive()) {
+                return new PrimitiveArrayPlan(componentType);
+            }
+            return new ObjectArrayPlan(componentType, isSharedFieldType(componentType));
+        }
+        if (type.getName().startsWith("java.")) {
+            if (Collection.class.isAssignableFrom(type)) {
+                return new CollectionPlan(findCollectionConstructor(type));
+            }
+            if (Map.class.isAssignableFrom(type)) {
+                return new MapPlan(findCollectionConstructor(type));
+            }
+            CopyPlan plan = compileJdkType(type);
+            if (null != plan) {
+                return plan;
+            }
+        } else if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)) {
+            Class<?> jdkSuperclass = findJdkSuperclass(type);
+            if (Object.class != jdkSuperclass) {
+                return compileJdkSubclass(type, jdkSuperclass);
+            }
+        }
+        return new ObjectPlan(type, createInstantiator(type), collectFields(type, Object.class));
+    }
+
+    /**
+     * Compiles the plan for a class that extends a JDK collection or map, whose inherited fields
+     * may not be accessible. Only the fields declared below the JDK class are copied. If the JDK
+     * class is concrete, it holds the elements, which are then added to the copy through the
+     * public API; abstract JDK classes leave the elements to the subclass's own fields.
+     */
+    private static CopyPlan compileJdkSubclass(Class<?> type, Class<?> jdkSuperclass) throws ReflectionException {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            throw new ReflectionException("Cannot instantiate abstract type: " + type.getName());
+        }
+        FieldCopier[] fields = collectFields(type, jdkSuperclass);
+        if (Modifier.isAbstract(jdkSuperclass.getModifiers())) {
+            return new ObjectPlan(type, createInstantiator(type), fields);
+        }
+        // the constructor with the fewest parameters is run with default arguments, as the fields it
+        // sets are overwritten anyway; an inner class, such as a double-brace initialized map, also
+        // takes its enclosing instance
+        Constructor<?> constructor = null;
+        for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+            if (null == constructor
+                    || candidate.getParameterTypes().length < constructor.getParameterTypes().length) {
+                constructor = candidate;
+            }
+        }
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        Class<?> enclosingClass = type.getEnclosingClass();
+        boolean inner = null != enclosingClass && !Modifier.isStatic(type.getModifiers())
+                && parameterTypes.length > 0 && enclosingClass == parameterTypes[0];
+        Field outer = inner ? findOuterField(type, enclosingClass) : null;
+        Object[] arguments = new Object[parameterTypes.length];
+        for (int i = 0; i < arguments.length; i++) {
+            if (parameterTypes[i].isPrimitive()) {
+                arguments[i] = Array.get(Array.newInstance(parameterTypes[i], 1), 0);
+            }
+        }
+        try {
+            constructor.setAccessible(true);
+        } catch (RuntimeException e) {
+            throw new ReflectionException("Constructor is not accessible: " + type.getName(), e);
+        }
+        return new JdkSubclassPlan(constructor, arguments, outer, fields);
+    }
+
+    /**
+     * Finds the first JDK class among the superclasses of a specified class.
+     *
+     * @return The JDK class, which is {@link Object} if the class extends no other JDK class.
+     */
+    private static Class<?> findJdkSuperclass(Class<?> type) {
+        Class<?> current = type.getSuperclass();
+        while (!current.getName().startsWith("java.")) {
+            current = current.getSuperclass();
+        }
+        return current;
+    }
+
+    /**
+     * Finds the field of an inner class that refers to its enclosing instance.
+     *
+     * @return The field, or null if the compiler left it out because the class does not use it.
+     */
+    private static Field findOuterField(Class<?> type, Class<?> enclosingClass) throws ReflectionException {
+        for (Field field : type.getDeclaredFields()) {
+            if (field.isSynthetic() && enclosingClass == field.getType()) {
+                makeAccessible(field);
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compiles the plan for a JDK class through its public API, since the fields of JDK classes
+     * may not be accessible. Optionals are rebuilt around a copy of their value, cloneable classes
+     * are copied with their public clone method, and other classes with a public copy constructor,
+     * or a constructor taking the value returned by a public get method, as atomics have. Atomic
+     * arrays are rebuilt from their elements.
+     *
+     * @return The plan, or null if the class has none of these and has to be copied field by
+     * field.
+     */
+    private static CopyPlan compileJdkType(Class<?> type) {
+        if (Optional.class == type) {
+            return OPTIONAL;
+        }
+        if (AtomicReference.class == type) {
+            return ATOMIC_REFERENCE;
+        }
+        if (AtomicReferenceArray.class == type) {
+            return ATOMIC_REFERENCE_ARRAY;
+        }
+        if (!Modifier.isPublic(type.getModifiers())) {
+            return null;
+        }
+        if (Cloneable.class.isAssignableFrom(type)) {
+            try {
+                Method clone = type.getMethod("clone");
+                if (Modifier.isPublic(clone.getDeclaringClass().getModifiers())) {
+                    return new ClonePlan(clone);
+                }
+            } catch (NoSuchMethodException e) {
+                // Object.clone() is protected
+            }
+        }
+        for (Constructor<?> constructor : type.getConstructors()) {
+            Class<?>[] parameterTypes = constructor.getParameterTypes();
+            if (parameterTypes.length == 1 && (type == parameterTypes[0]
+                    || (CharSequence.class == parameterTypes[0] && CharSequence.class.isAssignableFrom(type)))) {
+                return new ConstructorPlan(constructor, null);
+            }
+        }
+        try {
+            Method getter = type.getMethod("get");
+            Class<?> valueType = getter.getReturnType();
+            if (valueType.isPrimitive() && void.class != valueType) {
+                return new ConstructorPlan(type.getConstructor(valueType), getter);
+            }
+        } catch (NoSuchMethodException e) {
+            // not a single value
+        }
+        try {
+            Method getter = type.getMethod("get", int.class);
+            Class<?> elementType = getter.getReturnType();
+            if (elementType.isPrimitive() && void.class != elementType) {
+                Constructor<?> constructor = type.getConstructor(Array.newInstance(elementType, 0).getClass());
+                return new PrimitiveElementsPlan(constructor, type.getMethod("length"), getter, elementType);
+            }
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a field of a specified declared type can keep referring to the original
+     * value, which is the case if every possible value is immutable.
+     */
+    private static boolean isSharedFieldType(Class<?> type) {
+        return CopyUtils.isImmutableType(type) && (type.isEnum() || Modifier.isFinal(type.getModifiers()));
+    }
+
+    /**
+     * Collects the instance fields declared by a specified class and its superclasses below a
+     * specified one.
+     */
+    private static FieldCopier[] collectFields(Class<?> type, Class<?> stop) throws ReflectionException {
+        List<FieldCopier> fields = new ArrayList<>();
+        for (Class<?> current = type; null != current && stop != current; current = current
+                .getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                makeAccessible(field);
+                fields.add(new FieldCopier(field));
+            }
+        }
+        return fields.toArray(new FieldCopier[fields.size()]);
+    }
+
+    private static void makeAccessible(Field field) throws ReflectionException {
+        try {
+            field.setAccessible(true);
+        } catch (RuntimeException e) {
+            throw new ReflectionException(String.format("Field is not accessible: %s.%s",
+                    field.getDeclaringClass().getName(), field.getName()), e);
+        }
+    }
+
+    /**
+     * Finds the constructor of a JDK collection that creates an empty instance, preferring one
+     * that takes a comparator for sorted collections.
+     *
+     * @return The constructor, or null if the collection has to be copied into a general-purpose
+     * one.
+     */
+    private static Constructor<?> findCollectionConstructor(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers()) || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            if (SortedSet.class.isAssignableFrom(type) || SortedMap.class.isAssignableFrom(type)
+                    || PriorityQueue.class.isAssignableFrom(type)) {
+                return type.getConstructor(Comparator.class);
+            }
+            return type.getConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Instantiator createInstantiator(Class<?> type) throws ReflectionException {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            throw new ReflectionException("Cannot instantiate abstract type: " + type.getName());
+        }
+        try {
+            final Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return new Instantiator() {
+                @Override
+                public Object newInstance() throws Exception {
+                    return constructor.newInstance();
+                }
+            };
+        } catch (NoSuchMethodException | RuntimeException e) {
+            return UnsafeInstantiator.create(type);
+        }
+    }
+
+    private static Object newInstance(Constructor<?> constructor, Object... args) {
+        try {
+            return constructor.newInstance(args);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new ReflectionException(e);
+        }
+    }
+
+    private interface Instantiator {
+        Object newInstance() throws Exception;
+    }
+
+    /**
+     * Creates instances without running a constructor, for classes that have no constructor
+     * without parameters.
+     */
+    private static final class UnsafeInstantiator implements Instantiator {
+
+        private static final Object UNSAFE;
+        private static final Method ALLOCATE_INSTANCE;
+
+        static {
+            Object unsafe = null;
+            Method allocateInstance = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+            } catch (Exception e) {
+                unsafe = null;
+            }
+            UNSAFE = unsafe;
+            ALLOCATE_INSTANCE = allocateInstance;
+        }
+
+        private final Class<?> mType;
+
+        private UnsafeInstantiator(Class<?> type) {
+            mType = type;
+        }
+
+        static Instantiator create(Class<?> type) throws ReflectionException {
+            if (null == UNSAFE) {
+                throw new ReflectionException("No constructor without parameters found: " + type.getName());
+            }
+            return new UnsafeInstantiator(type);
+        }
+
+        @Override
+        public Object newInstance() throws Exception {
+            return ALLOCATE_INSTANCE.invoke(UNSAFE, mType);
+        }
+    }
+
+    /**
+     * Copies one field. Primitive fields are copied through the typed accessors to avoid boxing.
+     */
+    private static final class FieldCopier {
+
+        private static final int KIND_BOOLEAN = 0;
+        private static final int KIND_BYTE = 1;
+        private static final int KIND_CHAR = 2;
+        private static final int KIND_SHORT = 3;
+        private static final int KIND_INT = 4;
+        private static final int KIND_LONG = 5;
+        private static final int KIND_FLOAT = 6;
+        private static final int KIND_DOUBLE = 7;
+        private static final int KIND_SHARED = 8;
+        private static final int KIND_DEEP = 9;
+
+        private final Field mField;
+        private final int mKind;
+
+        FieldCopier(Field field) {
+            mField = field;
+            Class<?> type = field.getType();
+            if (boolean.class == type) {
+                mKind = KIND_BOOLEAN;
+            } else if (byte.class == type) {
+                mKind = KIND_BYTE;
+            } else if (char.class == type) {
+                mKind = KIND_CHAR;
+            } else if (short.class == type) {
+                mKind = KIND_SHORT;
+            } else if (int.class == type) {
+                mKind = KIND_INT;
+            } else if (long.class == type) {
+                mKind = KIND_LONG;
+            } else if (float.class == type) {
+                mKind = KIND_FLOAT;
+            } else if (double.class == type) {
+                mKind = KIND_DOUBLE;
+            } else {
+                mKind = isSharedFieldType(type) ? KIND_SHARED : KIND_DEEP;
+            }
+        }
+
+        void copy(Object source, Object target, IdentityHashMap<Object, Object> copies)
+                throws IllegalAccessException {
+            Field field = mField;
+            switch (mKind) {
+                case KIND_BOOLEAN:
+                    field.setBoolean(target, field.getBoolean(source));
+                    break;
+                case KIND_BYTE:
+                    field.setByte(target, field.getByte(source));
+                    break;
+                case KIND_CHAR:
+                    field.setChar(target, field.getChar(source));
+                    break;
+                case KIND_SHORT:
+                    field.setShort(target, field.getShort(source));
+                    break;
+                case KIND_INT:
+                    field.setInt(target, field.getInt(source));
+                    break;
+                case KIND_LONG:
+                    field.setLong(target, field.getLong(source));
+                    break;
+                case KIND_FLOAT:
+                    field.setFloat(target, field.getFloat(source));
+                    break;
+                case KIND_DOUBLE:
+                    field.setDouble(target, field.getDouble(source));
+                    break;
+                case KIND_SHARED:
+                    field.set(target, field.get(source));
+                    break;
+                default:
+                    field.set(target, CopyUtils.copy(field.get(source), copies));
+                    break;
+            }
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new ReflectionException(e);
+        }
+    }
+
+    /**
+     * Rebuilds an optional around a copy of its value. Empty optionals and optionals of immutable
+     * values are shared.
+     */
+    private static final CopyPlan OPTIONAL = new CopyPlan() {
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            Optional<?> optional = (Optional<?>) source;
+            if (!optional.isPresent()) {
+                return source;
+            }
+            Object value = CopyUtils.copy(optional.get(), copies);
+            Object target = value == optional.get() ? source : Optional.of(value);
+            copies.put(source, target);
+            return target;
+        }
+    };
+
+    /**
+     * Copies an atomic reference and the object it refers to. The copy is registered before its
+     * value is copied, so that the value may refer back to it.
+     */
+    private static final CopyPlan ATOMIC_REFERENCE = new CopyPlan() {
+        @SuppressWarnings("unchecked")
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            AtomicReference<Object> target = new AtomicReference<>();
+            copies.put(source, target);
+            target.set(CopyUtils.copy(((AtomicReference<Object>) source).get(), copies));
+            return target;
+        }
+    };
+
+    /**
+     * Copies an atomic reference array and the objects it refers to, registering the copy first
+     * like {@link #ATOMIC_REFERENCE}.
+     */
+    private static final CopyPlan ATOMIC_REFERENCE_ARRAY = new CopyPlan() {
+        @SuppressWarnings("unchecked")
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            AtomicReferenceArray<Object> array = (AtomicReferenceArray<Object>) source;
+            AtomicReferenceArray<Object> target = new AtomicReferenceArray<>(array.length());
+            copies.put(source, target);
+            for (int i = 0; i < array.length(); i++) {
+                target.set(i, CopyUtils.copy(array.get(i), copies));
+            }
+            return target;
+        }
+    };
+
+    private static final class ClonePlan extends CopyPlan {
+
+        private final Method mClone;
+
+        ClonePlan(Method clone) {
+            mClone = clone;
+        }
+
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            Object target = invoke(mClone, source);
+            copies.put(source, target);
+            return target;
+        }
+    }
+
+    /**
+     * Copies an object by passing it, or the primitive value returned by a specified getter, to a
+     * constructor.
+     */
+    private static final class ConstructorPlan extends CopyPlan {
+
+        private final Constructor<?> mConstructor;
+        private final Method mGetter;
+
+        ConstructorPlan(Constructor<?> constructor, Method getter) {
+            mConstructor = constructor;
+            mGetter = getter;
+        }
+
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            Object target = newInstance(mConstructor, null == mGetter ? source : invoke(mGetter, source));
+            copies.put(source, target);
+            return target;
+        }
+    }
+
+    /**
+     * Copies an object that holds primitive elements, such as an atomic array, by reading them
+     * into an array and passing that to a constructor.
+     */
+    private static final class PrimitiveElementsPlan extends CopyPlan {
+
+        private final Constructor<?> mConstructor;
+        private final Method mLength;
+        private final Method mGetter;
+        private final Class<?> mElementType;
+
+        PrimitiveElementsPlan(Constructor<?> constructor, Method length, Method getter, Class<?> elementType) {
+            mConstructor = constructor;
+            mLength = length;
+            mGetter = getter;
+            mElementType = elementType;
+        }
+
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            int length = (Integer) invoke(mLength, source);
+            Object elements = Array.newInstance(mElementType, length);
+            for (int i = 0; i < length; i++) {
+                Array.set(elements, i, invoke(mGetter, source, i));
+            }
+            Object target = newInstance(mConstructor, elements);
+            copies.put(source, target);
+            return target;
+        }
+    }
+
+    private static final class ObjectPlan extends CopyPlan {
+
+        private final Class<?> mType;
+        private final Instantiator mInstantiator;
+        private final FieldCopier[] mFields;
+
+        ObjectPlan(Class<?> type, Instantiator instantiator, FieldCopier[] fields) {
+            mType = type;
+            mInstantiator = instantiator;
+            mFields = fields;
+        }
+
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            try {
+                Object target = mInstantiator.newInstance();
+                copies.put(source, target);
+                for (FieldCopier field : mFields) {
+                    field.copy(source, target, copies);
+                }
+                return target;
+            } catch (ReflectionException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ReflectionException("Unable to copy an instance of " + mType.getName(), e);
+            }
+        }
+    }
+
+    private static final class PrimitiveArrayPlan extends CopyPlan {
+
+        private final Class<?> mComponentType;
+
+        PrimitiveArrayPlan(Class<?> componentType) {
+            mComponentType = componentType;
+        }
+
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            int length = Array.getLength(source);
+            Object target = Array.newInstance(mComponentType, length);
+            System.arraycopy(source, 0, target, 0, length);
+            copies.put(source, target);
+            return target;
+        }
+    }
+
+    private static final class ObjectArrayPlan extends CopyPlan {
+
+        private final Class<?> mComponentType;
+        private final boolean mSharedElements;
+
+        ObjectArrayPlan(Class<?> componentType, boolean sharedElements) {
+            mComponentType = componentType;
+            mSharedElements = sharedElements;
+        }
+
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            Object[] array = (Object[]) source;
+            Object[] target = (Object[]) Array.newInstance(mComponentType, array.length);
+            copies.put(source, target);
+            if (mSharedElements) {
+                System.arraycopy(array, 0, target, 0, array.length);
+            } else {
+                for (int i = 0; i < array.length; i++) {
+                    target[i] = CopyUtils.copy(array[i], copies);
+                }
+            }
+            return target;
+        }
+    }
+
+    /**
+     * Copies JDK collections by adding copies of the elements to a new instance of the same class.
+     * Collections without a suitable public constructor, such as unmodifiable views, are copied
+     * into a general-purpose collection of the same kind.
+     */
+    private static final class CollectionPlan extends CopyPlan {
+
+        private final Constructor<?> mConstructor;
+
+        CollectionPlan(Constructor<?> constructor) {
+            mConstructor = constructor;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            Collection<Object> collection = (Collection<Object>) source;
+            Collection<Object> target;
+            if (null == mConstructor) {
+                if (collection instanceof EnumSet) {
+                    target = ((EnumSet) collection).clone();
+                    copies.put(source, target);
+                    return target;
+                }
+                if (collection instanceof SortedSet) {
+                    target = new TreeSet<>(((SortedSet<Object>) collection).comparator());
+                } else if (collection instanceof Set) {
+                    target = new LinkedHashSet<>(collection.size());
+                } else {
+                    target = new ArrayList<>(collection.size());
+                }
+            } else if (mConstructor.getParameterTypes().length == 1) {
+                Comparator<?> comparator = collection instanceof SortedSet ? ((SortedSet<?>) collection)
+                        .comparator() : ((PriorityQueue<?>) collection).comparator();
+                target = (Collection<Object>) newInstance(mConstructor, comparator);
+            } else {
+                target = (Collection<Object>) newInstance(mConstructor);
+            }
+            copies.put(source, target);
+            for (Object element : collection) {
+                target.add(CopyUtils.copy(element, copies));
+            }
+            return target;
+        }
+    }
+
+    /**
+     * Copies JDK maps the same way as {@link CollectionPlan} copies collections.
+     */
+    private static final class MapPlan extends CopyPlan {
+
+        private final Constructor<?> mConstructor;
+
+        MapPlan(Constructor<?> constructor) {
+            mConstructor = constructor;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            Map<Object, Object> map = (Map<Object, Object>) source;
+            Map<Object, Object> target;
+            if (map instanceof EnumMap) {
+                target = new EnumMap((EnumMap) map);
+            } else if (null == mConstructor) {
+                target = map instanceof SortedMap ? new TreeMap<>(((SortedMap<Object, Object>) map)
+                        .comparator()) : new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+            } else if (mConstructor.getParameterTypes().length == 1) {
+                target = (Map<Object, Object>) newInstance(mConstructor, ((SortedMap<?, ?>) map).comparator());
+            } else {
+                target = (Map<Object, Object>) newInstance(mConstructor);
+            }
+            copies.put(source, target);
+            for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                target.put(CopyUtils.copy(entry.getKey(), copies), CopyUtils.copy(entry.getValue(), copies));
+            }
+            return target;
+        }
+    }
+
+    /**
+     * Copies a subclass of a concrete JDK collection or map. The copy is created with one of the
+     * subclass's constructors and cleared of anything the constructor added, the copies of the
+     * elements are added through the public API, and then the fields declared by the subclass are
+     * copied, so that they end up as in the source whatever adding the elements did to them.
+     */
+    private static final class JdkSubclassPlan extends CopyPlan {
+
+        private final Constructor<?> mConstructor;
+        private final Object[] mArguments;
+        private final Field mOuter;
+        private final FieldCopier[] mFields;
+
+        JdkSubclassPlan(Constructor<?> constructor, Object[] arguments, Field outer, FieldCopier[] fields) {
+            mConstructor = constructor;
+            mArguments = arguments;
+            mOuter = outer;
+            mFields = fields;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+            try {
+                Object[] arguments = mArguments;
+                if (null != mOuter) {
+                    arguments = arguments.clone();
+                    arguments[0] = mOuter.get(source);
+                }
+                Object target = mConstructor.newInstance(arguments);
+                copies.put(source, target);
+                if (source instanceof Map) {
+                    Map<Object, Object> map = (Map<Object, Object>) target;
+                    map.clear();
+                    for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) source).entrySet()) {
+                        map.put(CopyUtils.copy(entry.getKey(), copies), CopyUtils.copy(entry.getValue(), copies));
+                    }
+                } else {
+                    Collection<Object> collection = (Collection<Object>) target;
+                    collection.clear();
+                    for (Object element : (Collection<Object>) source) {
+                        collection.add(CopyUtils.copy(element, copies));
+                    }
+                }
+                for (FieldCopier field : mFields) {
+                    field.copy(source, target, copies);
+                }
+                return target;
+            } catch (ReflectionException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ReflectionException("Unable to copy an instance of " + mConstructor.getDeclaringClass()
+                        .getName(), e);
+            }
+        }
+    }
+}
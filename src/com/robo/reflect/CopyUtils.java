@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.reflect;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Provides deep copying of object graphs.
+ * <p>
+ * The first copy of an object of a given class compiles a copy plan for that
+ * class: its fields with their accessors, how to instantiate it without a
+ * constructor call, and which fields can be shared because their type is
+ * immutable. Later copies only run the cached plan. Strings, primitive
+ * wrappers, enums and other immutable types are shared instead of copied,
+ * arrays and JDK collections are copied element by element, and objects that
+ * are reachable more than once, including through cycles, are copied once.
+ * Other JDK classes, whose fields may not be accessible, are copied through
+ * their public clone method, copy constructor or value accessors. Subclasses
+ * of JDK collections and maps have only their own fields copied, and the
+ * elements are added to the copy through the public API.
+ *
+ * @author robo-admin
+ */
+public final class CopyUtils {
+
+    private static final ConcurrentMap<Class<?>, CopyPlan> PLANS = new ConcurrentHashMap<>();
+    private static final Set<Class<?>> IMMUTABLE_TYPES = Collections
+            .newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+    static {
+        IMMUTABLE_TYPES.add(String.class);
+        IMMUTABLE_TYPES.add(BigInteger.class);
+        IMMUTABLE_TYPES.add(BigDecimal.class);
+        IMMUTABLE_TYPES.add(Class.class);
+        IMMUTABLE_TYPES.add(UUID.class);
+        IMMUTABLE_TYPES.add(Locale.class);
+        IMMUTABLE_TYPES.add(Pattern.class);
+        IMMUTABLE_TYPES.add(URI.class);
+        IMMUTABLE_TYPES.add(OptionalInt.class);
+        IMMUTABLE_TYPES.add(OptionalLong.class);
+        IMMUTABLE_TYPES.add(OptionalDouble.class);
+    }
+
+    private CopyUtils() {
+
+    }
+
+    /**
+     * Creates a deep copy of a specified object.
+     *
+     * @param source The object to copy.
+     * @return The copy, or the object itself if it is immutable. null if the object is null.
+     * @throws ReflectionException If the object graph contains an object whose class cannot be
+     *                             instantiated or whose fields are not accessible.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T deepCopy(T source) throws ReflectionException {
+        if (null == source) {
+            return null;
+        }
+        return (T) copy(source, new IdentityHashMap<Object, Object>());
+    }
+
+    /**
+     * Registers a type whose instances never change after construction, so that they are shared
+     * instead of copied.
+     *
+     * @param type The type.
+     */
+    public static void registerImmutableType(Class<?> type) {
+        if (IMMUTABLE_TYPES.add(type)) {
+            PLANS.clear();
+        }
+    }
+
+    /**
+     * Checks whether instances of a specified type are shared instead of copied.
+     *
+     * @param type The type.
+     * @return true if the type is primitive, a primitive wrapper, an enum, a java.time type or a
+     * registered immutable type.
+     */
+    public static boolean isImmutableType(Class<?> type) {
+        return type.isPrimitive() || PrimitiveUtils.isWrapperType(type) || type.isEnum()
+                || (null != type.getSuperclass() && type.getSuperclass().isEnum())
+                || IMMUTABLE_TYPES.contains(type) || type.getName().startsWith("java.time.");
+    }
+
+    /**
+     * Copies an object as part of a larger copy.
+     *
+     * @param source The object to copy.
+     * @param copies Copies made so far, keyed by their source objects.
+     * @return The copy.
+     */
+    static Object copy(Object source, IdentityHashMap<Object, Object> copies) {
+        if (null == source) {
+            return null;
+        }
+        CopyPlan plan = planFor(source.getClass());
+        if (plan == CopyPlan.SHARED) {
+            return source;
+        }
+        Object copy = copies.get(source);
+        return null != copy ? copy : plan.copy(source, copies);
+    }
+
+    private static CopyPlan planFor(Class<?> type) {
+        CopyPlan plan = PLANS.get(type);
+        if (null == plan) {
+            plan = CopyPlan.compile(type);
+            CopyPlan existing = PLANS.putIfAbsent(type, plan);
+            if (null != existing) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+}
@@ -35,6 +35,10 @@ public class ReflectionException extends ApplicationException {
         super(message);
     }
 
+    public ReflectionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
     public ReflectionException(Throwable cause) {
         super(cause);
     }
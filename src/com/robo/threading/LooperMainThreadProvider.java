@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import android.os.Looper;
+
+/**
+ * Provides the thread of Android's main looper. Kept in its own class so that
+ * {@link ThreadUtils} loads on a plain JVM without the Android classes.
+ * 
+ * @author robo-admin
+ * 
+ */
+final class LooperMainThreadProvider implements MainThreadProvider {
+
+	@Override
+	public Thread getMainThread() {
+		Looper looper = Looper.getMainLooper();
+		return null == looper ? null : looper.getThread();
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+/**
+ * Identifies the application's main thread for {@link ThreadUtils}. On
+ * Android the main thread is the one of the main looper; elsewhere a provider
+ * can be installed through
+ * {@link ThreadUtils#setMainThreadProvider(MainThreadProvider)}.
+ * 
+ * @author robo-admin
+ * 
+ */
+public interface MainThreadProvider {
+
+	/**
+	 * Gets the main thread.
+	 * 
+	 * @return The main thread, or null if it is not known yet.
+	 */
+	Thread getMainThread();
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free pool of reusable objects. Each thread keeps a few released
+ * objects in a thread-local cache which is served without any synchronization;
+ * objects that do not fit there are exchanged through a shared array using
+ * compare-and-set. Objects are reset by the pool's {@link Allocator} when they
+ * are released.
+ * 
+ * @param <T>
+ *            Type of pooled objects.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class ObjectPool<T> {
+
+	private static final int MAX_PROBES = 8;
+
+	private final Allocator<T> mAllocator;
+	private final AtomicReferenceArray<T> mShared;
+	private final int mMask;
+	private final int mLocalCapacity;
+	private final ThreadLocal<LocalCache<T>> mLocal = new ThreadLocal<LocalCache<T>>() {
+		@Override
+		protected LocalCache<T> initialValue() {
+			return new LocalCache<>(mLocalCapacity);
+		}
+	};
+
+	/**
+	 * Creates a pool.
+	 * 
+	 * @param allocator
+	 *            Creates and resets pooled objects.
+	 * @param sharedCapacity
+	 *            Maximum number of objects held in the shared array. Rounded up
+	 *            to a power of two.
+	 * @param localCapacity
+	 *            Maximum number of objects held by each thread.
+	 */
+	public ObjectPool(Allocator<T> allocator, int sharedCapacity, int localCapacity) {
+		if (sharedCapacity <= 0 || sharedCapacity > (1 << 30) || localCapacity < 0) {
+			throw new IllegalArgumentException("Invalid pool capacity");
+		}
+		int size = Integer.highestOneBit(sharedCapacity);
+		if (size < sharedCapacity) {
+			size <<= 1;
+		}
+		mAllocator = allocator;
+		mShared = new AtomicReferenceArray<>(size);
+		mMask = size - 1;
+		mLocalCapacity = localCapacity;
+	}
+
+	/**
+	 * Takes an object from this pool, or creates a new one if the pool is
+	 * empty.
+	 * 
+	 * @return The object.
+	 */
+	public T acquire() {
+		LocalCache<T> local = mLocal.get();
+		if (local.mCount > 0) {
+			return local.pop();
+		}
+		int start = probe();
+		int probes = Math.min(MAX_PROBES, mShared.length());
+		for (int i = 0; i < probes; i++) {
+			int index = (start + i) & mMask;
+			T object = mShared.get(index);
+			if (null != object && mShared.compareAndSet(index, object, null)) {
+				return object;
+			}
+		}
+		return mAllocator.create();
+	}
+
+	/**
+	 * Resets an object and returns it to this pool. The object must not be
+	 * used by the caller afterwards. If the pool is full, the object is left to
+	 * the garbage collector.
+	 * 
+	 * @param object
+	 *            The object to release.
+	 */
+	public void release(T object) {
+		if (null == object) {
+			return;
+		}
+		mAllocator.reset(object);
+		LocalCache<T> local = mLocal.get();
+		if (local.mCount < mLocalCapacity) {
+			local.push(object);
+			return;
+		}
+		int start = probe();
+		int probes = Math.min(MAX_PROBES, mShared.length());
+		for (int i = 0; i < probes; i++) {
+			int index = (start + i) & mMask;
+			if (null == mShared.get(index) && mShared.compareAndSet(index, null, object)) {
+				return;
+			}
+		}
+	}
+
+	private int probe() {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mMask;
+	}
+
+	/**
+	 * Creates and resets objects of an {@link ObjectPool}.
+	 * 
+	 * @param <T>
+	 *            Type of pooled objects.
+	 */
+	public interface Allocator<T> {
+		/**
+		 * Creates a new object when the pool is empty.
+		 */
+		T create();
+
+		/**
+		 * Clears state of an object before it is returned to the pool.
+		 */
+		void reset(T object);
+	}
+
+	/**
+	 * Objects held by one thread. Static, so that a cache left in a thread's
+	 * locals does not keep the pool reachable.
+	 */
+	private static final class LocalCache<T> {
+
+		private final Object[] mObjects;
+		private int mCount;
+
+		LocalCache(int capacity) {
+			mObjects = new Object[capacity];
+		}
+
+		void push(T object) {
+			mObjects[mCount++] = object;
+		}
+
+		@SuppressWarnings("unchecked")
+		T pop() {
+			T object = (T) mObjects[--mCount];
+			mObjects[mCount] = null;
+			return object;
+		}
+	}
+}
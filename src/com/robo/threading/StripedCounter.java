@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which spreads updates from different threads over several cells,
+ * each on its own cache line, so that concurrent increments do not contend on
+ * a single memory location. Reading the value sums up all cells and is
+ * therefore more expensive than updating it.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class StripedCounter {
+
+	/**
+	 * Distance between two cells in longs, so that each cell occupies its own
+	 * 64-byte cache line.
+	 */
+	private static final int PADDING = 8;
+
+	private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			long id = Thread.currentThread().getId();
+			int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+			return new int[] { h ^ (h >>> 16) };
+		}
+	};
+
+	private final AtomicLongArray mCells;
+	private final int mMask;
+
+	public StripedCounter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a counter.
+	 * 
+	 * @param stripes
+	 *            Number of cells. Rounded up to a power of two.
+	 */
+	public StripedCounter(int stripes) {
+		if (stripes <= 0 || stripes > (1 << 20)) {
+			throw new IllegalArgumentException("stripes must be in range (0, 2^20]");
+		}
+		int size = Integer.highestOneBit(stripes);
+		if (size < stripes) {
+			size <<= 1;
+		}
+		mCells = new AtomicLongArray(size * PADDING);
+		mMask = size - 1;
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void decrement() {
+		add(-1);
+	}
+
+	/**
+	 * Adds a specified value to this counter. A thread that fails to update its
+	 * cell because of contention moves on to another cell for later updates.
+	 */
+	public void add(long delta) {
+		int[] probe = PROBE.get();
+		int index = (probe[0] & mMask) * PADDING;
+		long value = mCells.get(index);
+		if (!mCells.compareAndSet(index, value, value + delta)) {
+			probe[0] += 0x61C88647;
+			mCells.getAndAdd(index, delta);
+		}
+	}
+
+	/**
+	 * Gets the current value of this counter. The result is not an atomic
+	 * snapshot if the counter is updated concurrently.
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < mCells.length(); i += PADDING) {
+			sum += mCells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Resets this counter to zero and returns the value it had.
+	 */
+	public long sumThenReset() {
+		long sum = 0;
+		for (int i = 0; i < mCells.length(); i += PADDING) {
+			sum += mCells.getAndSet(i, 0);
+		}
+		return sum;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+}
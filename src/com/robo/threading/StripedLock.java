@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks selected by key hash. Operations on different keys
+ * usually take different locks and can run in parallel, while the number of
+ * lock objects stays bounded regardless of the number of keys.
+ * 
+ * @author robo-admin
+ * 
+ */
+public class StripedLock {
+
+	private final Lock[] mLocks;
+	private final int mMask;
+
+	/**
+	 * Creates a striped lock.
+	 * 
+	 * @param stripes
+	 *            Number of locks. Rounded up to a power of two.
+	 */
+	public StripedLock(int stripes) {
+		if (stripes <= 0 || stripes > (1 << 20)) {
+			throw new IllegalArgumentException("stripes must be in range (0, 2^20]");
+		}
+		int size = Integer.highestOneBit(stripes);
+		if (size < stripes) {
+			size <<= 1;
+		}
+		mLocks = new Lock[size];
+		for (int i = 0; i < size; i++) {
+			mLocks[i] = new ReentrantLock();
+		}
+		mMask = size - 1;
+	}
+
+	/**
+	 * Gets the lock which guards a specified key.
+	 * 
+	 * @param key
+	 *            The key, may be null.
+	 * @return The lock.
+	 */
+	public Lock get(Object key) {
+		return getAt(null == key ? 0 : key.hashCode());
+	}
+
+	/**
+	 * Gets the lock which guards a specified hash code.
+	 */
+	public Lock getAt(int hash) {
+		int h = hash * 0x9E3779B9;
+		return mLocks[(h ^ (h >>> 16)) & mMask];
+	}
+
+	/**
+	 * Gets number of locks.
+	 */
+	public int size() {
+		return mLocks.length;
+	}
+}
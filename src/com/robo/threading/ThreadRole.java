@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+/**
+ * The kind of work a thread is meant for. Roles are assigned through
+ * {@link ThreadUtils#setThreadRole(ThreadRole)} or
+ * {@link ThreadUtils#newThreadFactory(ThreadRole, String)} and compared by
+ * identity, so custom roles should be kept in constants.
+ * 
+ * @author robo-admin
+ * 
+ */
+public final class ThreadRole {
+
+	/**
+	 * The application's main thread, as identified by the
+	 * {@link MainThreadProvider}.
+	 */
+	public static final ThreadRole MAIN = new ThreadRole("main");
+
+	/**
+	 * Threads that block on I/O.
+	 */
+	public static final ThreadRole IO = new ThreadRole("io");
+
+	/**
+	 * Threads that run CPU-bound work.
+	 */
+	public static final ThreadRole COMPUTE = new ThreadRole("compute");
+
+	private final String mName;
+
+	/**
+	 * Creates a custom role.
+	 * 
+	 * @param name
+	 *            Name of the role, used in thread names and error messages.
+	 */
+	public ThreadRole(String name) {
+		if (null == name) {
+			throw new NullPointerException("name");
+		}
+		mName = name;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	@Override
+	public String toString() {
+		return mName;
+	}
+}
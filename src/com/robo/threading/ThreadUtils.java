@@ -16,10 +16,247 @@
  */
 package com.robo.threading;
 
-import android.os.Looper;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.robo.InvalidOperationException;
+
+/**
+ * Provides utilities for finding out which thread code runs on.
+ * <p>
+ * Besides telling the main thread from background threads, threads can be
+ * tagged with a {@link ThreadRole} such as {@link ThreadRole#IO} or
+ * {@link ThreadRole#COMPUTE}. Threads created by
+ * {@link #newThreadFactory(ThreadRole, String)} carry their role in a field,
+ * other threads in a thread-local variable. The main thread is resolved
+ * through a {@link MainThreadProvider} until it is known, and then recognized
+ * by a reference comparison.
+ * <p>
+ * The assertion helpers only check anything if Java assertions are enabled
+ * for this class or the system property
+ * <code>com.robo.threading.assertions</code> is true. Otherwise they are empty
+ * and removed by the JIT compiler.
+ * 
+ * @author robo-admin
+ * 
+ */
 public final class ThreadUtils {
+
+	private static final boolean ASSERTIONS_ENABLED = ThreadUtils.class.desiredAssertionStatus()
+			|| Boolean.getBoolean("com.robo.threading.assertions");
+
+	private static final ThreadLocal<ThreadRole> ROLES = new ThreadLocal<>();
+
+	/**
+	 * The installed provider together with the main thread it returned, so that
+	 * a thread is never cached for a provider that has since been replaced.
+	 */
+	private static final AtomicReference<MainThreadBinding> MAIN_THREAD = new AtomicReference<>();
+
+	private ThreadUtils() {
+
+	}
+
 	public static boolean isCurrentThreadBackgroundThread() {
-		return Looper.getMainLooper() != Looper.myLooper();
+		return !isMainThread();
+	}
+
+	public static boolean isMainThread() {
+		MainThreadBinding binding = MAIN_THREAD.get();
+		Thread mainThread = null == binding ? null : binding.mThread;
+		if (null == mainThread) {
+			mainThread = resolveMainThread(binding);
+		}
+		return Thread.currentThread() == mainThread;
+	}
+
+	/**
+	 * Replaces the way the main thread is identified, for example on a plain
+	 * JVM or in tests.
+	 * 
+	 * @param provider
+	 *            The provider. If null, the default provider is used: the
+	 *            thread of Android's main looper, or on a plain JVM the thread
+	 *            named "main".
+	 */
+	public static void setMainThreadProvider(MainThreadProvider provider) {
+		MAIN_THREAD.set(null == provider ? null : new MainThreadBinding(provider, null));
+	}
+
+	/**
+	 * Gets the role of the current thread.
+	 * 
+	 * @return {@link ThreadRole#MAIN} on the main thread, otherwise the role
+	 *         assigned to the thread, or null if none has been assigned.
+	 */
+	public static ThreadRole getThreadRole() {
+		if (isMainThread()) {
+			return ThreadRole.MAIN;
+		}
+		Thread current = Thread.currentThread();
+		if (current instanceof RoleThread) {
+			return ((RoleThread) current).mRole;
+		}
+		return ROLES.get();
+	}
+
+	/**
+	 * Assigns a role to the current thread.
+	 * 
+	 * @param role
+	 *            The role, or null to remove the assigned role.
+	 * @throws InvalidOperationException
+	 *             If the role is {@link ThreadRole#MAIN}, which only the
+	 *             {@link MainThreadProvider} decides, or if the thread was
+	 *             created with a fixed role.
+	 */
+	public static void setThreadRole(ThreadRole role) throws InvalidOperationException {
+		if (ThreadRole.MAIN == role) {
+			throw new InvalidOperationException("The main role is assigned by the MainThreadProvider");
+		}
+		if (Thread.currentThread() instanceof RoleThread) {
+			throw new InvalidOperationException("The thread was created with a fixed role");
+		}
+		if (null == role) {
+			ROLES.remove();
+		} else {
+			ROLES.set(role);
+		}
+	}
+
+	public static boolean isCurrentThread(ThreadRole role) {
+		return getThreadRole() == role;
+	}
+
+	/**
+	 * Creates a thread factory whose threads have a specified role for their
+	 * whole lifetime.
+	 * 
+	 * @param role
+	 *            Role of the threads.
+	 * @param namePrefix
+	 *            Prefix of the thread names, followed by a sequence number.
+	 * @return The factory. Its threads are daemon threads.
+	 */
+	public static ThreadFactory newThreadFactory(final ThreadRole role, final String namePrefix) {
+		if (null == role || ThreadRole.MAIN == role) {
+			throw new IllegalArgumentException("role must be a background role");
+		}
+		final AtomicInteger sequence = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new RoleThread(r, namePrefix + "-" + sequence.incrementAndGet(), role);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Throws if the current thread is not the main thread and assertions are
+	 * enabled.
+	 * 
+	 * @throws InvalidOperationException
+	 *             If the check fails.
+	 */
+	public static void assertMainThread() throws InvalidOperationException {
+		if (ASSERTIONS_ENABLED && !isMainThread()) {
+			throw new InvalidOperationException("Expected the main thread but was "
+					+ Thread.currentThread().getName());
+		}
+	}
+
+	/**
+	 * Throws if the current thread is the main thread and assertions are
+	 * enabled.
+	 * 
+	 * @throws InvalidOperationException
+	 *             If the check fails.
+	 */
+	public static void assertBackgroundThread() throws InvalidOperationException {
+		if (ASSERTIONS_ENABLED && isMainThread()) {
+			throw new InvalidOperationException("Expected a background thread but was the main thread");
+		}
+	}
+
+	/**
+	 * Throws if the current thread does not have a specified role and
+	 * assertions are enabled.
+	 * 
+	 * @throws InvalidOperationException
+	 *             If the check fails.
+	 */
+	public static void assertThreadRole(ThreadRole role) throws InvalidOperationException {
+		if (ASSERTIONS_ENABLED && !isCurrentThread(role)) {
+			throw new InvalidOperationException("Expected a thread with role " + role + " but was "
+					+ Thread.currentThread().getName() + " with role " + getThreadRole());
+		}
+	}
+
+	/**
+	 * Looks the main thread up through the provider and caches it once it is
+	 * known. The cache is only updated if the provider has not been replaced in
+	 * the meantime.
+	 */
+	private static Thread resolveMainThread(MainThreadBinding binding) {
+		MainThreadProvider provider = null == binding ? createDefaultProvider() : binding.mProvider;
+		Thread mainThread = provider.getMainThread();
+		if (null != mainThread || null == binding) {
+			MAIN_THREAD.compareAndSet(binding, new MainThreadBinding(provider, mainThread));
+		}
+		return mainThread;
+	}
+
+	private static MainThreadProvider createDefaultProvider() {
+		try {
+			Class.forName("android.os.Looper");
+			return new LooperMainThreadProvider();
+		} catch (ClassNotFoundException | LinkageError e) {
+			return new JvmMainThreadProvider();
+		}
+	}
+
+	private static final class MainThreadBinding {
+		final MainThreadProvider mProvider;
+		final Thread mThread;
+
+		MainThreadBinding(MainThreadProvider provider, Thread thread) {
+			mProvider = provider;
+			mThread = thread;
+		}
+	}
+
+	/**
+	 * Takes the thread named "main" as the main thread. Live threads are
+	 * searched only once, since the JVM starts its main thread first, so a
+	 * missing main thread is remembered as well.
+	 */
+	private static final class JvmMainThreadProvider implements MainThreadProvider {
+		private volatile Thread mMainThread;
+		private volatile boolean mSearched;
+
+		@Override
+		public Thread getMainThread() {
+			if (!mSearched) {
+				for (Thread thread : Thread.getAllStackTraces().keySet()) {
+					if ("main".equals(thread.getName())) {
+						mMainThread = thread;
+					}
+				}
+				mSearched = true;
+			}
+			return mMainThread;
+		}
+	}
+
+	private static final class RoleThread extends Thread {
+		final ThreadRole mRole;
+
+		RoleThread(Runnable target, String name, ThreadRole role) {
+			super(target, name);
+			mRole = role;
+		}
 	}
 }
@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timer wheel that runs delayed tasks on a single daemon thread. All
+ * timeouts share one thread and one array of buckets, so scheduling and
+ * cancelling are O(1) regardless of how many timeouts are pending. Timeouts
+ * fire with a precision of one tick.
+ *
+ * @author robo-admin
+ *
+ */
+public final class TimerWheel {
+
+	private static final int STATE_INIT = 0;
+	private static final int STATE_STARTED = 1;
+	private static final int STATE_STOPPED = 2;
+
+	private static final Object SHARED_LOCK = new Object();
+	private static volatile TimerWheel sShared;
+
+	private final long mTickNanos;
+	private final Bucket[] mWheel;
+	private final int mMask;
+	private final Queue<Timeout> mPendingTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger mState = new AtomicInteger(STATE_INIT);
+	private final Thread mWorker;
+	private final long mStartTime;
+
+	/**
+	 * Creates a timer wheel.
+	 *
+	 * @param tickDuration
+	 *            Duration between two ticks.
+	 * @param unit
+	 *            Time unit of the tick duration.
+	 * @param ticksPerWheel
+	 *            Number of buckets in the wheel. Rounded up to a power of two.
+	 */
+	public TimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be greater than 0");
+		}
+		if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+			throw new IllegalArgumentException("ticksPerWheel must be in range (0, 2^30]");
+		}
+		int size = Integer.highestOneBit(ticksPerWheel);
+		if (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		mWheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			mWheel[i] = new Bucket();
+		}
+		mMask = size - 1;
+		mTickNanos = unit.toNanos(tickDuration);
+		mStartTime = System.nanoTime();
+		mWorker = new Thread(new Worker(), "robo-timer-wheel");
+		mWorker.setDaemon(true);
+	}
+
+	/**
+	 * Gets the timer wheel which is shared by the whole application. The
+	 * shared wheel ticks every 10 milliseconds.
+	 *
+	 * @return The shared timer wheel.
+	 */
+	public static TimerWheel getShared() {
+		TimerWheel shared = sShared;
+		if (null == shared) {
+			synchronized (SHARED_LOCK) {
+				shared = sShared;
+				if (null == shared) {
+					shared = new TimerWheel(10, TimeUnit.MILLISECONDS, 512);
+					sShared = shared;
+				}
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * Schedules a task to be run once after a specified delay. The task is run
+	 * on the wheel's worker thread, so it should hand long-running work over
+	 * to another thread.
+	 *
+	 * @param task
+	 *            The task to run.
+	 * @param delay
+	 *            Delay before the task is run.
+	 * @param unit
+	 *            Time unit of the delay.
+	 * @return A handle that can be used to cancel the task.
+	 * @throws IllegalStateException
+	 *             If this wheel has been stopped.
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		if (null == task) {
+			throw new NullPointerException("task");
+		}
+		start();
+		long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay)) - mStartTime;
+		Timeout timeout = new Timeout(task, deadline);
+		mPendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stops this wheel. Pending timeouts are discarded without being run.
+	 */
+	public void stop() {
+		if (mState.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+			mWorker.interrupt();
+		}
+	}
+
+	private void start() {
+		switch (mState.get()) {
+		case STATE_INIT:
+			if (mState.compareAndSet(STATE_INIT, STATE_STARTED)) {
+				mWorker.start();
+			}
+			break;
+		case STATE_STARTED:
+			break;
+		default:
+			throw new IllegalStateException("The timer wheel has been stopped");
+		}
+	}
+
+	/**
+	 * Handle of a task scheduled on a {@link TimerWheel}.
+	 */
+	public static final class Timeout {
+
+		private static final int ST_WAITING = 0;
+		private static final int ST_CANCELLED = 1;
+		private static final int ST_EXPIRED = 2;
+
+		private final Runnable mTask;
+		private final long mDeadline;
+		private final AtomicInteger mState = new AtomicInteger(ST_WAITING);
+		private long mRemainingRounds;
+		private Timeout mNext;
+
+		private Timeout(Runnable task, long deadline) {
+			mTask = task;
+			mDeadline = deadline;
+		}
+
+		/**
+		 * Cancels the task if it has not been run yet.
+		 *
+		 * @return true if the task was cancelled by this call. Otherwise false.
+		 */
+		public boolean cancel() {
+			return mState.compareAndSet(ST_WAITING, ST_CANCELLED);
+		}
+
+		public boolean isCancelled() {
+			return mState.get() == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return mState.get() == ST_EXPIRED;
+		}
+
+		private void expire() {
+			if (mState.compareAndSet(ST_WAITING, ST_EXPIRED)) {
+				try {
+					mTask.run();
+				} catch (Throwable e) {
+					// the worker is shared, so even an error must not end it
+					Thread worker = Thread.currentThread();
+					worker.getUncaughtExceptionHandler().uncaughtException(worker, e);
+				}
+			}
+		}
+	}
+
+	private static final class Bucket {
+		private Timeout mHead;
+
+		void add(Timeout timeout) {
+			timeout.mNext = mHead;
+			mHead = timeout;
+		}
+
+		void expire() {
+			Timeout previous = null;
+			Timeout current = mHead;
+			while (null != current) {
+				Timeout next = current.mNext;
+				boolean done = current.isCancelled();
+				if (!done && current.mRemainingRounds <= 0) {
+					current.expire();
+					done = true;
+				} else if (!done) {
+					current.mRemainingRounds--;
+				}
+				if (done) {
+					if (null == previous) {
+						mHead = next;
+					} else {
+						previous.mNext = next;
+					}
+					current.mNext = null;
+				} else {
+					previous = current;
+				}
+				current = next;
+			}
+		}
+	}
+
+	private final class Worker implements Runnable {
+
+		private long mTick;
+
+		@Override
+		public void run() {
+			mTick = (System.nanoTime() - mStartTime) / mTickNanos;
+			while (mState.get() == STATE_STARTED) {
+				if (!waitForNextTick()) {
+					break;
+				}
+				transferPendingTimeouts();
+				mWheel[(int) (mTick & mMask)].expire();
+				mTick++;
+			}
+			mPendingTimeouts.clear();
+		}
+
+		private boolean waitForNextTick() {
+			long deadline = mTickNanos * (mTick + 1);
+			while (true) {
+				long sleepNanos = deadline - (System.nanoTime() - mStartTime);
+				if (sleepNanos <= 0) {
+					return true;
+				}
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException e) {
+					if (mState.get() != STATE_STARTED) {
+						return false;
+					}
+				}
+			}
+		}
+
+		private void transferPendingTimeouts() {
+			Timeout timeout;
+			while (null != (timeout = mPendingTimeouts.poll())) {
+				if (timeout.isCancelled()) {
+					continue;
+				}
+				long expiryTick = timeout.mDeadline / mTickNanos;
+				timeout.mRemainingRounds = (expiryTick - mTick) / mWheel.length;
+				long tick = Math.max(expiryTick, mTick);
+				mWheel[(int) (tick & mMask)].add(timeout);
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class BoundedKeyedCollectionTest {
+
+	@Test
+	public void evictsLeastRecentlyUsedItem() {
+		final List<String> evicted = new ArrayList<>();
+		Letters letters = new Letters(3);
+		letters.setEvictionListener(new EvictionListener<String, String>() {
+			@Override
+			public void onEvicted(String key, String item) {
+				evicted.add(item);
+			}
+		});
+		letters.add("a1");
+		letters.add("b1");
+		letters.add("c1");
+		letters.get("a");
+		letters.add("d1");
+		assertEquals(Arrays.asList("b1"), evicted);
+		assertEquals(3, letters.size());
+		assertTrue(letters.containsKey("a"));
+		letters.addAll(Arrays.asList("e1", "f1"));
+		assertEquals(Arrays.asList("b1", "c1", "a1"), evicted);
+		assertEquals(Arrays.asList("d1", "e1", "f1"), new ArrayList<>(letters));
+	}
+
+	@Test
+	public void countsHitsMissesAndEvictions() {
+		Letters letters = new Letters(2);
+		letters.add("a1");
+		letters.get("a");
+		letters.get("z");
+		letters.add("b1");
+		letters.add("c1");
+		CacheStats stats = letters.getStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(2, stats.getRequestCount());
+		assertEquals(0.5, stats.getHitRate(), 0.0);
+		assertEquals(1, stats.getEvictionCount());
+		assertEquals(1, stats.getEvictionWeight());
+	}
+
+	@Test
+	public void boundsTotalWeight() {
+		Letters letters = new Letters(10, new Weigher<String>() {
+			@Override
+			public int weigh(String item) {
+				return item.length();
+			}
+		}, new LruEvictionPolicy<String>());
+		letters.add("a123");
+		letters.add("b123");
+		letters.add("c123");
+		assertEquals(8, letters.getWeight());
+		assertEquals(Arrays.asList("b123", "c123"), new ArrayList<>(letters));
+		// an item heavier than the bound is not kept
+		letters.add("d12345678901");
+		assertFalse(letters.containsKey("d"));
+		assertTrue(letters.getWeight() <= 10);
+		letters.removeByKey("c");
+		letters.clear();
+		assertEquals(0, letters.getWeight());
+	}
+
+	@Test
+	public void leastFrequentlyUsedPolicyKeepsPopularItems() {
+		Letters letters = new Letters(2, null, new LfuEvictionPolicy<String>());
+		letters.add("a1");
+		letters.get("a");
+		letters.get("a");
+		letters.add("b1");
+		letters.get("b");
+		letters.add("c1");
+		assertEquals(Arrays.asList("a1", "b1"), new ArrayList<>(letters));
+	}
+
+	@Test
+	public void tinyLfuPolicyResistsScans() {
+		Numbers lru = new Numbers(100, new LruEvictionPolicy<Integer>());
+		Numbers tinyLfu = new Numbers(100, new TinyLfuEvictionPolicy<Integer>(100));
+		for (Numbers numbers : Arrays.asList(lru, tinyLfu)) {
+			for (int round = 0; round < 10; round++) {
+				for (int i = 0; i < 50; i++) {
+					if (null == numbers.get(i)) {
+						numbers.add(i);
+					}
+				}
+			}
+			for (int i = 1000; i < 2000; i++) {
+				numbers.add(i);
+			}
+		}
+		assertEquals(0, countHot(lru));
+		assertTrue(countHot(tinyLfu) >= 40);
+		assertEquals(100, tinyLfu.size());
+	}
+
+	@Test
+	public void removedItemsAreNotEvictedLater() {
+		final List<String> evicted = new ArrayList<>();
+		Letters letters = new Letters(2);
+		letters.setEvictionListener(new EvictionListener<String, String>() {
+			@Override
+			public void onEvicted(String key, String item) {
+				evicted.add(item);
+			}
+		});
+		letters.add("a1");
+		letters.add("b1");
+		letters.removeByKey("a");
+		letters.add("c1");
+		assertTrue(evicted.isEmpty());
+		letters.add("d1");
+		assertEquals(Arrays.asList("b1"), evicted);
+		assertNull(letters.get("b"));
+	}
+
+	@Test
+	public void indexReturnsCopiesOfBuckets() {
+		Numbers numbers = new Numbers(100, new LruEvictionPolicy<Integer>());
+		SecondaryIndex<Integer, Integer> byParity = numbers.addIndex(new Parity(), false);
+		for (int i = 0; i < 10; i++) {
+			numbers.add(i);
+		}
+		Collection<Integer> even = byParity.getAll(0);
+		numbers.add(10);
+		numbers.removeByKey(0);
+		assertEquals(Arrays.asList(0, 2, 4, 6, 8), new ArrayList<>(even));
+		assertEquals(Arrays.asList(2, 4, 6, 8, 10), new ArrayList<>(byParity.getAll(0)));
+		assertEquals(Integer.valueOf(1), byParity.get(1));
+	}
+
+	@Test
+	public void indexReadsAreSafeDuringEvictions() throws InterruptedException {
+		final Numbers numbers = new Numbers(64, new LruEvictionPolicy<Integer>());
+		final SecondaryIndex<Integer, Integer> byParity = numbers.addIndex(new Parity(), false);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 200000; i++) {
+					numbers.add(i);
+				}
+			}
+		});
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 20000; i++) {
+						for (Integer item : byParity.getAll(i & 1)) {
+							assertEquals(i & 1, item & 1);
+						}
+						byParity.get(i & 1);
+						byParity.containsKey(i & 1);
+					}
+				} catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		});
+		writer.start();
+		reader.start();
+		writer.join();
+		reader.join();
+		assertNull(failure.get());
+		assertEquals(32, byParity.getAll(0).size());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void forEachRejectsNullAction() {
+		new Numbers(1, new LruEvictionPolicy<Integer>()).forEach(null);
+	}
+
+	private static int countHot(Numbers numbers) {
+		int count = 0;
+		for (int i = 0; i < 50; i++) {
+			if (numbers.containsKey(i)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	static class Letters extends BoundedKeyedCollection<String, String> {
+		Letters(int maximumSize) {
+			super(maximumSize);
+		}
+
+		Letters(long maximumWeight, Weigher<String> weigher, EvictionPolicy<String> policy) {
+			super(maximumWeight, weigher, policy);
+		}
+
+		@Override
+		protected String getKeyForItem(String item) {
+			return item.substring(0, 1);
+		}
+	}
+
+	static class Numbers extends BoundedKeyedCollection<Integer, Integer> {
+		Numbers(long maximumSize, EvictionPolicy<Integer> policy) {
+			super(maximumSize, null, policy);
+		}
+
+		@Override
+		protected Integer getKeyForItem(Integer item) {
+			return item;
+		}
+	}
+
+	static class Parity implements KeyExtractor<Integer, Integer> {
+		@Override
+		public Integer getKey(Integer item) {
+			return item & 1;
+		}
+	}
+}
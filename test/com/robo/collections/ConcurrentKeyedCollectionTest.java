@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConcurrentKeyedCollectionTest {
+
+	@Test
+	public void replacingAnItemMovesItToTheEnd() {
+		Items items = new Items();
+		items.add(new Item(1, "a"));
+		items.add(new Item(2, "b"));
+		items.add(new Item(1, "c"));
+		assertEquals(Arrays.asList("b", "c"), names(items));
+		assertEquals("c", items.get(1).mName);
+		assertEquals(2, items.size());
+	}
+
+	@Test
+	public void getAtSkipsRemovedItems() {
+		Items items = new Items();
+		for (int i = 0; i < 100; i++) {
+			items.add(new Item(i, "n" + i));
+		}
+		for (int i = 0; i < 100; i += 3) {
+			assertTrue(items.removeByKey(i));
+		}
+		int index = 0;
+		for (int i = 0; i < 100; i++) {
+			if (i % 3 != 0) {
+				assertEquals(i, items.getAt(index++).mId);
+			}
+		}
+		assertNull(items.getAt(index));
+		assertTrue(items.removeAt(0));
+		assertEquals(2, items.getAt(0).mId);
+	}
+
+	@Test
+	public void snapshotIsNotAffectedByLaterChanges() {
+		Items items = new Items();
+		for (int i = 0; i < 10; i++) {
+			items.add(new Item(i, "n" + i));
+		}
+		Collection<Item> snapshot = items.snapshot();
+		Iterator<Item> iterator = items.iterator();
+		items.removeByKey(0);
+		items.add(new Item(10, "n10"));
+		items.clear();
+		assertEquals(10, snapshot.size());
+		int count = 0;
+		while (iterator.hasNext()) {
+			assertEquals(count++, iterator.next().mId);
+		}
+		assertEquals(10, count);
+		assertTrue(items.isEmpty());
+	}
+
+	@Test
+	public void putIfAbsentAndComputeIfAbsentKeepExistingItems() {
+		Items items = new Items();
+		Item first = new Item(1, "a");
+		assertNull(items.putIfAbsent(first));
+		assertSame(first, items.putIfAbsent(new Item(1, "b")));
+		final AtomicInteger created = new AtomicInteger();
+		ConcurrentKeyedCollection.ItemFactory<Integer, Item> factory = new ConcurrentKeyedCollection.ItemFactory<Integer, Item>() {
+			@Override
+			public Item create(Integer key) {
+				created.incrementAndGet();
+				return new Item(key, "created");
+			}
+		};
+		assertSame(first, items.computeIfAbsent(1, factory));
+		assertEquals("created", items.computeIfAbsent(2, factory).mName);
+		assertEquals("created", items.computeIfAbsent(2, factory).mName);
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	public void getAtDoesNotWaitForWriters() throws InterruptedException {
+		final Items items = new Items();
+		for (int i = 0; i < 10; i++) {
+			items.add(new Item(i, "n" + i));
+		}
+		items.removeByKey(3);
+		final AtomicBoolean readerFinished = new AtomicBoolean();
+		// the factory runs while the write lock is held
+		items.computeIfAbsent(100, new ConcurrentKeyedCollection.ItemFactory<Integer, Item>() {
+			@Override
+			public Item create(Integer key) {
+				Thread reader = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						readerFinished.set(items.getAt(3).mId == 4);
+					}
+				});
+				reader.start();
+				try {
+					reader.join(5000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new Item(key, "n" + key);
+			}
+		});
+		assertTrue(readerFinished.get());
+	}
+
+	@Test
+	public void readersSeeConsistentSnapshotsWhileWritersRun() throws InterruptedException {
+		final Items items = new Items();
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] writers = new Thread[2];
+		for (int w = 0; w < writers.length; w++) {
+			final int seed = w;
+			writers[w] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					for (int i = 0; i < 200000; i++) {
+						int key = random.nextInt(2000);
+						if (random.nextBoolean()) {
+							items.add(new Item(key, "n" + key));
+						} else {
+							items.removeByKey(key);
+						}
+					}
+				}
+			});
+		}
+		Thread[] readers = new Thread[3];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (!stop.get()) {
+						Collection<Item> snapshot = items.snapshot();
+						Set<Integer> seen = new HashSet<>();
+						int count = 0;
+						for (Item item : snapshot) {
+							count++;
+							if (!seen.add(item.mId)) {
+								failures.incrementAndGet();
+							}
+						}
+						if (count != snapshot.size()) {
+							failures.incrementAndGet();
+						}
+						int size = items.size();
+						for (int i = 0; i < size; i += 7) {
+							items.getAt(i);
+						}
+					}
+				}
+			});
+			readers[t].start();
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		stop.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertEquals(0, failures.get());
+		int index = 0;
+		for (Item item : items) {
+			assertSame(item, items.get(item.mId));
+			assertSame(item, items.getAt(index++));
+		}
+		assertEquals(items.size(), index);
+	}
+
+	@Test
+	public void iteratorRemovesFromCollection() {
+		Items items = new Items();
+		for (int i = 0; i < 5; i++) {
+			items.add(new Item(i, "n" + i));
+		}
+		Iterator<Item> iterator = items.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().mId % 2 == 0) {
+				iterator.remove();
+			}
+		}
+		assertEquals(Arrays.asList("n1", "n3"), names(items));
+		assertFalse(items.containsKey(0));
+	}
+
+	private static List<String> names(Collection<Item> items) {
+		List<String> names = new ArrayList<>();
+		for (Item item : items) {
+			names.add(item.mName);
+		}
+		return names;
+	}
+
+	static final class Item {
+		final int mId;
+		final String mName;
+
+		Item(int id, String name) {
+			mId = id;
+			mName = name;
+		}
+	}
+
+	static class Items extends ConcurrentKeyedCollection<Integer, Item> {
+		@Override
+		protected Integer getKeyForItem(Item item) {
+			return item.mId;
+		}
+	}
+}
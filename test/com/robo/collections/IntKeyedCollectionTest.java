@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntKeyedCollectionTest {
+
+	@Test
+	public void storesItemsByIntKey() {
+		Items items = new Items();
+		items.add("1");
+		items.add("-7");
+		items.add("1");
+		assertEquals(2, items.size());
+		assertEquals("-7", items.get(-7));
+		assertNull(items.get(3));
+		assertTrue(items.containsKey(1));
+		assertTrue(items.contains("-7"));
+		assertFalse(items.add(null));
+		assertEquals(Arrays.asList("1", "-7"), new ArrayList<>(items));
+	}
+
+	@Test
+	public void positionalReadsDuringIterationDoNotModifyCollection() {
+		Items items = new Items();
+		for (int i = 0; i < 40; i++) {
+			items.add(String.valueOf(i));
+		}
+		items.removeByKey(0);
+		for (String item : items) {
+			assertEquals("1", items.getAt(0));
+			assertTrue(null != item);
+		}
+	}
+
+	@Test
+	public void matchesLinkedHashMapUnderRandomOperations() {
+		Random random = new Random(3);
+		for (int trial = 0; trial < 300; trial++) {
+			Items items = new Items(random.nextInt(20));
+			LinkedHashMap<Integer, String> expected = new LinkedHashMap<>();
+			int range = 1 + random.nextInt(50);
+			for (int step = 0; step < 200; step++) {
+				int key = random.nextInt(range) - range / 2;
+				switch (random.nextInt(6)) {
+				case 0:
+				case 1:
+				case 2:
+					items.add(String.valueOf(key));
+					expected.put(key, String.valueOf(key));
+					break;
+				case 3:
+					assertEquals(null != expected.remove(key), items.removeByKey(key));
+					break;
+				case 4:
+					if (!expected.isEmpty()) {
+						int index = random.nextInt(expected.size());
+						Integer removed = new ArrayList<>(expected.keySet()).get(index);
+						assertTrue(items.removeAt(index));
+						expected.remove(removed);
+					}
+					break;
+				default:
+					Iterator<String> iterator = items.iterator();
+					while (iterator.hasNext()) {
+						String item = iterator.next();
+						if (random.nextInt(5) == 0) {
+							iterator.remove();
+							expected.remove(Integer.valueOf(item));
+						}
+					}
+					break;
+				}
+				assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(items));
+				assertEquals(new ArrayList<>(expected.values()), Arrays.asList(items.toArray()));
+				int index = 0;
+				for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+					assertEquals(entry.getValue(), items.get(entry.getKey()));
+					assertEquals(entry.getValue(), items.getAt(index++));
+				}
+			}
+		}
+	}
+
+	static class Items extends IntKeyedCollection<String> {
+		Items() {
+		}
+
+		Items(int initialCapacity) {
+			super(initialCapacity);
+		}
+
+		@Override
+		protected int getKeyForItem(String item) {
+			return Integer.parseInt(item);
+		}
+	}
+}
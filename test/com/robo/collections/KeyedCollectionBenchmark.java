@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures KeyedCollection against LinkedHashMap across collection sizes. Run
+ * with {@code java com.robo.collections.KeyedCollectionBenchmark}; each line
+ * reports nanoseconds per operation after a warm-up round.
+ */
+public class KeyedCollectionBenchmark {
+
+	private static final int[] SIZES = { 8, 64, 1024, 16384, 262144 };
+	private static final int OPERATIONS = 2000000;
+
+	private static long sSink;
+
+	public static void main(String[] args) {
+		for (int round = 0; round < 2; round++) {
+			boolean report = round == 1;
+			for (int size : SIZES) {
+				run(size, report);
+			}
+		}
+		System.out.println(sSink == 42 ? "" : "done");
+	}
+
+	private static void run(int size, boolean report) {
+		Long[] keys = new Long[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = Long.valueOf(i * 31L);
+		}
+		int repeats = Math.max(1, OPERATIONS / size);
+
+		long start = System.nanoTime();
+		Entries entries = null;
+		for (int r = 0; r < repeats; r++) {
+			entries = new Entries();
+			for (Long key : keys) {
+				entries.add(key);
+			}
+		}
+		long addTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		Map<Long, Long> map = null;
+		for (int r = 0; r < repeats; r++) {
+			map = new LinkedHashMap<>();
+			for (Long key : keys) {
+				map.put(key, key);
+			}
+		}
+		long mapAddTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int r = 0; r < repeats; r++) {
+			for (Long key : keys) {
+				sSink += entries.get(key);
+			}
+		}
+		long getTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int r = 0; r < repeats; r++) {
+			for (Long key : keys) {
+				sSink += map.get(key);
+			}
+		}
+		long mapGetTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int r = 0; r < repeats; r++) {
+			for (Long value : entries) {
+				sSink += value;
+			}
+		}
+		long iterateTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int r = 0; r < repeats; r++) {
+			for (Long value : map.values()) {
+				sSink += value;
+			}
+		}
+		long mapIterateTime = System.nanoTime() - start;
+
+		// every fourth item removed, so positional reads go through the
+		// occupied slot counts
+		for (int i = 0; i < size; i += 4) {
+			entries.removeByKey(keys[i]);
+		}
+		int remaining = entries.size();
+		start = System.nanoTime();
+		for (int r = 0; r < repeats; r++) {
+			for (int i = 0; i < remaining; i++) {
+				sSink += entries.getAt(i);
+			}
+		}
+		long getAtTime = System.nanoTime() - start;
+
+		if (report) {
+			long operations = (long) repeats * size;
+			System.out.printf("size %7d  add %6.1f (map %6.1f)  get %6.1f (map %6.1f)  iterate %6.1f (map %6.1f)"
+					+ "  getAt after removals %6.1f ns/op%n", size, (double) addTime / operations,
+					(double) mapAddTime / operations, (double) getTime / operations, (double) mapGetTime
+							/ operations, (double) iterateTime / operations, (double) mapIterateTime / operations,
+					(double) getAtTime / ((long) repeats * remaining));
+		}
+	}
+
+	private static class Entries extends KeyedCollection<Long, Long> {
+		@Override
+		protected Long getKeyForItem(Long item) {
+			return item;
+		}
+	}
+}
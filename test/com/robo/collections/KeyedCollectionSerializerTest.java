@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.robo.ApplicationException;
+import com.robo.collections.OffHeapKeyedCollectionTest.StringCodec;
+
+public class KeyedCollectionSerializerTest {
+
+	@Test
+	public void snapshotRoundTrip() {
+		KeyedCollectionTest.Items items = new KeyedCollectionTest.Items();
+		items.add("a=1");
+		items.add("b=2");
+		items.add("c=");
+		KeyedCollectionSerializer<String> serializer = new KeyedCollectionSerializer<>(new StringCodec());
+		byte[] snapshot = writeSnapshot(serializer, items);
+
+		List<String> target = new ArrayList<>();
+		assertEquals(3, serializer.readSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)), target));
+		assertEquals(Arrays.asList("a=1", "b=2", "c="), target);
+	}
+
+	@Test
+	public void snapshotAndDeltasReproduceCollectionForAnyBufferSize() {
+		for (int bufferSize : new int[] { 8, 100, 65536 }) {
+			verifyDeltas(bufferSize, new Random(bufferSize));
+		}
+	}
+
+	@Test
+	public void readingDeltaAsSnapshotFails() {
+		ObservableItems items = new ObservableItems();
+		ChangeRecorder<String> recorder = new ChangeRecorder<>();
+		items.addChangeListener(recorder);
+		items.add("a=1");
+		KeyedCollectionSerializer<String> serializer = new KeyedCollectionSerializer<>(new StringCodec());
+		byte[] delta = writeDelta(serializer, recorder.checkpoint());
+		try {
+			serializer.readSnapshot(Channels.newChannel(new ByteArrayInputStream(delta)),
+					new ArrayList<String>());
+			fail();
+		} catch (ApplicationException expected) {
+		}
+	}
+
+	@Test
+	public void truncatedSnapshotFails() {
+		KeyedCollectionTest.Items items = new KeyedCollectionTest.Items();
+		for (int i = 0; i < 20; i++) {
+			items.add("k" + i + "=" + i);
+		}
+		KeyedCollectionSerializer<String> serializer = new KeyedCollectionSerializer<>(new StringCodec(), 8);
+		byte[] snapshot = writeSnapshot(serializer, items);
+		byte[] truncated = Arrays.copyOf(snapshot, snapshot.length / 2);
+		try {
+			serializer.readSnapshot(Channels.newChannel(new ByteArrayInputStream(truncated)),
+					new ArrayList<String>());
+			fail();
+		} catch (ApplicationException expected) {
+		}
+	}
+
+	@Test
+	public void corruptRecordSizeFails() {
+		KeyedCollectionTest.Items items = new KeyedCollectionTest.Items();
+		items.add("a=1");
+		KeyedCollectionSerializer<String> serializer = new KeyedCollectionSerializer<>(new StringCodec(), 8);
+		byte[] snapshot = writeSnapshot(serializer, items);
+		for (int size : new int[] { 0x50000000, 0x7fffffff, (1 << 30) + 1 }) {
+			// the size follows the stream header and the record's op
+			ByteBuffer.wrap(snapshot).putInt(7, size);
+			try {
+				serializer.readSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)),
+						new ArrayList<String>());
+				fail();
+			} catch (ApplicationException expected) {
+				assertEquals("Corrupt record size: " + size, expected.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void limitsRecordSize() {
+		KeyedCollectionTest.Items items = new KeyedCollectionTest.Items();
+		items.add("a=12345678");
+		KeyedCollectionSerializer<String> serializer = new KeyedCollectionSerializer<>(new StringCodec(), 8, 4);
+		try {
+			writeSnapshot(serializer, items);
+			fail();
+		} catch (ApplicationException expected) {
+		}
+		byte[] snapshot = writeSnapshot(new KeyedCollectionSerializer<>(new StringCodec()), items);
+		try {
+			serializer.readSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)),
+					new ArrayList<String>());
+			fail();
+		} catch (ApplicationException expected) {
+		}
+	}
+
+	@Test
+	public void checkpointReturnsChangesOnlyOnce() {
+		ObservableItems items = new ObservableItems();
+		ChangeRecorder<String> recorder = new ChangeRecorder<>();
+		items.addChangeListener(recorder);
+		items.add("a=1");
+		items.add("b=1");
+		assertEquals(true, recorder.hasChanges());
+		assertEquals(2, recorder.checkpoint().size());
+		assertEquals(false, recorder.hasChanges());
+		assertEquals(0, recorder.checkpoint().size());
+	}
+
+	private static void verifyDeltas(int bufferSize, Random random) {
+		ObservableItems items = new ObservableItems();
+		ChangeRecorder<String> recorder = new ChangeRecorder<>();
+		items.addChangeListener(recorder);
+		for (int i = 0; i < 300; i++) {
+			items.add("k" + random.nextInt(600) + "=" + random.nextInt(100000));
+		}
+		KeyedCollectionSerializer<String> serializer = new KeyedCollectionSerializer<>(new StringCodec(),
+				bufferSize);
+		recorder.checkpoint();
+		byte[] snapshot = writeSnapshot(serializer, items);
+		List<byte[]> deltas = new ArrayList<>();
+		for (int d = 0; d < 8; d++) {
+			for (int step = 0; step < 150; step++) {
+				mutate(items, random);
+			}
+			deltas.add(writeDelta(serializer, recorder.checkpoint()));
+		}
+
+		KeyedCollectionSerializer<String> reader = new KeyedCollectionSerializer<>(new StringCodec(), bufferSize);
+		KeyedCollectionTest.Items replica = new KeyedCollectionTest.Items();
+		reader.readSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)), replica);
+		for (byte[] delta : deltas) {
+			reader.readDelta(Channels.newChannel(new ByteArrayInputStream(delta)), replica);
+		}
+		assertEquals(new ArrayList<>(items), new ArrayList<>(replica));
+	}
+
+	private static void mutate(ObservableItems items, Random random) {
+		switch (random.nextInt(5)) {
+		case 0:
+		case 1:
+			char[] padding = new char[random.nextInt(300)];
+			Arrays.fill(padding, 'x');
+			items.add("k" + random.nextInt(600) + "=" + new String(padding));
+			break;
+		case 2:
+			items.removeByKey("k" + random.nextInt(600));
+			break;
+		case 3:
+			if (items.size() > 1) {
+				items.move(random.nextInt(items.size()), random.nextInt(items.size()));
+			}
+			break;
+		default:
+			items.beginBatch();
+			for (int i = 0; i < 5; i++) {
+				items.add("k" + random.nextInt(600) + "=batch");
+			}
+			items.removeAt(0);
+			items.endBatch();
+			break;
+		}
+	}
+
+	private static byte[] writeSnapshot(KeyedCollectionSerializer<String> serializer, List<String> items) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		serializer.writeSnapshot(items, Channels.newChannel(output));
+		return output.toByteArray();
+	}
+
+	private static byte[] writeSnapshot(KeyedCollectionSerializer<String> serializer,
+			KeyedCollection<String, String> items) {
+		return writeSnapshot(serializer, new ArrayList<>(items));
+	}
+
+	private static byte[] writeDelta(KeyedCollectionSerializer<String> serializer,
+			List<CollectionChange<String>> changes) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		serializer.writeDelta(changes, Channels.newChannel(output));
+		return output.toByteArray();
+	}
+
+	static class ObservableItems extends ObservableKeyedCollection<String, String> {
+		@Override
+		protected String getKeyForItem(String item) {
+			return KeyedCollectionTest.Items.keyOf(item);
+		}
+	}
+}
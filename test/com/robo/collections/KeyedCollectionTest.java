@@ -0,0 +1,377 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+public class KeyedCollectionTest {
+
+	@Test
+	public void keepsInsertionOrderAndReplacesInPlace() {
+		Items items = new Items();
+		items.add("a=1");
+		items.add("b=1");
+		items.add("c=1");
+		items.add("b=2");
+		assertEquals(Arrays.asList("a=1", "b=2", "c=1"), new ArrayList<>(items));
+		assertEquals("b=2", items.get("b"));
+		assertEquals(1, items.indexOfKey("b"));
+		assertEquals(-1, items.indexOfKey("z"));
+		assertTrue(items.contains("c=9"));
+		assertFalse(items.add("no key"));
+	}
+
+	@Test
+	public void getAtSkipsRemovedItems() {
+		Items items = filled(100);
+		for (int i = 0; i < 100; i += 3) {
+			items.removeByKey("k" + i);
+		}
+		int index = 0;
+		for (int i = 0; i < 100; i++) {
+			if (i % 3 != 0) {
+				assertEquals("k" + i + "=" + i, items.getAt(index));
+				assertEquals(index, items.indexOfKey("k" + i));
+				index++;
+			}
+		}
+		assertEquals(index, items.size());
+		assertNull(items.getAt(index));
+		assertNull(items.getAt(-1));
+	}
+
+	@Test
+	public void positionalReadsDuringIterationDoNotModifyCollection() {
+		Items items = filled(50);
+		items.removeByKey("k10");
+		int count = 0;
+		for (String item : items) {
+			assertEquals("k0=0", items.getAt(0));
+			assertEquals(10, items.indexOfKey("k11"));
+			assertTrue(null != item);
+			count++;
+		}
+		assertEquals(49, count);
+	}
+
+	@Test
+	public void positionalReadsAreSafeFromSeveralThreads() throws InterruptedException {
+		final Items items = filled(10000);
+		for (int i = 0; i < 10000; i += 2) {
+			items.removeByKey("k" + i);
+		}
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < items.size(); i++) {
+						int key = 2 * i + 1;
+						if (!("k" + key + "=" + key).equals(items.getAt(i)) || items.indexOfKey("k" + key) != i) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void removeAtRemovesItemAtPosition() {
+		Items items = filled(20);
+		items.removeByKey("k0");
+		items.removeByKey("k5");
+		assertTrue(items.removeAt(4));
+		assertFalse(items.containsKey("k6"));
+		assertFalse(items.removeAt(items.size()));
+		assertEquals(17, items.size());
+	}
+
+	@Test
+	public void movesItems() {
+		Items items = filled(5);
+		items.removeByKey("k1");
+		assertTrue(items.move(0, 3));
+		assertEquals(Arrays.asList("k2=2", "k3=3", "k4=4", "k0=0"), new ArrayList<>(items));
+		assertTrue(items.move(3, 1));
+		assertEquals(Arrays.asList("k2=2", "k0=0", "k3=3", "k4=4"), new ArrayList<>(items));
+		assertFalse(items.move(0, 4));
+	}
+
+	@Test
+	public void spliteratorDoesNotModifyCollection() {
+		Items items = filled(100);
+		items.removeByKey("k3");
+		Iterator<String> iterator = items.iterator();
+		assertEquals(99, StreamSupport.stream(items.spliterator(), false).count());
+		assertEquals("k0=0", iterator.next());
+	}
+
+	@Test
+	public void spliteratorSplitsIntoExactSizesAfterRemovals() {
+		Items items = filled(1000);
+		Random random = new Random(7);
+		for (int i = 0; i < 600; i++) {
+			items.removeByKey("k" + random.nextInt(1000));
+		}
+		List<String> collected = new ArrayList<>();
+		collect(items.spliterator(), collected);
+		assertEquals(new ArrayList<>(items), collected);
+		long parallelCount = StreamSupport.stream(items.spliterator(), true).count();
+		assertEquals(items.size(), parallelCount);
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void spliteratorFailsFastAfterClear() {
+		Items items = filled(20);
+		Spliterator<String> spliterator = items.spliterator();
+		assertTrue(spliterator.tryAdvance(new Consumer<String>() {
+			@Override
+			public void accept(String item) {
+			}
+		}));
+		items.clear();
+		spliterator.tryAdvance(new Consumer<String>() {
+			@Override
+			public void accept(String item) {
+			}
+		});
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void spliteratorFailsFastOnSplitAfterRemoval() {
+		Items items = filled(20);
+		Spliterator<String> spliterator = items.spliterator();
+		items.removeByKey("k3");
+		spliterator.trySplit();
+	}
+
+	private static void collect(Spliterator<String> spliterator, final List<String> target) {
+		long size = spliterator.estimateSize();
+		Spliterator<String> prefix = spliterator.trySplit();
+		if (null != prefix) {
+			assertEquals(size, prefix.estimateSize() + spliterator.estimateSize());
+			assertTrue(Math.abs(prefix.estimateSize() - spliterator.estimateSize()) <= 1);
+			collect(prefix, target);
+			collect(spliterator, target);
+			return;
+		}
+		final int[] count = new int[1];
+		spliterator.forEachRemaining(new Consumer<String>() {
+			@Override
+			public void accept(String item) {
+				target.add(item);
+				count[0]++;
+			}
+		});
+		assertEquals(size, count[0]);
+	}
+
+	@Test
+	public void smallCollectionsFindItemsWithoutHashTable() {
+		Items items = new Items();
+		items.add("Aa=1");
+		items.add("BB=2");
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		assertEquals("Aa=1", items.get("Aa"));
+		assertEquals("BB=2", items.get("BB"));
+		assertNull(items.get("C#"));
+		assertTrue(items.removeByKey("Aa"));
+		assertNull(items.get("Aa"));
+		assertEquals("BB=2", items.get("BB"));
+		assertEquals(0, items.indexOfKey("BB"));
+	}
+
+	@Test
+	public void growsPastSmallLayoutAndShrinksBack() {
+		for (int initialCapacity : new int[] { 0, 1, 8, 9, 64 }) {
+			Items items = new Items(initialCapacity);
+			LinkedHashMap<String, String> expected = new LinkedHashMap<>();
+			for (int i = 0; i < 40; i++) {
+				items.add("k" + i + "=" + i);
+				expected.put("k" + i, "k" + i + "=" + i);
+				assertSameItems(expected, items);
+			}
+			for (int i = 0; i < 38; i++) {
+				assertTrue(items.removeByKey("k" + i));
+				expected.remove("k" + i);
+				assertSameItems(expected, items);
+			}
+			for (int i = 0; i < 7; i++) {
+				items.add("n" + i + "=" + i);
+				expected.put("n" + i, "n" + i + "=" + i);
+			}
+			assertSameItems(expected, items);
+		}
+	}
+
+	@Test
+	public void clearedCollectionCanBeReused() {
+		Items items = filled(8);
+		items.clear();
+		assertTrue(items.isEmpty());
+		assertNull(items.get("k1"));
+		items.add("k1=again");
+		assertEquals("k1=again", items.get("k1"));
+		assertEquals(1, items.size());
+	}
+
+	@Test
+	public void matchesLinkedHashMapUnderRandomOperations() {
+		Random random = new Random(11);
+		for (int trial = 0; trial < 500; trial++) {
+			Items items = random.nextBoolean() ? new Items() : new Items(random.nextInt(20));
+			LinkedHashMap<String, String> expected = new LinkedHashMap<>();
+			int range = 1 + random.nextInt(40);
+			for (int step = 0; step < 200; step++) {
+				String key = "k" + random.nextInt(range);
+				switch (random.nextInt(9)) {
+				case 0:
+				case 1:
+				case 2:
+					items.add(key + "=" + step);
+					expected.put(key, key + "=" + step);
+					break;
+				case 3:
+					assertEquals(null != expected.remove(key), items.removeByKey(key));
+					break;
+				case 4:
+					if (!expected.isEmpty()) {
+						int index = random.nextInt(expected.size());
+						String removed = new ArrayList<>(expected.keySet()).get(index);
+						assertEquals(expected.get(removed), items.getAt(index));
+						assertTrue(items.removeAt(index));
+						expected.remove(removed);
+					}
+					break;
+				case 5:
+					if (random.nextInt(10) == 0) {
+						items.clear();
+						expected.clear();
+					}
+					break;
+				case 6:
+					Iterator<String> iterator = items.iterator();
+					while (iterator.hasNext()) {
+						String item = iterator.next();
+						if (random.nextInt(4) == 0) {
+							iterator.remove();
+							expected.remove(Items.keyOf(item));
+						}
+					}
+					break;
+				case 7:
+					final int modulus = random.nextInt(4) + 2;
+					items.removeIf(new java.util.function.Predicate<String>() {
+						@Override
+						public boolean test(String item) {
+							return item.hashCode() % modulus == 0;
+						}
+					});
+					for (Iterator<String> i = expected.values().iterator(); i.hasNext();) {
+						if (i.next().hashCode() % modulus == 0) {
+							i.remove();
+						}
+					}
+					break;
+				default:
+					if (expected.size() > 1) {
+						int from = random.nextInt(expected.size());
+						int to = random.nextInt(expected.size());
+						assertTrue(items.move(from, to));
+						List<Map.Entry<String, String>> entries = new ArrayList<>(expected.entrySet());
+						entries.add(to, entries.remove(from));
+						expected.clear();
+						for (Map.Entry<String, String> entry : entries) {
+							expected.put(entry.getKey(), entry.getValue());
+						}
+					}
+					break;
+				}
+				assertSameItems(expected, items);
+			}
+		}
+	}
+
+	static void assertSameItems(LinkedHashMap<String, String> expected, Items items) {
+		assertEquals(expected.size(), items.size());
+		List<String> values = new ArrayList<>(expected.values());
+		assertEquals(values, new ArrayList<>(items));
+		assertEquals(values, Arrays.asList(items.toArray()));
+		int index = 0;
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), items.get(entry.getKey()));
+			assertEquals(entry.getValue(), items.getAt(index));
+			assertEquals(index, items.indexOfKey(entry.getKey()));
+			index++;
+		}
+	}
+
+	static Items filled(int count) {
+		Items items = new Items();
+		for (int i = 0; i < count; i++) {
+			items.add("k" + i + "=" + i);
+		}
+		return items;
+	}
+
+	/**
+	 * Items of the form "key=value".
+	 */
+	static class Items extends KeyedCollection<String, String> {
+		Items() {
+		}
+
+		Items(int initialCapacity) {
+			super(initialCapacity);
+		}
+
+		@Override
+		protected String getKeyForItem(String item) {
+			return keyOf(item);
+		}
+
+		static String keyOf(String item) {
+			int separator = item.indexOf('=');
+			return separator < 0 ? null : item.substring(0, separator);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongKeyedCollectionTest {
+
+	@Test
+	public void storesItemsByLongKey() {
+		Items items = new Items();
+		items.add("1");
+		items.add("-30064771079");
+		items.add("1");
+		assertEquals(2, items.size());
+		assertEquals("-30064771079", items.get(-30064771079L));
+		assertNull(items.get(3));
+		assertTrue(items.containsKey(1));
+		assertTrue(items.contains("-30064771079"));
+		assertFalse(items.add(null));
+		assertEquals(Arrays.asList("1", "-30064771079"), new ArrayList<>(items));
+	}
+
+	@Test
+	public void distinguishesKeysThatDifferOnlyInHighBits() {
+		Items items = new Items();
+		for (long high = 0; high < 1000; high++) {
+			items.add(String.valueOf(high << 32 | 7));
+		}
+		assertEquals(1000, items.size());
+		for (long high = 0; high < 1000; high += 2) {
+			assertTrue(items.removeByKey(high << 32 | 7));
+		}
+		assertNull(items.get(7));
+		assertEquals(String.valueOf(1L << 32 | 7), items.get(1L << 32 | 7));
+		assertEquals(String.valueOf(1L << 32 | 7), items.getAt(0));
+		assertEquals(500, items.size());
+	}
+
+	@Test
+	public void matchesLinkedHashMapUnderRandomOperations() {
+		Random random = new Random(5);
+		for (int trial = 0; trial < 300; trial++) {
+			Items items = new Items(random.nextInt(20));
+			LinkedHashMap<Long, String> expected = new LinkedHashMap<>();
+			int range = 1 + random.nextInt(50);
+			for (int step = 0; step < 200; step++) {
+				long key = (random.nextInt(range) - range / 2) * 0x100000001L;
+				switch (random.nextInt(6)) {
+				case 0:
+				case 1:
+				case 2:
+					items.add(String.valueOf(key));
+					expected.put(key, String.valueOf(key));
+					break;
+				case 3:
+					assertEquals(null != expected.remove(key), items.removeByKey(key));
+					break;
+				case 4:
+					if (!expected.isEmpty()) {
+						int index = random.nextInt(expected.size());
+						Long removed = new ArrayList<>(expected.keySet()).get(index);
+						assertTrue(items.removeAt(index));
+						expected.remove(removed);
+					}
+					break;
+				default:
+					Iterator<String> iterator = items.iterator();
+					while (iterator.hasNext()) {
+						String item = iterator.next();
+						if (random.nextInt(5) == 0) {
+							iterator.remove();
+							expected.remove(Long.valueOf(item));
+						}
+					}
+					break;
+				}
+				assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(items));
+				assertEquals(new ArrayList<>(expected.values()), Arrays.asList(items.toArray()));
+				int index = 0;
+				for (Map.Entry<Long, String> entry : expected.entrySet()) {
+					assertEquals(entry.getValue(), items.get(entry.getKey()));
+					assertEquals(entry.getValue(), items.getAt(index++));
+				}
+			}
+		}
+	}
+
+	static class Items extends LongKeyedCollection<String> {
+		Items() {
+		}
+
+		Items(int initialCapacity) {
+			super(initialCapacity);
+		}
+
+		@Override
+		protected long getKeyForItem(String item) {
+			return Long.parseLong(item);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.robo.InvalidOperationException;
+
+public class ObservableKeyedCollectionTest {
+
+	private Items mItems;
+	private Mirror mMirror;
+
+	@Before
+	public void setUp() {
+		mItems = new Items();
+		mMirror = new Mirror();
+		mItems.addChangeListener(mMirror);
+	}
+
+	@Test
+	public void coalescesChangesOfABatch() {
+		mItems.beginBatch();
+		for (int i = 0; i < 10; i++) {
+			mItems.add(new int[] { i });
+		}
+		mItems.removeByKey(3);
+		mItems.endBatch();
+		assertEquals(1, mMirror.mBatches);
+		assertEquals(1, mMirror.mLastChanges.size());
+		CollectionChange<int[]> change = mMirror.mLastChanges.get(0);
+		assertEquals(CollectionChange.Type.INSERT, change.getType());
+		assertEquals(0, change.getIndex());
+		assertEquals(9, change.getCount());
+
+		mItems.beginBatch();
+		for (int i = 9; i >= 5; i--) {
+			mItems.removeByKey(i);
+		}
+		mItems.endBatch();
+		assertEquals(1, mMirror.mLastChanges.size());
+		change = mMirror.mLastChanges.get(0);
+		assertEquals(CollectionChange.Type.REMOVE, change.getType());
+		assertEquals(4, change.getIndex());
+		assertEquals(5, change.getCount());
+		mMirror.assertMirrors(mItems);
+	}
+
+	@Test
+	public void removeAllReportsEveryRemovedPosition() {
+		for (int i = 0; i < 100; i++) {
+			mItems.add(new int[] { i });
+		}
+		List<int[]> toRemove = new ArrayList<>();
+		for (int i = 0; i < 100; i += 3) {
+			toRemove.add(new int[] { i });
+		}
+		int batches = mMirror.mBatches;
+		assertTrue(mItems.removeAll(toRemove));
+		assertEquals(66, mItems.size());
+		assertEquals(batches + 1, mMirror.mBatches);
+		mMirror.assertMirrors(mItems);
+		// a missing or repeated key makes the result false, but the others
+		// are still removed
+		assertFalse(mItems.removeAll(Arrays.asList(new int[] { 1 }, new int[] { 1 }, new int[] { 3 })));
+		assertFalse(mItems.containsKey(1));
+		mMirror.assertMirrors(mItems);
+		assertFalse(mItems.removeAll(Arrays.asList(new int[] { 1000 })));
+		assertEquals(batches + 2, mMirror.mBatches);
+	}
+
+	@Test(expected = InvalidOperationException.class)
+	public void endBatchWithoutBeginFails() {
+		mItems.endBatch();
+	}
+
+	@Test
+	public void listenersMirrorRandomOperations() {
+		Random random = new Random(3);
+		for (int round = 0; round < 2000; round++) {
+			boolean batch = random.nextBoolean();
+			if (batch) {
+				mItems.beginBatch();
+			}
+			int operations = batch ? random.nextInt(20) : 1;
+			for (int o = 0; o < operations; o++) {
+				int key = random.nextInt(60);
+				switch (random.nextInt(10)) {
+				case 0:
+				case 1:
+					mItems.add(new int[] { key, round });
+					break;
+				case 2:
+					mItems.removeByKey(key);
+					break;
+				case 3:
+					if (mItems.size() > 0) {
+						mItems.removeAt(random.nextInt(mItems.size()));
+					}
+					break;
+				case 4:
+					if (mItems.size() > 1) {
+						mItems.move(random.nextInt(mItems.size()), random.nextInt(mItems.size()));
+					}
+					break;
+				case 5:
+					final int modulus = random.nextInt(7) + 2;
+					mItems.removeIf(new Predicate<int[]>() {
+						@Override
+						public boolean test(int[] item) {
+							return item[0] % modulus == 0;
+						}
+					});
+					break;
+				case 6:
+					if (random.nextInt(20) == 0) {
+						mItems.clear();
+					}
+					break;
+				case 7:
+					List<int[]> added = new ArrayList<>();
+					for (int i = 0; i < 5; i++) {
+						added.add(new int[] { random.nextInt(60), round });
+					}
+					mItems.addAll(added);
+					break;
+				case 8:
+					List<int[]> removed = new ArrayList<>();
+					for (int i = 0; i < 5; i++) {
+						removed.add(new int[] { random.nextInt(60) });
+					}
+					mItems.removeAll(removed);
+					break;
+				default:
+					Iterator<int[]> iterator = mItems.iterator();
+					while (iterator.hasNext()) {
+						if (iterator.next()[0] % 5 == key % 5) {
+							iterator.remove();
+						}
+					}
+					break;
+				}
+			}
+			if (batch) {
+				mItems.endBatch();
+			}
+			mMirror.assertMirrors(mItems);
+		}
+	}
+
+	/**
+	 * A list kept in sync with a collection only through change
+	 * notifications.
+	 */
+	static class Mirror implements CollectionChangeListener<int[]> {
+		final List<int[]> mItems = new ArrayList<>();
+		List<CollectionChange<int[]>> mLastChanges;
+		int mBatches;
+
+		@Override
+		public void onCollectionChanged(List<CollectionChange<int[]>> changes) {
+			mBatches++;
+			mLastChanges = changes;
+			for (CollectionChange<int[]> change : changes) {
+				switch (change.getType()) {
+				case INSERT:
+					mItems.addAll(change.getIndex(), change.getItems());
+					break;
+				case REMOVE:
+					for (int i = 0; i < change.getCount(); i++) {
+						assertSame(change.getItems().get(i), mItems.remove(change.getIndex()));
+					}
+					break;
+				case REPLACE:
+					for (int i = 0; i < change.getCount(); i++) {
+						mItems.set(change.getIndex() + i, change.getItems().get(i));
+					}
+					break;
+				default:
+					mItems.add(change.getToIndex(), mItems.remove(change.getIndex()));
+					break;
+				}
+			}
+		}
+
+		void assertMirrors(Items items) {
+			List<int[]> actual = new ArrayList<>(items);
+			assertEquals(actual.size(), mItems.size());
+			for (int i = 0; i < actual.size(); i++) {
+				assertSame(actual.get(i), mItems.get(i));
+				assertEquals(i, items.indexOfKey(actual.get(i)[0]));
+			}
+		}
+	}
+
+	static class Items extends ObservableKeyedCollection<Integer, int[]> {
+		@Override
+		protected Integer getKeyForItem(int[] item) {
+			return item[0];
+		}
+	}
+}
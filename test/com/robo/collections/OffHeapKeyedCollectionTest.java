@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.robo.ApplicationException;
+
+public class OffHeapKeyedCollectionTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void matchesLinkedHashMapUnderRandomOperations() {
+		Random random = new Random(3);
+		Items items = new Items(new StringCodec());
+		LinkedHashMap<String, String> expected = new LinkedHashMap<>();
+		for (int step = 0; step < 20000; step++) {
+			String key = "k" + random.nextInt(500);
+			int operation = random.nextInt(4);
+			if (operation < 2) {
+				String item = key + "=" + step;
+				items.add(item);
+				expected.put(key, item);
+			} else if (operation == 2) {
+				assertEquals(null != expected.remove(key), items.removeByKey(key));
+			} else if (!expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				String removed = new ArrayList<>(expected.keySet()).get(index);
+				assertEquals(expected.get(removed), items.getAt(index));
+				assertTrue(items.removeAt(index));
+				expected.remove(removed);
+			}
+			if (step % 100 == 0) {
+				assertSameItems(expected, items);
+			}
+		}
+		assertSameItems(expected, items);
+	}
+
+	@Test
+	public void getDecodesAHitOnce() {
+		StringCodec codec = new StringCodec();
+		Items items = new Items(codec);
+		for (int i = 0; i < 100; i++) {
+			items.add("k" + i + "=" + i);
+		}
+		codec.mDecodes = 0;
+		assertEquals("k42=42", items.get("k42"));
+		assertEquals(1, codec.mDecodes);
+		assertNull(items.get("missing"));
+	}
+
+	@Test
+	public void positionalReadsDuringIterationDoNotModifyCollection() {
+		Items items = new Items(new StringCodec());
+		for (int i = 0; i < 40; i++) {
+			items.add("k" + i + "=" + i);
+		}
+		items.removeByKey("k0");
+		int count = 0;
+		for (String item : items) {
+			assertEquals("k1=1", items.getAt(0));
+			assertTrue(null != item);
+			count++;
+		}
+		assertEquals(39, count);
+	}
+
+	@Test
+	public void reopensWrittenFile() throws IOException {
+		Items items = new Items(new StringCodec());
+		for (int i = 0; i < 1000; i++) {
+			items.add("k" + i + "=" + i);
+		}
+		for (int i = 0; i < 1000; i += 3) {
+			items.removeByKey("k" + i);
+		}
+		File file = File.createTempFile("items", ".bin");
+		try {
+			items.writeTo(file);
+			Items reopened = new Items(file, new StringCodec());
+			assertTrue(reopened.isReadOnly());
+			assertEquals(items.size(), reopened.size());
+			for (int i = 0; i < items.size(); i++) {
+				assertEquals(items.getAt(i), reopened.getAt(i));
+			}
+			assertEquals("k500=500", reopened.get("k500"));
+			assertNull(reopened.get("k999"));
+			try {
+				reopened.add("x=1");
+				fail();
+			} catch (UnsupportedOperationException expected) {
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void refusesToWriteKeysWithIdentityHashCodes() throws IOException {
+		UnitItems items = new UnitItems();
+		items.add("SECONDS");
+		items.add("DAYS");
+		File file = File.createTempFile("units", ".bin");
+		try {
+			items.writeTo(file);
+			fail();
+		} catch (ApplicationException expected) {
+		}
+		items.removeByKey(TimeUnit.SECONDS);
+		items.removeByKey(TimeUnit.DAYS);
+		items.writeTo(file);
+		file.delete();
+	}
+
+	@Test
+	public void growsDataCapacityWithoutOverflow() {
+		assertEquals(8192, OffHeapKeyedCollection.growDataCapacity(4096, 3000, 100));
+		assertEquals(Integer.MAX_VALUE - 8, OffHeapKeyedCollection.growDataCapacity(1 << 30, 1 << 30, 1000));
+		try {
+			OffHeapKeyedCollection.growDataCapacity(Integer.MAX_VALUE - 8, 2000000000, 200000000);
+			fail();
+		} catch (ApplicationException expected) {
+		}
+	}
+
+	private static void assertSameItems(LinkedHashMap<String, String> expected, Items items) {
+		assertEquals(expected.size(), items.size());
+		assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(items));
+		int index = 0;
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), items.get(entry.getKey()));
+			assertEquals(entry.getValue(), items.getAt(index++));
+		}
+	}
+
+	static class StringCodec implements ValueCodec<String> {
+		int mDecodes;
+
+		@Override
+		public int sizeOf(String value) {
+			return value.getBytes(UTF8).length;
+		}
+
+		@Override
+		public void encode(String value, ByteBuffer target) {
+			target.put(value.getBytes(UTF8));
+		}
+
+		@Override
+		public String decode(ByteBuffer source) {
+			mDecodes++;
+			byte[] bytes = new byte[source.remaining()];
+			source.get(bytes);
+			return new String(bytes, UTF8);
+		}
+	}
+
+	static class Items extends OffHeapKeyedCollection<String, String> {
+		Items(ValueCodec<String> codec) {
+			super(codec);
+		}
+
+		Items(File file, ValueCodec<String> codec) {
+			super(file, codec);
+		}
+
+		@Override
+		protected String getKeyForItem(String item) {
+			return item.substring(0, item.indexOf('='));
+		}
+	}
+
+	static class UnitItems extends OffHeapKeyedCollection<TimeUnit, String> {
+		UnitItems() {
+			super(new StringCodec());
+		}
+
+		@Override
+		protected TimeUnit getKeyForItem(String item) {
+			return TimeUnit.valueOf(item);
+		}
+	}
+}
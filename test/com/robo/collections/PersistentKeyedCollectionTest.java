@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentKeyedCollectionTest {
+
+	@Test
+	public void replacesItemsInPlace() {
+		Items items = new Items();
+		items.add(new Item(1, 10));
+		items.add(new Item(2, 20));
+		items.add(new Item(1, 11));
+		assertEquals(2, items.size());
+		assertEquals(11, items.getAt(0).mValue);
+		assertEquals(20, items.get(new Key(2)).mValue);
+		assertTrue(items.removeAt(0));
+		assertFalse(items.containsKey(new Key(1)));
+		assertNull(items.getAt(1));
+	}
+
+	@Test
+	public void snapshotIsNotAffectedByLaterChanges() {
+		Items items = new Items();
+		for (int i = 0; i < 100; i++) {
+			items.add(new Item(i, i));
+		}
+		PersistentKeyedCollection.Snapshot<Key, Item> snapshot = items.snapshot();
+		items.removeByKey(new Key(0));
+		items.add(new Item(5, -5));
+		items.clear();
+		assertEquals(100, snapshot.size());
+		assertEquals(5, snapshot.get(new Key(5)).mValue);
+		assertEquals(0, snapshot.getAt(0).mValue);
+		assertTrue(items.isEmpty());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshotIteratorIsReadOnly() {
+		Items items = new Items();
+		items.add(new Item(1, 1));
+		Iterator<Item> iterator = items.snapshot().iterator();
+		iterator.next();
+		iterator.remove();
+	}
+
+	@Test
+	public void snapshotsMatchLinkedHashMapUnderRandomOperations() {
+		for (int mode = 0; mode < 2; mode++) {
+			Random random = new Random(mode);
+			Items items = new Items();
+			LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<>();
+			List<PersistentKeyedCollection.Snapshot<Key, Item>> snapshots = new ArrayList<>();
+			List<List<Map.Entry<Integer, Integer>>> expectedSnapshots = new ArrayList<>();
+			int range = mode == 0 ? 1000 : 30000;
+			for (int i = 0; i < 30000; i++) {
+				int key = random.nextInt(range);
+				if (random.nextInt(3) < 2) {
+					items.add(new Item(key, i));
+					expected.put(key, i);
+				} else {
+					assertEquals(null != expected.remove(key), items.removeByKey(new Key(key)));
+				}
+				if (i % 3000 == 0) {
+					snapshots.add(items.snapshot());
+					expectedSnapshots.add(copy(expected));
+				}
+			}
+			assertSameItems(copy(expected), items.snapshot());
+			for (int i = 0; i < snapshots.size(); i++) {
+				assertSameItems(expectedSnapshots.get(i), snapshots.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void iteratorRemovesFromCollection() {
+		Items items = new Items();
+		for (int i = 0; i < 10; i++) {
+			items.add(new Item(i, i));
+		}
+		Iterator<Item> iterator = items.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().mValue % 2 == 1) {
+				iterator.remove();
+			}
+		}
+		List<Integer> values = new ArrayList<>();
+		for (Item item : items) {
+			values.add(item.mValue);
+		}
+		assertEquals(Arrays.asList(0, 2, 4, 6, 8), values);
+	}
+
+	@Test(timeout = 5000)
+	public void retainsItemsOfLargeList() {
+		Items items = new Items();
+		List<Item> retained = new ArrayList<>();
+		for (int i = 0; i < 50000; i++) {
+			Item item = new Item(i, i);
+			items.add(item);
+			if (i % 3 == 0) {
+				retained.add(item);
+			}
+		}
+		assertTrue(items.retainAll(retained));
+		assertEquals(retained, new ArrayList<>(items));
+		assertFalse(items.retainAll(retained));
+	}
+
+	private static List<Map.Entry<Integer, Integer>> copy(Map<Integer, Integer> map) {
+		List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+		for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+			entries.add(new AbstractMap.SimpleEntry<>(entry));
+		}
+		return entries;
+	}
+
+	private static void assertSameItems(List<Map.Entry<Integer, Integer>> expected,
+			PersistentKeyedCollection.Snapshot<Key, Item> snapshot) {
+		assertEquals(expected.size(), snapshot.size());
+		Iterator<Item> iterator = snapshot.iterator();
+		int index = 0;
+		for (Map.Entry<Integer, Integer> entry : expected) {
+			Item item = iterator.next();
+			assertEquals(entry.getKey().intValue(), item.mKey.mValue);
+			assertEquals(entry.getValue().intValue(), item.mValue);
+			if (index % 7 == 0) {
+				assertSame(item, snapshot.getAt(index));
+			}
+			assertSame(item, snapshot.get(new Key(entry.getKey())));
+			index++;
+		}
+		assertFalse(iterator.hasNext());
+	}
+
+	/**
+	 * A key with many hash collisions.
+	 */
+	static final class Key {
+		final int mValue;
+
+		Key(int value) {
+			mValue = value;
+		}
+
+		@Override
+		public int hashCode() {
+			return mValue % 97;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).mValue == mValue;
+		}
+	}
+
+	static final class Item {
+		final Key mKey;
+		final int mValue;
+
+		Item(int key, int value) {
+			mKey = new Key(key);
+			mValue = value;
+		}
+	}
+
+	static class Items extends PersistentKeyedCollection<Key, Item> {
+		@Override
+		protected Key getKeyForItem(Item item) {
+			return item.mKey;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.robo.InvalidOperationException;
+
+public class SecondaryIndexTest {
+
+	private People mPeople;
+	private SecondaryIndex<String, Person> mByEmail;
+	private SecondaryIndex<String, Person> mByCity;
+
+	@Before
+	public void setUp() {
+		mPeople = new People();
+		mPeople.add(new Person(1, "a", "x"));
+		mByEmail = mPeople.addIndex(new KeyExtractor<String, Person>() {
+			@Override
+			public String getKey(Person item) {
+				return item.mEmail;
+			}
+		}, true);
+		mByCity = mPeople.addIndex(new KeyExtractor<String, Person>() {
+			@Override
+			public String getKey(Person item) {
+				return item.mCity;
+			}
+		}, false);
+		List<Person> batch = new ArrayList<>();
+		for (int i = 2; i < 1000; i++) {
+			batch.add(new Person(i, "e" + i, "c" + (i % 10)));
+		}
+		mPeople.addAll(batch);
+	}
+
+	@Test
+	public void indexesExistingAndAddedItems() {
+		assertEquals(1, mByEmail.get("a").mId);
+		assertEquals(500, mByEmail.get("e500").mId);
+		assertEquals(100, mByCity.getAll("c3").size());
+		assertTrue(mByEmail.isUnique());
+		assertFalse(mByCity.isUnique());
+		assertEquals(11, mByCity.keyCount());
+		assertTrue(mByCity.getAll("none").isEmpty());
+	}
+
+	@Test
+	public void rejectsDuplicateUniqueKeys() {
+		try {
+			mPeople.add(new Person(5000, "e7", "z"));
+			fail();
+		} catch (InvalidOperationException expected) {
+		}
+		int size = mPeople.size();
+		try {
+			mPeople.addAll(Arrays.asList(new Person(6000, "n1", "z"), new Person(6001, "n1", "z")));
+			fail();
+		} catch (InvalidOperationException expected) {
+		}
+		assertEquals(size, mPeople.size());
+		assertFalse(mByCity.containsKey("z"));
+	}
+
+	@Test
+	public void followsReplacementsAndRemovals() {
+		mPeople.add(new Person(7, "new7", "c7"));
+		assertNull(mByEmail.get("e7"));
+		assertEquals(7, mByEmail.get("new7").mId);
+		// a batch may swap unique keys between items
+		mPeople.addAll(Arrays.asList(new Person(8, "swap", "q"), new Person(9, "e8", "q")));
+		assertEquals(9, mByEmail.get("e8").mId);
+		assertEquals(8, mByEmail.get("swap").mId);
+		assertEquals(2, mByCity.getAll("q").size());
+		mPeople.removeByKey(9);
+		assertNull(mByEmail.get("e8"));
+		assertEquals(1, mByCity.getAll("q").size());
+		Person kept = mPeople.get(8);
+		mPeople.retainAll(Collections.singleton(kept));
+		assertEquals(1, mPeople.size());
+		assertEquals(1, mByEmail.keyCount());
+		assertSame(kept, mByCity.get("q"));
+		mPeople.clear();
+		assertEquals(0, mByEmail.keyCount());
+	}
+
+	@Test
+	public void removedIndexIsNoLongerUpdated() {
+		assertTrue(mPeople.removeIndex(mByCity));
+		assertFalse(mPeople.removeIndex(mByCity));
+		mPeople.add(new Person(2000, "e2000", "new city"));
+		assertFalse(mByCity.containsKey("new city"));
+		assertTrue(mByEmail.containsKey("e2000"));
+	}
+
+	@Test(expected = InvalidOperationException.class)
+	public void addingUniqueIndexOverDuplicatesFails() {
+		mPeople.addIndex(new KeyExtractor<String, Person>() {
+			@Override
+			public String getKey(Person item) {
+				return item.mCity;
+			}
+		}, true);
+	}
+
+	@Test(timeout = 5000)
+	public void removesFromLargeBucketInConstantTime() {
+		People people = new People();
+		SecondaryIndex<String, Person> byCity = people.addIndex(new KeyExtractor<String, Person>() {
+			@Override
+			public String getKey(Person item) {
+				return item.mCity;
+			}
+		}, false);
+		List<Person> batch = new ArrayList<>();
+		for (int i = 0; i < 200000; i++) {
+			batch.add(new Person(i, "e" + i, "city"));
+		}
+		people.addAll(batch);
+		List<Person> odd = new ArrayList<>();
+		for (int i = 1; i < batch.size(); i += 2) {
+			odd.add(batch.get(i));
+		}
+		people.retainAll(odd);
+		assertEquals(100000, byCity.getAll("city").size());
+		assertSame(batch.get(1), byCity.get("city"));
+		assertEquals(odd, new ArrayList<>(byCity.getAll("city")));
+		// newest first, which scans a whole list-based bucket for each item
+		for (int i = batch.size() - 1; i > 0; i -= 2) {
+			assertTrue(people.removeByKey(i));
+		}
+		assertFalse(byCity.containsKey("city"));
+		assertTrue(byCity.getAll("city").isEmpty());
+	}
+
+	static final class Person {
+		final int mId;
+		final String mEmail;
+		final String mCity;
+
+		Person(int id, String email, String city) {
+			mId = id;
+			mEmail = email;
+			mCity = city;
+		}
+	}
+
+	static class People extends KeyedCollection<Integer, Person> {
+		@Override
+		protected Integer getKeyForItem(Person item) {
+			return item.mId;
+		}
+	}
+}
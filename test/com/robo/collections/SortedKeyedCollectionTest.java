@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class SortedKeyedCollectionTest {
+
+	@Test
+	public void removingLastAppendedItemLeavesNoEmptyLeaf() {
+		Numbers numbers = new Numbers();
+		for (int i = 0; i <= 2048; i++) {
+			numbers.add(i);
+		}
+		assertTrue(numbers.removeByKey(2048));
+		int expected = 0;
+		for (Integer number : numbers) {
+			assertEquals(Integer.valueOf(expected++), number);
+		}
+		assertEquals(2048, expected);
+		assertEquals(Integer.valueOf(2047), numbers.floor(5000));
+		assertNull(numbers.ceiling(2048));
+		assertEquals(Integer.valueOf(2047), numbers.getAt(2047));
+	}
+
+	@Test
+	public void removingSequentialRunsKeepsOrderAndBounds() {
+		Numbers numbers = new Numbers();
+		for (int i = 0; i < 10000; i++) {
+			numbers.add(i);
+		}
+		for (int i = 9999; i >= 5000; i--) {
+			assertTrue(numbers.removeByKey(i));
+			if (i % 64 == 0) {
+				assertEquals(Integer.valueOf(i - 1), numbers.floor(i));
+				assertNull(numbers.ceiling(i));
+			}
+		}
+		for (int i = 0; i < 4000; i++) {
+			assertTrue(numbers.removeByKey(i));
+		}
+		assertEquals(1000, numbers.size());
+		assertEquals(Integer.valueOf(4000), numbers.ceiling(0));
+		assertNull(numbers.floor(3999));
+		assertEquals(rangeList(4000, 5000), new ArrayList<>(numbers));
+	}
+
+	@Test
+	public void matchesTreeSetUnderRandomOperations() {
+		Random random = new Random(5);
+		int[] ranges = { 100, 5000, 50000 };
+		for (int range : ranges) {
+			verifyRandomOperations(new Numbers(), new TreeSet<Integer>(), random, range);
+		}
+		Comparator<Integer> reverse = Collections.reverseOrder();
+		verifyRandomOperations(new Numbers(reverse), new TreeSet<>(reverse), random, 3000);
+	}
+
+	@Test
+	public void iteratorRemovalMatchesTreeSet() {
+		Numbers numbers = new Numbers();
+		TreeSet<Integer> expected = new TreeSet<>();
+		Random random = new Random(11);
+		for (int i = 0; i < 20000; i++) {
+			int key = random.nextInt(100000);
+			numbers.add(key);
+			expected.add(key);
+		}
+		Iterator<Integer> iterator = numbers.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() % 3 != 0) {
+				iterator.remove();
+			}
+		}
+		Iterator<Integer> expectedIterator = expected.iterator();
+		while (expectedIterator.hasNext()) {
+			if (expectedIterator.next() % 3 != 0) {
+				expectedIterator.remove();
+			}
+		}
+		assertEquals(new ArrayList<>(expected), new ArrayList<>(numbers));
+		assertEquals(expected.size(), numbers.size());
+	}
+
+	@Test
+	public void subRangeSizeAndIterationAgree() {
+		Numbers numbers = new Numbers();
+		for (int i = 0; i < 1000; i += 2) {
+			numbers.add(i);
+		}
+		Collection<Integer> range = numbers.subRange(10, 21);
+		assertEquals(6, range.size());
+		assertEquals(new ArrayList<>(range), rangeList(10, 21, 2));
+		assertTrue(numbers.subRange(2000, null).isEmpty());
+		assertEquals(500, numbers.subRange(null, null).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void subRangeRejectsReversedBounds() {
+		new Numbers().subRange(5, 1);
+	}
+
+	@Test
+	public void removingEverythingEmptiesCollection() {
+		Numbers numbers = new Numbers();
+		for (int i = 0; i < 3000; i++) {
+			numbers.add(i);
+		}
+		for (int i = 0; i < 3000; i++) {
+			assertTrue(numbers.removeByKey(i));
+		}
+		assertTrue(numbers.isEmpty());
+		assertFalse(numbers.iterator().hasNext());
+		assertNull(numbers.floor(10));
+		numbers.add(7);
+		assertEquals(Integer.valueOf(7), numbers.getAt(0));
+	}
+
+	private static void verifyRandomOperations(Numbers numbers, TreeSet<Integer> expected, Random random,
+			int range) {
+		boolean reversed = null != expected.comparator();
+		for (int step = 0; step < 60000; step++) {
+			int operation = random.nextInt(10);
+			int key = random.nextInt(range);
+			if (operation < 5) {
+				numbers.add(key);
+				expected.add(key);
+			} else if (operation < 8) {
+				assertEquals(expected.remove(key), numbers.removeByKey(key));
+			} else if (operation == 8) {
+				if (!expected.isEmpty()) {
+					int index = random.nextInt(expected.size());
+					Integer item = numbers.getAt(index);
+					assertTrue(expected.contains(item));
+					assertEquals(index, numbers.indexOfKey(item));
+				}
+			} else {
+				assertEquals(expected.floor(key), numbers.floor(key));
+				assertEquals(expected.ceiling(key), numbers.ceiling(key));
+				int bound = reversed ? key - random.nextInt(range / 10 + 1) : key + random.nextInt(range / 10 + 1);
+				List<Integer> subRange = new ArrayList<>(expected.subSet(key, true, bound, false));
+				Collection<Integer> actual = numbers.subRange(key, bound);
+				assertEquals(subRange.size(), actual.size());
+				assertEquals(subRange, new ArrayList<>(actual));
+			}
+			assertEquals(expected.size(), numbers.size());
+			if (step % 5000 == 0) {
+				List<Integer> items = new ArrayList<>(expected);
+				assertEquals(items, new ArrayList<>(numbers));
+				for (int i = 0; i < items.size(); i += 7) {
+					assertEquals(items.get(i), numbers.getAt(i));
+				}
+			}
+		}
+	}
+
+	private static List<Integer> rangeList(int from, int to) {
+		return rangeList(from, to, 1);
+	}
+
+	private static List<Integer> rangeList(int from, int to, int step) {
+		List<Integer> result = new ArrayList<>();
+		for (int i = from; i < to; i += step) {
+			result.add(i);
+		}
+		return result;
+	}
+
+	static class Numbers extends SortedKeyedCollection<Integer, Integer> {
+		Numbers() {
+		}
+
+		Numbers(Comparator<Integer> comparator) {
+			super(comparator);
+		}
+
+		@Override
+		protected Integer getKeyForItem(Integer item) {
+			return item;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandJournalTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final List<String> sExecutions = new ArrayList<>();
+
+	private File mDirectory;
+
+	@Before
+	public void setUp() throws IOException {
+		mDirectory = Files.createTempDirectory("journal").toFile();
+		sExecutions.clear();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = mDirectory.listFiles();
+		if (null != files) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		mDirectory.delete();
+	}
+
+	@Test
+	public void replaysRecordsInOrderAcrossSegments() {
+		CommandJournal journal = open(128);
+		for (int i = 0; i < 20; i++) {
+			journal.append(RecordCommand.class, null, "p" + i);
+		}
+		assertTrue(mDirectory.list().length > 1);
+		assertEquals(20, journal.replay(new RecordContainer()));
+		journal.close();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			expected.add("p" + i);
+		}
+		assertEquals(expected, sExecutions);
+	}
+
+	@Test
+	public void reopenedJournalAppendsAfterExistingRecords() {
+		CommandJournal journal = open(4096);
+		journal.append(RecordCommand.class, null, "a");
+		journal.append(RecordCommand.class, "named", "b");
+		journal.close();
+		journal = open(4096);
+		journal.append(RecordCommand.class, null, "c");
+		assertEquals(3, journal.replay(new RecordContainer()));
+		journal.close();
+		assertEquals(Arrays.asList("a", "named:b", "c"), sExecutions);
+	}
+
+	@Test
+	public void replayStopsAtCorruptedRecord() throws IOException {
+		CommandJournal journal = open(4096);
+		journal.append(RecordCommand.class, null, "first");
+		journal.append(RecordCommand.class, null, "second");
+		journal.append(RecordCommand.class, null, "third");
+		journal.close();
+		overwrite("second", "sEcond");
+		journal = open(4096);
+		assertEquals(1, journal.replay(new RecordContainer()));
+		assertEquals(Arrays.asList("first"), sExecutions);
+		// new records take the place of the corrupted one
+		journal.append(RecordCommand.class, null, "fourth");
+		sExecutions.clear();
+		assertEquals(2, journal.replay(new RecordContainer()));
+		journal.close();
+		assertEquals(Arrays.asList("first", "fourth"), sExecutions);
+	}
+
+	@Test
+	public void replayStopsAtTornRecord() throws IOException {
+		CommandJournal journal = open(4096);
+		journal.append(RecordCommand.class, null, "first");
+		journal.append(RecordCommand.class, null, "second");
+		journal.append(RecordCommand.class, null, "third");
+		journal.close();
+		// the page holding the end of the second record never reached the disk
+		overwrite("second", "\0\0\0\0\0\0");
+		journal = open(4096);
+		assertEquals(1, journal.replay(new RecordContainer()));
+		journal.close();
+		assertEquals(Arrays.asList("first"), sExecutions);
+	}
+
+	@Test
+	public void rejectsAnonymousAndLocalCommands() {
+		CommandJournal journal = open(4096);
+		ApplicationController controller = new JournalingApplicationController(new ApplicationControllerImp(
+				new RecordContainer()), journal);
+		class LocalCommand extends RecordCommand {
+		}
+		List<Command<String>> commands = new ArrayList<>();
+		commands.add(new RecordCommand() {
+		});
+		commands.add(new LocalCommand());
+		for (Command<String> command : commands) {
+			try {
+				controller.execute(command, "x");
+				fail();
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+		controller.execute(new RecordCommand(), "y");
+		assertEquals(1, journal.replay(new RecordContainer()));
+		journal.close();
+		assertEquals(Arrays.asList("y", "y"), sExecutions);
+	}
+
+	private CommandJournal open(int segmentSize) {
+		return new CommandJournal(mDirectory, segmentSize, 0, TimeUnit.MILLISECONDS, new StringCodec());
+	}
+
+	private void overwrite(String text, String replacement) throws IOException {
+		File segment = mDirectory.listFiles()[0];
+		byte[] content = Files.readAllBytes(segment.toPath());
+		byte[] pattern = text.getBytes(UTF8);
+		for (int i = 0; i <= content.length - pattern.length; i++) {
+			if (Arrays.equals(pattern, Arrays.copyOfRange(content, i, i + pattern.length))) {
+				try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+					file.seek(i);
+					file.write(replacement.getBytes(UTF8));
+				}
+				return;
+			}
+		}
+		throw new AssertionError(text + " not found");
+	}
+
+	public static class RecordCommand implements Command<String> {
+		private final String mPrefix;
+
+		public RecordCommand() {
+			this("");
+		}
+
+		RecordCommand(String prefix) {
+			mPrefix = prefix;
+		}
+
+		@Override
+		public void execute(String parameter) {
+			sExecutions.add(mPrefix + parameter);
+		}
+	}
+
+	private static class RecordContainer implements CommandContainer {
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> Command<T> resolve(Class<? extends Command<T>> contract) {
+			return (Command<T>) new RecordCommand();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> Command<T> resolve(Class<? extends Command<T>> contract, String name) {
+			return (Command<T>) new RecordCommand(name + ":");
+		}
+	}
+
+	private static class StringCodec implements ParameterCodec {
+		@Override
+		public byte[] encode(Object parameter) {
+			return ((String) parameter).getBytes(UTF8);
+		}
+
+		@Override
+		public Object decode(byte[] data) {
+			return new String(data, UTF8);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.robo.threading.TimerWheel;
+
+public class DebounceDispatchPolicyTest {
+
+	private final TimerWheel mWheel = new TimerWheel(1, TimeUnit.MILLISECONDS, 64);
+
+	@After
+	public void tearDown() {
+		mWheel.stop();
+	}
+
+	@Test
+	public void executesOnlyLastDispatchOfBurst() throws InterruptedException {
+		RecordingCommand command = new RecordingCommand(1);
+		DispatchPolicy policy = new DebounceDispatchPolicy(40, TimeUnit.MILLISECONDS, mWheel, null);
+		policy.dispatch(command, "a");
+		policy.dispatch(command, "b");
+		policy.dispatch(command, "c");
+		assertTrue(command.await(2, TimeUnit.SECONDS));
+		Thread.sleep(80);
+		assertEquals(Arrays.asList("c"), command.getExecutions());
+	}
+
+	@Test
+	public void separateBurstsExecuteSeparately() throws InterruptedException {
+		RecordingCommand command = new RecordingCommand(2);
+		DispatchPolicy policy = new DebounceDispatchPolicy(20, TimeUnit.MILLISECONDS, mWheel, null);
+		policy.dispatch(command, "a");
+		Thread.sleep(100);
+		policy.dispatch(command, "b");
+		assertTrue(command.await(2, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("a", "b"), command.getExecutions());
+	}
+}
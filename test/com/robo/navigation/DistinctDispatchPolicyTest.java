@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DistinctDispatchPolicyTest {
+
+	@Test
+	public void dropsConsecutiveEqualParameters() {
+		RecordingCommand command = new RecordingCommand();
+		DispatchPolicy policy = new DistinctDispatchPolicy();
+		policy.dispatch(command, "a");
+		policy.dispatch(command, new String("a"));
+		policy.dispatch(command, "b");
+		policy.dispatch(command, "a");
+		policy.dispatch(command, null);
+		policy.dispatch(command, null);
+		assertEquals(Arrays.asList("a", "b", "a", null), command.getExecutions());
+	}
+
+	@Test
+	public void passesChangedParametersToNextPolicy() {
+		RecordingCommand command = new RecordingCommand();
+		final RecordingCommand forwarded = new RecordingCommand();
+		DispatchPolicy next = new DispatchPolicy() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public <TParam> void dispatch(Command<TParam> c, TParam parameter) {
+				forwarded.execute((String) parameter);
+			}
+		};
+		DispatchPolicy policy = new DistinctDispatchPolicy(next);
+		policy.dispatch(command, "a");
+		policy.dispatch(command, "a");
+		policy.dispatch(command, "b");
+		assertEquals(Arrays.asList("a", "b"), forwarded.getExecutions());
+		assertEquals(0, command.getExecutions().size());
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A command that records the parameters it has been executed with.
+ */
+class RecordingCommand implements Command<String> {
+
+	private final List<String> mExecutions = new ArrayList<>();
+	private CountDownLatch mLatch;
+
+	RecordingCommand() {
+		this(0);
+	}
+
+	RecordingCommand(int expectedExecutions) {
+		mLatch = new CountDownLatch(expectedExecutions);
+	}
+
+	@Override
+	public void execute(String parameter) {
+		synchronized (mExecutions) {
+			mExecutions.add(parameter);
+		}
+		mLatch.countDown();
+	}
+
+	List<String> getExecutions() {
+		synchronized (mExecutions) {
+			return new ArrayList<>(mExecutions);
+		}
+	}
+
+	boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+		return mLatch.await(timeout, unit);
+	}
+}
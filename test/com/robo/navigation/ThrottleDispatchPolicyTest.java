@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.robo.threading.TimerWheel;
+
+public class ThrottleDispatchPolicyTest {
+
+	private final TimerWheel mWheel = new TimerWheel(1, TimeUnit.MILLISECONDS, 64);
+
+	@After
+	public void tearDown() {
+		mWheel.stop();
+	}
+
+	@Test
+	public void executesFirstDispatchOfIntervalAndDropsTheRest() throws InterruptedException {
+		RecordingCommand command = new RecordingCommand();
+		DispatchPolicy policy = new ThrottleDispatchPolicy(10, TimeUnit.SECONDS);
+		policy.dispatch(command, "a");
+		policy.dispatch(command, "b");
+		policy.dispatch(command, "c");
+		assertEquals(Arrays.asList("a"), command.getExecutions());
+	}
+
+	@Test
+	public void executesLastDroppedDispatchAtEndOfInterval() throws InterruptedException {
+		RecordingCommand command = new RecordingCommand(2);
+		DispatchPolicy policy = new ThrottleDispatchPolicy(30, TimeUnit.MILLISECONDS, true, mWheel, null);
+		policy.dispatch(command, "a");
+		policy.dispatch(command, "b");
+		policy.dispatch(command, "c");
+		assertTrue(command.await(2, TimeUnit.SECONDS));
+		Thread.sleep(60);
+		assertEquals(Arrays.asList("a", "c"), command.getExecutions());
+	}
+
+	@Test
+	public void lateTrailingExecutionRunsBeforeNewerLeadingOne() throws InterruptedException {
+		// a wheel that ticks far too slowly to fire the trailing timeout in time
+		TimerWheel slowWheel = new TimerWheel(10, TimeUnit.SECONDS, 8);
+		try {
+			RecordingCommand command = new RecordingCommand();
+			DispatchPolicy policy = new ThrottleDispatchPolicy(20, TimeUnit.MILLISECONDS, true, slowWheel, null);
+			policy.dispatch(command, "a");
+			policy.dispatch(command, "b");
+			Thread.sleep(40);
+			policy.dispatch(command, "c");
+			assertEquals(Arrays.asList("a", "b", "c"), command.getExecutions());
+		} finally {
+			slowWheel.stop();
+		}
+	}
+
+	@Test
+	public void lateTrailingExecutionBypassesExecutorToKeepOrder() throws InterruptedException {
+		TimerWheel slowWheel = new TimerWheel(10, TimeUnit.SECONDS, 8);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			RecordingCommand command = new RecordingCommand();
+			DispatchPolicy policy = new ThrottleDispatchPolicy(20, TimeUnit.MILLISECONDS, true, slowWheel,
+					executor);
+			policy.dispatch(command, "a");
+			policy.dispatch(command, "b");
+			Thread.sleep(40);
+			policy.dispatch(command, "c");
+			assertEquals(Arrays.asList("a", "b", "c"), command.getExecutions());
+		} finally {
+			executor.shutdown();
+			slowWheel.stop();
+		}
+	}
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Test;
+
+public class CopyUtilsTest {
+
+    @Test
+    public void sharesImmutableValues() {
+        String text = "text";
+        assertSame(text, CopyUtils.deepCopy(text));
+        Integer number = Integer.valueOf(500);
+        assertSame(number, CopyUtils.deepCopy(number));
+        assertSame(Color.GREEN, CopyUtils.deepCopy(Color.GREEN));
+        OptionalInt optionalInt = OptionalInt.of(3);
+        assertSame(optionalInt, CopyUtils.deepCopy(optionalInt));
+        assertNull(CopyUtils.deepCopy(null));
+    }
+
+    @Test
+    public void copiesCyclesOnce() {
+        Node root = new Node("root");
+        Node child = new Node("child");
+        root.next = child;
+        child.next = root;
+        root.children.add(child);
+        root.children.add(child);
+        root.attributes.put("self", root);
+
+        Node copy = CopyUtils.deepCopy(root);
+        assertNotSame(root, copy);
+        assertSame(root.label, copy.label);
+        assertNotSame(child, copy.next);
+        assertSame(copy, copy.next.next);
+        assertSame(copy.next, copy.children.get(0));
+        assertSame(copy.next, copy.children.get(1));
+        assertSame(copy, copy.attributes.get("self"));
+    }
+
+    @Test
+    public void keepsComparatorsAndEnumCollections() {
+        TreeMap<String, Integer> sorted = new TreeMap<>(Collections.<String> reverseOrder());
+        sorted.put("a", 1);
+        sorted.put("b", 2);
+        TreeMap<String, Integer> sortedCopy = CopyUtils.deepCopy(sorted);
+        assertNotSame(sorted, sortedCopy);
+        assertEquals("b", sortedCopy.firstKey());
+        assertSame(sorted.comparator(), sortedCopy.comparator());
+
+        TreeSet<Integer> set = new TreeSet<>(Arrays.asList(3, 1, 2));
+        assertEquals(set, CopyUtils.deepCopy(set));
+
+        EnumMap<Color, List<String>> enumMap = new EnumMap<>(Color.class);
+        enumMap.put(Color.RED, new ArrayList<>(Arrays.asList("r")));
+        EnumMap<Color, List<String>> enumMapCopy = CopyUtils.deepCopy(enumMap);
+        assertNotSame(enumMap, enumMapCopy);
+        assertEquals(enumMap, enumMapCopy);
+        assertNotSame(enumMap.get(Color.RED), enumMapCopy.get(Color.RED));
+
+        EnumSet<Color> enumSet = EnumSet.of(Color.RED);
+        EnumSet<Color> enumSetCopy = CopyUtils.deepCopy(enumSet);
+        assertNotSame(enumSet, enumSetCopy);
+        assertEquals(enumSet, enumSetCopy);
+    }
+
+    @Test
+    public void copiesMutableJdkValues() {
+        Date date = new Date(12345);
+        Date dateCopy = CopyUtils.deepCopy(date);
+        assertNotSame(date, dateCopy);
+        assertEquals(date, dateCopy);
+
+        GregorianCalendar calendar = new GregorianCalendar(2016, 1, 2);
+        assertEquals(calendar, CopyUtils.deepCopy(calendar));
+
+        AtomicInteger atomicInteger = new AtomicInteger(7);
+        AtomicInteger atomicIntegerCopy = CopyUtils.deepCopy(atomicInteger);
+        assertNotSame(atomicInteger, atomicIntegerCopy);
+        assertEquals(7, atomicIntegerCopy.get());
+        assertEquals(8L, CopyUtils.deepCopy(new AtomicLong(8)).get());
+        assertTrue(CopyUtils.deepCopy(new AtomicBoolean(true)).get());
+
+        StringBuilder builder = new StringBuilder("abc");
+        StringBuilder builderCopy = CopyUtils.deepCopy(builder);
+        assertNotSame(builder, builderCopy);
+        assertEquals("abc", builderCopy.toString());
+        assertEquals("xyz", CopyUtils.deepCopy(new StringBuffer("xyz")).toString());
+    }
+
+    @Test
+    public void copiesValuesOfOptionalsAndAtomicReferences() {
+        Optional<String> text = Optional.of("text");
+        assertSame(text, CopyUtils.deepCopy(text));
+        Optional<Object> empty = Optional.empty();
+        assertSame(empty, CopyUtils.deepCopy(empty));
+
+        Optional<List<String>> list = Optional.<List<String>> of(new ArrayList<>(Arrays.asList("a")));
+        Optional<List<String>> listCopy = CopyUtils.deepCopy(list);
+        assertEquals(list, listCopy);
+        assertNotSame(list.get(), listCopy.get());
+
+        AtomicReference<Object> reference = new AtomicReference<>();
+        reference.set(reference);
+        AtomicReference<Object> referenceCopy = CopyUtils.deepCopy(reference);
+        assertNotSame(reference, referenceCopy);
+        assertSame(referenceCopy, referenceCopy.get());
+    }
+
+    @Test
+    public void copiesObjectsHoldingJdkValues() {
+        Holder holder = new Holder();
+        holder.date = new Date(1000);
+        holder.counter = new AtomicInteger(5);
+        holder.name = Optional.of("name");
+        holder.nodes = Optional.of(new Node("node"));
+        holder.text = new StringBuilder("text");
+
+        Holder copy = CopyUtils.deepCopy(holder);
+        assertNotSame(holder.date, copy.date);
+        assertEquals(holder.date, copy.date);
+        assertNotSame(holder.counter, copy.counter);
+        assertEquals(5, copy.counter.get());
+        assertSame(holder.name, copy.name);
+        assertNotSame(holder.nodes.get(), copy.nodes.get());
+        assertEquals("node", copy.nodes.get().label);
+        assertEquals("text", copy.text.toString());
+
+        copy.date.setTime(0);
+        copy.counter.incrementAndGet();
+        assertEquals(1000, holder.date.getTime());
+        assertEquals(5, holder.counter.get());
+    }
+
+    @Test
+    public void copiesObjectsWithoutParameterlessConstructor() {
+        Pair pair = new Pair(3, new ArrayList<>(Arrays.asList("a", "b")));
+        Pair copy = CopyUtils.deepCopy(pair);
+        assertNotSame(pair, copy);
+        assertEquals(3, copy.value);
+        assertNotSame(pair.names, copy.names);
+        assertEquals(pair.names, copy.names);
+        assertFalse(copy.names.isEmpty());
+    }
+
+    @Test
+    public void copiesSubclassesOfJdkCollections() {
+        NodeList list = new NodeList("list");
+        list.add(new Node("a"));
+        list.add(new Node("b"));
+        NodeList listCopy = CopyUtils.deepCopy(list);
+        assertNotSame(list, listCopy);
+        assertEquals("list", listCopy.name);
+        assertEquals(2, listCopy.addCount);
+        assertEquals(2, listCopy.size());
+        assertNotSame(list.get(0), listCopy.get(0));
+        assertEquals("b", listCopy.get(1).label);
+
+        NodeMap map = new NodeMap();
+        map.fallback = new Node("fallback");
+        map.put("self", map);
+        map.put("fallback", map.fallback);
+        NodeMap mapCopy = CopyUtils.deepCopy(map);
+        assertNotSame(map, mapCopy);
+        assertSame(mapCopy, mapCopy.get("self"));
+        assertNotSame(map.fallback, mapCopy.fallback);
+        assertSame(mapCopy.fallback, mapCopy.get("fallback"));
+
+        Range range = new Range(2, 5);
+        Range rangeCopy = CopyUtils.deepCopy(range);
+        assertNotSame(range, rangeCopy);
+        assertEquals(Arrays.asList(2, 3, 4), rangeCopy);
+    }
+
+    @SuppressWarnings("serial")
+    @Test
+    public void copiesDoubleBraceInitializedCollections() {
+        Map<String, List<String>> map = new HashMap<String, List<String>>() {
+            {
+                put("a", new ArrayList<>(Arrays.asList("x")));
+            }
+        };
+        map.put("b", new ArrayList<String>());
+        Map<String, List<String>> mapCopy = CopyUtils.deepCopy(map);
+        assertNotSame(map, mapCopy);
+        assertSame(map.getClass(), mapCopy.getClass());
+        assertEquals(map, mapCopy);
+        assertNotSame(map.get("a"), mapCopy.get("a"));
+
+        List<Integer> list = new ArrayList<Integer>() {
+            {
+                add(1);
+                add(2);
+            }
+        };
+        list.remove(0);
+        assertEquals(Arrays.asList(2), CopyUtils.deepCopy(list));
+
+        ListHolder holder = new ListHolder();
+        holder.names = new NodeList("held");
+        holder.names.add(new Node("n"));
+        holder.map = map;
+        ListHolder holderCopy = CopyUtils.deepCopy(holder);
+        assertNotSame(holder.names, holderCopy.names);
+        assertEquals("held", holderCopy.names.name);
+        assertEquals("n", holderCopy.names.get(0).label);
+        assertEquals(map, holderCopy.map);
+    }
+
+    @Test
+    public void copiesAtomicArrays() {
+        AtomicLongArray longs = new AtomicLongArray(new long[] { 1, 2, 3 });
+        AtomicLongArray longsCopy = CopyUtils.deepCopy(longs);
+        assertNotSame(longs, longsCopy);
+        assertEquals(longs.toString(), longsCopy.toString());
+        longsCopy.set(0, 9);
+        assertEquals(1, longs.get(0));
+
+        AtomicIntegerArray ints = new AtomicIntegerArray(new int[] { 4, 5 });
+        assertEquals(ints.toString(), CopyUtils.deepCopy(ints).toString());
+
+        AtomicReferenceArray<Object> references = new AtomicReferenceArray<>(2);
+        references.set(0, references);
+        references.set(1, new Node("node"));
+        AtomicReferenceArray<Object> referencesCopy = CopyUtils.deepCopy(references);
+        assertNotSame(references, referencesCopy);
+        assertSame(referencesCopy, referencesCopy.get(0));
+        assertNotSame(references.get(1), referencesCopy.get(1));
+    }
+
+    enum Color {
+        RED, GREEN {
+            @Override
+            public String toString() {
+                return "green";
+            }
+        }
+    }
+
+    static class Node {
+        final String label;
+        Node next;
+        List<Node> children = new ArrayList<>();
+        Map<String, Object> attributes = new HashMap<>();
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+
+    static class Holder {
+        Date date;
+        AtomicInteger counter;
+        Optional<String> name;
+        Optional<Node> nodes;
+        StringBuilder text;
+    }
+
+    static class Pair {
+        final int value;
+        final List<String> names;
+
+        Pair(int value, List<String> names) {
+            this.value = value;
+            this.names = names;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static class NodeList extends ArrayList<Node> {
+        String name;
+        int addCount;
+
+        NodeList(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean add(Node node) {
+            addCount++;
+            return super.add(node);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static class NodeMap extends HashMap<String, Object> {
+        Node fallback;
+    }
+
+    static class Range extends AbstractList<Integer> {
+        final int start;
+        final int end;
+
+        Range(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return start + index;
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    static class ListHolder {
+        NodeList names;
+        Map<String, List<String>> map;
+    }
+}
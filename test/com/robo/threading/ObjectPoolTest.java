@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ObjectPoolTest {
+
+	@Test
+	public void reusesReleasedObjects() {
+		CountingAllocator allocator = new CountingAllocator();
+		ObjectPool<StringBuilder> pool = new ObjectPool<>(allocator, 4, 2);
+		StringBuilder first = pool.acquire();
+		first.append("dirty");
+		pool.release(first);
+		StringBuilder second = pool.acquire();
+		assertSame(first, second);
+		assertEquals(0, second.length());
+		assertEquals(1, allocator.mCreated.get());
+	}
+
+	@Test
+	public void sharesObjectsBeyondLocalCapacity() throws InterruptedException {
+		CountingAllocator allocator = new CountingAllocator();
+		final ObjectPool<StringBuilder> pool = new ObjectPool<>(allocator, 8, 0);
+		final StringBuilder released = pool.acquire();
+		pool.release(released);
+		final StringBuilder[] acquired = new StringBuilder[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acquired[0] = pool.acquire();
+			}
+		});
+		thread.start();
+		thread.join();
+		assertSame(released, acquired[0]);
+	}
+
+	@Test
+	public void dropsObjectsWhenFull() {
+		CountingAllocator allocator = new CountingAllocator();
+		ObjectPool<StringBuilder> pool = new ObjectPool<>(allocator, 1, 1);
+		StringBuilder[] objects = new StringBuilder[4];
+		for (int i = 0; i < objects.length; i++) {
+			objects[i] = pool.acquire();
+		}
+		for (StringBuilder object : objects) {
+			pool.release(object);
+		}
+		for (int i = 0; i < objects.length; i++) {
+			pool.acquire();
+		}
+		// one object cached locally, at most one in the single shared slot
+		assertTrue(allocator.mCreated.get() >= 6);
+	}
+
+	@Test
+	public void neverHandsOutAnObjectTwice() throws InterruptedException {
+		final ObjectPool<StringBuilder> pool = new ObjectPool<>(new CountingAllocator(), 16, 4);
+		final Set<StringBuilder> inUse = Collections.newSetFromMap(new IdentityHashMap<StringBuilder, Boolean>());
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						StringBuilder object = pool.acquire();
+						synchronized (inUse) {
+							if (!inUse.add(object)) {
+								failures.incrementAndGet();
+							}
+						}
+						synchronized (inUse) {
+							inUse.remove(object);
+						}
+						pool.release(object);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void threadLocalCacheDoesNotRetainPool() throws InterruptedException {
+		ObjectPool<StringBuilder> pool = new ObjectPool<>(new CountingAllocator(), 4, 4);
+		pool.release(pool.acquire());
+		WeakReference<ObjectPool<StringBuilder>> reference = new WeakReference<>(pool);
+		pool = null;
+		for (int i = 0; i < 50 && null != reference.get(); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+	}
+
+	@Test
+	public void acquireAfterReleaseOnAnotherPoolIsIndependent() {
+		ObjectPool<StringBuilder> first = new ObjectPool<>(new CountingAllocator(), 4, 4);
+		ObjectPool<StringBuilder> second = new ObjectPool<>(new CountingAllocator(), 4, 4);
+		StringBuilder object = first.acquire();
+		first.release(object);
+		assertNotSame(object, second.acquire());
+	}
+
+	private static class CountingAllocator implements ObjectPool.Allocator<StringBuilder> {
+		final AtomicInteger mCreated = new AtomicInteger();
+
+		@Override
+		public StringBuilder create() {
+			mCreated.incrementAndGet();
+			return new StringBuilder();
+		}
+
+		@Override
+		public void reset(StringBuilder object) {
+			object.setLength(0);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class StripedCounterTest {
+
+	@Test
+	public void sumsAllUpdates() {
+		StripedCounter counter = new StripedCounter(4);
+		counter.increment();
+		counter.increment();
+		counter.decrement();
+		counter.add(10);
+		assertEquals(11, counter.sum());
+		assertEquals("11", counter.toString());
+	}
+
+	@Test
+	public void sumThenResetClearsCounter() {
+		StripedCounter counter = new StripedCounter();
+		counter.add(5);
+		assertEquals(5, counter.sumThenReset());
+		assertEquals(0, counter.sum());
+	}
+
+	@Test
+	public void countsConcurrentIncrements() throws InterruptedException {
+		final StripedCounter counter = new StripedCounter();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						counter.increment();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(800000, counter.sum());
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+public class StripedLockTest {
+
+	@Test
+	public void roundsStripesUpToPowerOfTwo() {
+		assertEquals(8, new StripedLock(5).size());
+		assertEquals(1, new StripedLock(1).size());
+	}
+
+	@Test
+	public void equalKeysShareALock() {
+		StripedLock locks = new StripedLock(16);
+		assertSame(locks.get("key"), locks.get(new String("key")));
+		assertSame(locks.get(null), locks.getAt(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvalidStripes() {
+		new StripedLock(0);
+	}
+
+	@Test
+	public void guardsSharedState() throws InterruptedException {
+		final StripedLock locks = new StripedLock(4);
+		final int[] counter = new int[1];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 50000; i++) {
+						Lock lock = locks.get("shared");
+						lock.lock();
+						try {
+							counter[0]++;
+						} finally {
+							lock.unlock();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(200000, counter[0]);
+	}
+}
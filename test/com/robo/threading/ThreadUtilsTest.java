@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.robo.InvalidOperationException;
+
+public class ThreadUtilsTest {
+
+	@After
+	public void restoreDefaultProvider() {
+		ThreadUtils.setMainThreadProvider(null);
+		ThreadUtils.setThreadRole(null);
+	}
+
+	@Test
+	public void recognizesMainThreadOfProvider() throws Exception {
+		final Thread current = Thread.currentThread();
+		ThreadUtils.setMainThreadProvider(new MainThreadProvider() {
+			@Override
+			public Thread getMainThread() {
+				return current;
+			}
+		});
+		assertTrue(ThreadUtils.isMainThread());
+		assertFalse(ThreadUtils.isCurrentThreadBackgroundThread());
+		assertSame(ThreadRole.MAIN, ThreadUtils.getThreadRole());
+		assertFalse(runOnOtherThread(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return ThreadUtils.isMainThread();
+			}
+		}));
+	}
+
+	@Test
+	public void asksProviderAgainUntilMainThreadIsKnown() {
+		CountingProvider provider = new CountingProvider(null);
+		ThreadUtils.setMainThreadProvider(provider);
+		assertFalse(ThreadUtils.isMainThread());
+		assertNull(ThreadUtils.getThreadRole());
+		assertEquals(2, provider.mCalls.get());
+		// for instance once the main looper has been prepared
+		provider.mMainThread = Thread.currentThread();
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(ThreadUtils.isMainThread());
+		}
+		assertEquals(3, provider.mCalls.get());
+	}
+
+	@Test
+	public void doesNotCacheThreadOfReplacedProvider() {
+		final CountingProvider replacement = new CountingProvider(null);
+		ThreadUtils.setMainThreadProvider(new MainThreadProvider() {
+			@Override
+			public Thread getMainThread() {
+				ThreadUtils.setMainThreadProvider(replacement);
+				return Thread.currentThread();
+			}
+		});
+		assertTrue(ThreadUtils.isMainThread());
+		assertFalse(ThreadUtils.isMainThread());
+		assertEquals(1, replacement.mCalls.get());
+	}
+
+	@Test
+	public void newProviderIsAskedAgain() {
+		CountingProvider missing = new CountingProvider(null);
+		ThreadUtils.setMainThreadProvider(missing);
+		assertFalse(ThreadUtils.isMainThread());
+		CountingProvider current = new CountingProvider(Thread.currentThread());
+		ThreadUtils.setMainThreadProvider(current);
+		assertTrue(ThreadUtils.isMainThread());
+		assertTrue(ThreadUtils.isMainThread());
+		assertEquals(1, missing.mCalls.get());
+		assertEquals(1, current.mCalls.get());
+	}
+
+	@Test
+	public void factoryThreadsKeepTheirRole() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor(ThreadUtils.newThreadFactory(ThreadRole.IO,
+				"io"));
+		try {
+			assertSame(ThreadRole.IO, executor.submit(new Callable<ThreadRole>() {
+				@Override
+				public ThreadRole call() {
+					return ThreadUtils.getThreadRole();
+				}
+			}).get());
+			assertTrue(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					try {
+						ThreadUtils.setThreadRole(ThreadRole.COMPUTE);
+						return false;
+					} catch (InvalidOperationException e) {
+						return true;
+					}
+				}
+			}).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void assignsRolesToOtherThreads() throws Exception {
+		ThreadUtils.setMainThreadProvider(new CountingProvider(null));
+		final ThreadRole database = new ThreadRole("database");
+		assertTrue(runOnOtherThread(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				ThreadUtils.setThreadRole(database);
+				return ThreadUtils.isCurrentThread(database);
+			}
+		}));
+		assertNull(ThreadUtils.getThreadRole());
+	}
+
+	@Test(expected = InvalidOperationException.class)
+	public void rejectsMainRole() {
+		ThreadUtils.setThreadRole(ThreadRole.MAIN);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void factoryRejectsMainRole() {
+		ThreadUtils.newThreadFactory(ThreadRole.MAIN, "main");
+	}
+
+	private static <T> T runOnOtherThread(Callable<T> callable) throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			return executor.submit(callable).get();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static class CountingProvider implements MainThreadProvider {
+		final AtomicInteger mCalls = new AtomicInteger();
+		volatile Thread mMainThread;
+
+		CountingProvider(Thread mainThread) {
+			mMainThread = mainThread;
+		}
+
+		@Override
+		public Thread getMainThread() {
+			mCalls.incrementAndGet();
+			return mMainThread;
+		}
+	}
+}
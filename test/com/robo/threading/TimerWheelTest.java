@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2016 Robo Creative - https://robo-creative.github.io.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.robo.threading;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+	private final TimerWheel mWheel = new TimerWheel(1, TimeUnit.MILLISECONDS, 64);
+
+	@After
+	public void tearDown() {
+		mWheel.stop();
+	}
+
+	@Test
+	public void runsTaskAfterDelay() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		TimerWheel.Timeout timeout = mWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 20, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(19));
+		assertTrue(timeout.isExpired());
+	}
+
+	@Test
+	public void runsTasksBeyondOneRotation() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		mWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 150, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(149));
+	}
+
+	@Test
+	public void cancelledTaskDoesNotRun() throws InterruptedException {
+		final AtomicInteger runs = new AtomicInteger();
+		TimerWheel.Timeout timeout = mWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, 20, TimeUnit.MILLISECONDS);
+		assertTrue(timeout.cancel());
+		Thread.sleep(60);
+		assertTrue(timeout.isCancelled());
+		assertFalse(timeout.cancel());
+		assertTrue(runs.get() == 0);
+	}
+
+	@Test
+	public void keepsRunningAfterTaskThrowsError() throws InterruptedException {
+		mWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				throw new StackOverflowError("expected by test");
+			}
+		}, 1, TimeUnit.MILLISECONDS);
+		final CountDownLatch latch = new CountDownLatch(1);
+		mWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 30, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void stoppedWheelRejectsTasks() {
+		mWheel.stop();
+		mWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, 1, TimeUnit.MILLISECONDS);
+	}
+}